@@ -0,0 +1,155 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.logging;
+
+import static org.springframework.util.Assert.isTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link SessionTracer} that keeps the latest events in a fixed-size ring buffer.
+ * <p>
+ * All the storage is allocated up front, recording an event only writes primitives into preallocated arrays and claims
+ * a slot with a single atomic increment, so it neither allocates nor locks. Once the buffer is full the oldest events
+ * are overwritten. Events that are being overwritten while {@link #dump(Appendable)} runs are skipped.
+ *
+ * @since 2.0.6
+ */
+public class RingBufferSessionTracer implements SessionTracer {
+
+  private static final SessionTraceEvent[] EVENTS = SessionTraceEvent.values();
+
+  private final int mask;
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final AtomicLongArray published;
+
+  private final long[] timestamps;
+
+  private final long[] threadIds;
+
+  private final int[] sessionIds;
+
+  private final byte[] events;
+
+  /**
+   * Creates a new tracer.
+   *
+   * @param capacity
+   *          the number of events to keep, must be a power of two
+   */
+  public RingBufferSessionTracer(int capacity) {
+    isTrue(capacity > 0 && Integer.bitCount(capacity) == 1, "Capacity must be a positive power of two");
+    this.mask = capacity - 1;
+    this.published = new AtomicLongArray(capacity);
+    this.timestamps = new long[capacity];
+    this.threadIds = new long[capacity];
+    this.sessionIds = new int[capacity];
+    this.events = new byte[capacity];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void trace(SessionTraceEvent event, Object session) {
+    long seq = sequence.getAndIncrement();
+    int slot = (int) (seq & mask);
+    // a volatile write: with lazySet the writes below could be seen before the slot is marked as being overwritten
+    published.set(slot, 0L);
+    timestamps[slot] = System.nanoTime();
+    threadIds[slot] = Thread.currentThread().getId();
+    sessionIds[slot] = System.identityHashCode(session);
+    events[slot] = (byte) event.ordinal();
+    published.lazySet(slot, seq + 1);
+  }
+
+  /**
+   * Returns the number of events that can be kept.
+   *
+   * @return the capacity of the buffer
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Returns the number of events recorded since this tracer was created or cleared, including the overwritten ones.
+   *
+   * @return the number of recorded events
+   */
+  public long getRecordedCount() {
+    return sequence.get();
+  }
+
+  /**
+   * Forgets all the recorded events.
+   */
+  public void clear() {
+    for (int i = 0; i <= mask; i++) {
+      published.set(i, 0L);
+    }
+    sequence.set(0L);
+  }
+
+  /**
+   * Writes the buffered events, oldest first, one per line in the form
+   * {@code <nanoTime> <threadId> <event> SqlSession@<identityHash>}.
+   *
+   * @param out
+   *          where to write the events
+   */
+  public void dump(Appendable out) {
+    long last = sequence.get();
+    long first = Math.max(0L, last - mask - 1);
+    try {
+      for (long seq = first; seq < last; seq++) {
+        int slot = (int) (seq & mask);
+        if (published.get(slot) != seq + 1) {
+          continue;
+        }
+        long timestamp = timestamps[slot];
+        long threadId = threadIds[slot];
+        int sessionId = sessionIds[slot];
+        SessionTraceEvent event = EVENTS[events[slot]];
+        if (published.get(slot) != seq + 1) {
+          continue;
+        }
+        out.append(Long.toString(timestamp)).append(' ').append(Long.toString(threadId)).append(' ')
+            .append(event.name()).append(" SqlSession@").append(Integer.toHexString(sessionId)).append('\n');
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the buffered events as a {@code String}.
+   *
+   * @return the buffered events, one per line
+   * @see #dump(Appendable)
+   */
+  public String dump() {
+    StringBuilder builder = new StringBuilder();
+    dump(builder);
+    return builder.toString();
+  }
+
+}
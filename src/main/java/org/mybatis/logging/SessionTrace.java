@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.logging;
+
+/**
+ * Entry point of the {@code SqlSession} life-cycle trace.
+ * <p>
+ * Tracing is off by default and then costs a single volatile read per event. It can be switched on with a
+ * {@link RingBufferSessionTracer} that keeps the latest events in memory:
+ *
+ * <pre class="code">
+ * RingBufferSessionTracer tracer = SessionTrace.enable(4096);
+ * ...
+ * String events = tracer.dump();
+ * SessionTrace.disable();
+ * </pre>
+ *
+ * or with any other {@link SessionTracer} through {@link #setTracer(SessionTracer)}.
+ *
+ * @since 2.0.6
+ */
+public final class SessionTrace {
+
+  private static volatile SessionTracer tracer;
+
+  private SessionTrace() {
+    // NOP
+  }
+
+  /**
+   * Records an event if tracing is enabled.
+   *
+   * @param event
+   *          the life-cycle event
+   * @param session
+   *          the session the event applies to
+   */
+  public static void record(SessionTraceEvent event, Object session) {
+    SessionTracer current = tracer;
+    if (current != null) {
+      current.trace(event, session);
+    }
+  }
+
+  /**
+   * Enables tracing into a new {@link RingBufferSessionTracer}.
+   *
+   * @param capacity
+   *          the number of events to keep, must be a power of two
+   * @return the installed tracer, used to dump the events
+   */
+  public static RingBufferSessionTracer enable(int capacity) {
+    RingBufferSessionTracer ringBuffer = new RingBufferSessionTracer(capacity);
+    tracer = ringBuffer;
+    return ringBuffer;
+  }
+
+  /**
+   * Disables tracing.
+   */
+  public static void disable() {
+    tracer = null;
+  }
+
+  /**
+   * Installs a tracer, replacing the current one.
+   *
+   * @param sessionTracer
+   *          the tracer to use, {@code null} disables tracing
+   */
+  public static void setTracer(SessionTracer sessionTracer) {
+    tracer = sessionTracer;
+  }
+
+  /**
+   * Returns the installed tracer.
+   *
+   * @return the installed tracer or {@code null} when tracing is disabled
+   */
+  public static SessionTracer getTracer() {
+    return tracer;
+  }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.logging;
+
+/**
+ * Life-cycle events of a Spring managed {@code SqlSession} that can be recorded by a {@link SessionTracer}.
+ *
+ * @since 2.0.6
+ */
+public enum SessionTraceEvent {
+
+  /**
+   * A new session was opened from the {@code SqlSessionFactory}.
+   */
+  CREATED,
+
+  /**
+   * A session bound to the current transaction was handed out again.
+   */
+  REUSED,
+
+  /**
+   * A session was bound to the current transaction.
+   */
+  REGISTERED,
+
+  /**
+   * A transactional session was given back; it stays open until the transaction ends.
+   */
+  RELEASED,
+
+  /**
+   * A session was closed.
+   */
+  CLOSED
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.logging;
+
+/**
+ * Receives the life-cycle events of Spring managed {@code SqlSession}s. Implementations are called on the thread that
+ * uses the session, so they must be thread safe and should not block.
+ *
+ * @see SessionTrace#setTracer(SessionTracer)
+ * @since 2.0.6
+ */
+@FunctionalInterface
+public interface SessionTracer {
+
+  /**
+   * Records an event.
+   *
+   * @param event
+   *          the life-cycle event
+   * @param session
+   *          the session the event applies to
+   */
+  void trace(SessionTraceEvent event, Object session);
+
+}
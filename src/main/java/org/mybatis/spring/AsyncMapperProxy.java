@@ -0,0 +1,228 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.annotations.MapKey;
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.binding.MapperProxy;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.ParamNameResolver;
+import org.apache.ibatis.reflection.TypeParameterResolver;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * Mapper proxy of an async mapper, an interface whose methods return {@code CompletableFuture}s. Each method resolves
+ * its statement like a regular mapper method and runs it through an {@link AsyncSqlSessionTemplate}. Default methods
+ * are delegated to a regular MyBatis {@code MapperProxy}.
+ *
+ * @see AsyncSqlSessionTemplate#getMapper(Class)
+ * @since 2.0.6
+ */
+final class AsyncMapperProxy<T> implements InvocationHandler {
+
+  private final AsyncSqlSessionTemplate asyncSqlSessionTemplate;
+
+  private final Class<T> mapperInterface;
+
+  private final MapperProxy<T> fallback;
+
+  private final Map<Method, AsyncMethod> methodCache = new ConcurrentHashMap<>();
+
+  private AsyncMapperProxy(AsyncSqlSessionTemplate asyncSqlSessionTemplate, Class<T> mapperInterface,
+      MapperProxy<T> fallback) {
+    this.asyncSqlSessionTemplate = asyncSqlSessionTemplate;
+    this.mapperInterface = mapperInterface;
+    this.fallback = fallback;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> T newInstance(AsyncSqlSessionTemplate asyncSqlSessionTemplate, Class<T> mapperInterface) {
+    SqlSessionTemplate sqlSessionTemplate = asyncSqlSessionTemplate.getSqlSessionTemplate();
+    // fails like SqlSession.getMapper() if the mapper is not known
+    T mapper = sqlSessionTemplate.getConfiguration().getMapper(mapperInterface, sqlSessionTemplate);
+    MapperProxy<T> fallback = (MapperProxy<T>) Proxy.getInvocationHandler(mapper);
+    return (T) Proxy.newProxyInstance(mapperInterface.getClassLoader(), new Class[] { mapperInterface },
+        new AsyncMapperProxy<>(asyncSqlSessionTemplate, mapperInterface, fallback));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (Object.class.equals(method.getDeclaringClass())) {
+      try {
+        return method.invoke(this, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+    if (method.isDefault()) {
+      return fallback.invoke(proxy, method, args);
+    }
+    AsyncMethod asyncMethod = methodCache.get(method);
+    if (asyncMethod == null) {
+      asyncMethod = methodCache.computeIfAbsent(method,
+          m -> new AsyncMethod(asyncSqlSessionTemplate.getSqlSessionTemplate().getConfiguration(), mapperInterface, m));
+    }
+    AsyncMethod resolved = asyncMethod;
+    return asyncSqlSessionTemplate.execute(sqlSession -> resolved.execute(sqlSession, args));
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncMapperProxy[" + mapperInterface.getName() + "]";
+  }
+
+  private static final class AsyncMethod {
+
+    private static final List<Class<?>> ROW_COUNT_TYPES = Arrays.asList(Object.class, Void.class, Integer.class,
+        Long.class, Boolean.class);
+
+    private final Configuration configuration;
+
+    private final String statement;
+
+    private final SqlCommandType commandType;
+
+    private final ParamNameResolver paramNameResolver;
+
+    private final int rowBoundsIndex;
+
+    private final Class<?> resultType;
+
+    private final String mapKey;
+
+    AsyncMethod(Configuration configuration, Class<?> mapperInterface, Method method) {
+      if (!CompletableFuture.class.equals(method.getReturnType())) {
+        throw new BindingException(
+            "Method '" + method.getName() + "' of async mapper " + mapperInterface.getName()
+                + " must return a CompletableFuture");
+      }
+      MapperMethod.SqlCommand command = new MapperMethod.SqlCommand(configuration, mapperInterface, method);
+      this.configuration = configuration;
+      this.statement = command.getName();
+      this.commandType = command.getType();
+      this.paramNameResolver = new ParamNameResolver(configuration, method);
+      this.resultType = resultTypeOf(TypeParameterResolver.resolveReturnType(method, mapperInterface));
+      MapKey mapKeyAnnotation = method.getAnnotation(MapKey.class);
+      this.mapKey = mapKeyAnnotation != null && Map.class.isAssignableFrom(resultType) ? mapKeyAnnotation.value()
+          : null;
+
+      int index = -1;
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      for (int i = 0; i < parameterTypes.length; i++) {
+        if (ResultHandler.class.isAssignableFrom(parameterTypes[i])) {
+          throw new BindingException("Method '" + method.getName() + "' of async mapper " + mapperInterface.getName()
+              + " cannot take a ResultHandler");
+        }
+        if (RowBounds.class.isAssignableFrom(parameterTypes[i])) {
+          index = i;
+        }
+      }
+      this.rowBoundsIndex = index;
+      if (resultType.isArray()) {
+        throw new BindingException("Method '" + method.getName() + "' of async mapper " + mapperInterface.getName()
+            + " cannot return an array, use a List");
+      }
+      if ((commandType == SqlCommandType.INSERT || commandType == SqlCommandType.UPDATE
+          || commandType == SqlCommandType.DELETE) && !ROW_COUNT_TYPES.contains(resultType)) {
+        throw new BindingException("Method '" + method.getName() + "' of async mapper " + mapperInterface.getName()
+            + " has an unsupported return type: CompletableFuture<" + resultType.getName() + ">");
+      }
+    }
+
+    private static Class<?> resultTypeOf(Type futureType) {
+      if (futureType instanceof ParameterizedType) {
+        Type resultType = ((ParameterizedType) futureType).getActualTypeArguments()[0];
+        if (resultType instanceof ParameterizedType) {
+          return (Class<?>) ((ParameterizedType) resultType).getRawType();
+        }
+        if (resultType instanceof Class) {
+          return (Class<?>) resultType;
+        }
+      }
+      return Object.class;
+    }
+
+    Object execute(SqlSession sqlSession, Object[] args) {
+      Object param = paramNameResolver.getNamedParams(args);
+      switch (commandType) {
+        case SELECT:
+          RowBounds rowBounds = rowBoundsIndex < 0 ? RowBounds.DEFAULT : (RowBounds) args[rowBoundsIndex];
+          if (Collection.class.isAssignableFrom(resultType)) {
+            return toCollection(sqlSession.selectList(statement, param, rowBounds));
+          }
+          if (mapKey != null) {
+            return sqlSession.selectMap(statement, param, mapKey, rowBounds);
+          }
+          if (Optional.class.equals(resultType)) {
+            return Optional.ofNullable(sqlSession.selectOne(statement, param));
+          }
+          return sqlSession.selectOne(statement, param);
+        case INSERT:
+          return rowCount(sqlSession.insert(statement, param));
+        case UPDATE:
+          return rowCount(sqlSession.update(statement, param));
+        case DELETE:
+          return rowCount(sqlSession.delete(statement, param));
+        case FLUSH:
+          return sqlSession.flushStatements();
+        default:
+          throw new BindingException("Unknown execution method for: " + statement);
+      }
+    }
+
+    private Object toCollection(List<Object> list) {
+      if (resultType.isAssignableFrom(list.getClass())) {
+        return list;
+      }
+      @SuppressWarnings("unchecked")
+      Collection<Object> collection = (Collection<Object>) configuration.getObjectFactory().create(resultType);
+      collection.addAll(list);
+      return collection;
+    }
+
+    private Object rowCount(int rowCount) {
+      if (Void.class.equals(resultType)) {
+        return null;
+      }
+      if (Long.class.equals(resultType)) {
+        return (long) rowCount;
+      }
+      if (Boolean.class.equals(resultType)) {
+        return rowCount > 0;
+      }
+      return rowCount;
+    }
+  }
+
+}
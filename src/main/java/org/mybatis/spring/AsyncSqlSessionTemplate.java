@@ -0,0 +1,442 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs MyBatis calls of a {@link SqlSessionTemplate} on a thread pool and returns their results as
+ * {@code CompletableFuture}s, so independent queries can run at the same time.
+ * <p>
+ * By default the pool has as many threads as the connection pool of the {@code DataSource} has connections, so async
+ * calls never wait for a connection held by another async call. The size is read from MyBatis
+ * {@code PooledDataSource}, HikariCP, Commons DBCP and Tomcat JDBC pools, and must be given for other
+ * {@code DataSource}s. Each async operation runs in a {@link SqlSessionScope}, so all the calls it does share one
+ * {@code SqlSession}. The calls waiting for a thread are queued up to {@link #DEFAULT_QUEUE_CAPACITY}; once the queue
+ * is full a new call runs on the calling thread, which slows the caller down instead of queueing work without limit.
+ * <p>
+ * A pool thread never sees the transaction of the caller. So calling this template while a Spring transaction (or a
+ * {@code SqlSessionScope}) is active fails with a {@code TransientDataAccessResourceException}, unless the
+ * {@link TransactionMode#JOIN} mode is set, in which case the call runs synchronously in the caller's transaction and
+ * returns a completed future.
+ *
+ * <pre class="code">
+ * CompletableFuture&lt;User&gt; user = asyncTemplate.selectOne("findUser", id);
+ * CompletableFuture&lt;List&lt;Order&gt;&gt; orders = asyncTemplate.selectList("findOrders", id);
+ * render(user.join(), orders.join());
+ * </pre>
+ *
+ * @see AsyncSqlSessionTemplate#getMapper(Class)
+ * @since 2.0.6
+ */
+public class AsyncSqlSessionTemplate implements DisposableBean {
+
+  /**
+   * The number of calls that may wait for a thread of the pool created by this template.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  // maximumPoolSize: HikariCP, maxTotal: Commons DBCP 2, maxActive: Tomcat JDBC and Commons DBCP 1
+  private static final String[] POOL_SIZE_PROPERTIES = { "maximumPoolSize", "maxTotal", "maxActive" };
+
+  private final SqlSessionTemplate sqlSessionTemplate;
+
+  private final Executor executor;
+
+  private final ThreadPoolExecutor ownedExecutor;
+
+  private final Map<Class<?>, Object> mappers = new ConcurrentHashMap<>();
+
+  private TransactionMode transactionMode = TransactionMode.FAIL;
+
+  /**
+   * What to do when an async call is made while a transaction is active.
+   */
+  public enum TransactionMode {
+
+    /**
+     * Throw a {@code TransientDataAccessResourceException}.
+     */
+    FAIL,
+
+    /**
+     * Run the call synchronously in the current transaction and return a completed future.
+     */
+    JOIN
+
+  }
+
+  /**
+   * Creates a template whose pool size is the connection pool size of the {@code DataSource}.
+   *
+   * @param sqlSessionTemplate
+   *          the template that runs the calls
+   * @throws IllegalArgumentException
+   *           if the connection pool size cannot be detected
+   */
+  public AsyncSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) {
+    this(sqlSessionTemplate, detectPoolSize(sqlSessionTemplate));
+  }
+
+  /**
+   * Creates a template with a pool of the given size.
+   *
+   * @param sqlSessionTemplate
+   *          the template that runs the calls
+   * @param poolSize
+   *          the maximum number of calls that run at the same time, should not exceed the connection pool size
+   */
+  public AsyncSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate, int poolSize) {
+    this(sqlSessionTemplate, poolSize, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Creates a template with a pool of the given size and a queue of the given capacity. A call made while the queue is
+   * full runs on the calling thread.
+   *
+   * @param sqlSessionTemplate
+   *          the template that runs the calls
+   * @param poolSize
+   *          the maximum number of calls that run at the same time, should not exceed the connection pool size
+   * @param queueCapacity
+   *          the maximum number of calls waiting for a thread
+   */
+  public AsyncSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate, int poolSize, int queueCapacity) {
+    notNull(sqlSessionTemplate, "Property 'sqlSessionTemplate' is required");
+    isTrue(poolSize > 0, "Property 'poolSize' must be positive");
+    isTrue(queueCapacity > 0, "Property 'queueCapacity' must be positive");
+    this.sqlSessionTemplate = sqlSessionTemplate;
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("mybatis-async-");
+    threadFactory.setDaemon(true);
+    this.ownedExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), threadFactory, AsyncSqlSessionTemplate::runOnCaller);
+    this.ownedExecutor.allowCoreThreadTimeOut(true);
+    this.executor = this.ownedExecutor;
+  }
+
+  /**
+   * Creates a template that runs the calls on the given executor. The executor should not run more calls at the same
+   * time than the connection pool has connections, it is not shut down by this template.
+   *
+   * @param sqlSessionTemplate
+   *          the template that runs the calls
+   * @param executor
+   *          the executor of the calls
+   */
+  public AsyncSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate, Executor executor) {
+    notNull(sqlSessionTemplate, "Property 'sqlSessionTemplate' is required");
+    notNull(executor, "Property 'executor' is required");
+    this.sqlSessionTemplate = sqlSessionTemplate;
+    this.ownedExecutor = null;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the template that runs the calls.
+   *
+   * @return the synchronous template
+   */
+  public SqlSessionTemplate getSqlSessionTemplate() {
+    return this.sqlSessionTemplate;
+  }
+
+  /**
+   * Returns the executor that runs the calls.
+   *
+   * @return the pool created by this template or the executor given to it
+   */
+  public Executor getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Returns what to do with async calls made inside a transaction.
+   *
+   * @return the behaviour inside a transaction
+   */
+  public TransactionMode getTransactionMode() {
+    return this.transactionMode;
+  }
+
+  /**
+   * Sets what to do with async calls made inside a transaction. Defaults to {@link TransactionMode#FAIL}.
+   *
+   * @param transactionMode
+   *          the behaviour inside a transaction
+   */
+  public void setTransactionMode(TransactionMode transactionMode) {
+    notNull(transactionMode, "Property 'transactionMode' is required");
+    this.transactionMode = transactionMode;
+  }
+
+  /**
+   * Runs an operation over the template. All the calls done by the operation share one {@code SqlSession}, committed
+   * when it completes and rolled back when it throws an exception.
+   *
+   * @param operation
+   *          the operation, receives the Spring managed {@code SqlSession} to use
+   * @param <T>
+   *          the result type of the operation
+   * @return the result of the operation
+   * @throws TransientDataAccessResourceException
+   *           if a transaction is active and the transaction mode is {@link TransactionMode#FAIL}
+   */
+  public <T> CompletableFuture<T> execute(Function<SqlSession, T> operation) {
+    notNull(operation, "Parameter 'operation' is required");
+    SqlSessionFactory sqlSessionFactory = this.sqlSessionTemplate.getSqlSessionFactory();
+    if (TransactionSynchronizationManager.isSynchronizationActive()
+        || TransactionSynchronizationManager.hasResource(sqlSessionFactory)) {
+      if (this.transactionMode == TransactionMode.FAIL) {
+        throw new TransientDataAccessResourceException(
+            "Async MyBatis calls cannot run in the current transaction, join it with TransactionMode.JOIN");
+      }
+      CompletableFuture<T> result = new CompletableFuture<>();
+      try {
+        result.complete(operation.apply(this.sqlSessionTemplate));
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+      return result;
+    }
+    // the scope must have the executor type of the template or its calls cannot use the scoped session
+    return CompletableFuture.supplyAsync(() -> SqlSessionScope.execute(sqlSessionFactory,
+        this.sqlSessionTemplate.getExecutorType(), () -> operation.apply(this.sqlSessionTemplate)), this.executor);
+  }
+
+  /**
+   * Retrieves a single row mapped from the statement key.
+   *
+   * @param statement
+   *          the statement id
+   * @param <T>
+   *          the returned object type
+   * @return a future of the mapped object
+   * @see SqlSession#selectOne(String)
+   */
+  public <T> CompletableFuture<T> selectOne(String statement) {
+    return execute(sqlSession -> sqlSession.selectOne(statement));
+  }
+
+  /**
+   * Retrieves a single row mapped from the statement key and parameter.
+   *
+   * @param statement
+   *          the statement id
+   * @param parameter
+   *          the parameter object to pass to the statement
+   * @param <T>
+   *          the returned object type
+   * @return a future of the mapped object
+   * @see SqlSession#selectOne(String, Object)
+   */
+  public <T> CompletableFuture<T> selectOne(String statement, Object parameter) {
+    return execute(sqlSession -> sqlSession.selectOne(statement, parameter));
+  }
+
+  /**
+   * Retrieves a list of mapped objects from the statement key.
+   *
+   * @param statement
+   *          the statement id
+   * @param <E>
+   *          the returned list element type
+   * @return a future of the list of mapped objects
+   * @see SqlSession#selectList(String)
+   */
+  public <E> CompletableFuture<List<E>> selectList(String statement) {
+    return execute(sqlSession -> sqlSession.selectList(statement));
+  }
+
+  /**
+   * Retrieves a list of mapped objects from the statement key and parameter.
+   *
+   * @param statement
+   *          the statement id
+   * @param parameter
+   *          the parameter object to pass to the statement
+   * @param <E>
+   *          the returned list element type
+   * @return a future of the list of mapped objects
+   * @see SqlSession#selectList(String, Object)
+   */
+  public <E> CompletableFuture<List<E>> selectList(String statement, Object parameter) {
+    return execute(sqlSession -> sqlSession.selectList(statement, parameter));
+  }
+
+  /**
+   * Retrieves a map of mapped objects from the statement key and parameter, keyed by one of their properties.
+   *
+   * @param statement
+   *          the statement id
+   * @param parameter
+   *          the parameter object to pass to the statement
+   * @param mapKey
+   *          the property to use as key for each value in the map
+   * @param <K>
+   *          the returned map key type
+   * @param <V>
+   *          the returned map value type
+   * @return a future of the map of mapped objects
+   * @see SqlSession#selectMap(String, Object, String)
+   */
+  public <K, V> CompletableFuture<Map<K, V>> selectMap(String statement, Object parameter, String mapKey) {
+    return execute(sqlSession -> sqlSession.selectMap(statement, parameter, mapKey));
+  }
+
+  /**
+   * Executes an insert statement with the given parameter object.
+   *
+   * @param statement
+   *          the statement id
+   * @param parameter
+   *          the parameter object to pass to the statement
+   * @return a future of the number of rows affected
+   * @see SqlSession#insert(String, Object)
+   */
+  public CompletableFuture<Integer> insert(String statement, Object parameter) {
+    return execute(sqlSession -> sqlSession.insert(statement, parameter));
+  }
+
+  /**
+   * Executes an update statement with the given parameter object.
+   *
+   * @param statement
+   *          the statement id
+   * @param parameter
+   *          the parameter object to pass to the statement
+   * @return a future of the number of rows affected
+   * @see SqlSession#update(String, Object)
+   */
+  public CompletableFuture<Integer> update(String statement, Object parameter) {
+    return execute(sqlSession -> sqlSession.update(statement, parameter));
+  }
+
+  /**
+   * Executes a delete statement with the given parameter object.
+   *
+   * @param statement
+   *          the statement id
+   * @param parameter
+   *          the parameter object to pass to the statement
+   * @return a future of the number of rows affected
+   * @see SqlSession#delete(String, Object)
+   */
+  public CompletableFuture<Integer> delete(String statement, Object parameter) {
+    return execute(sqlSession -> sqlSession.delete(statement, parameter));
+  }
+
+  /**
+   * Returns an async mapper: an interface known to the MyBatis configuration whose methods return
+   * {@code CompletableFuture}s of what a regular mapper method would return. Statements of async mappers must be
+   * mapped in XML, because MyBatis infers the result type of annotated statements from the declared return type.
+   *
+   * @param type
+   *          the async mapper interface
+   * @param <T>
+   *          the mapper type
+   * @return a mapper bound to this template
+   */
+  public <T> T getMapper(Class<T> type) {
+    Object mapper = this.mappers.get(type);
+    if (mapper == null) {
+      mapper = this.mappers.computeIfAbsent(type, t -> AsyncMapperProxy.newInstance(this, t));
+    }
+    return type.cast(mapper);
+  }
+
+  /**
+   * Shuts down the pool created by this template.
+   */
+  @Override
+  public void destroy() {
+    if (this.ownedExecutor != null) {
+      this.ownedExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Runs a call on the calling thread when the queue is full, fails it once the pool is shut down.
+   */
+  private static void runOnCaller(Runnable call, ThreadPoolExecutor pool) {
+    if (pool.isShutdown()) {
+      throw new RejectedExecutionException("The AsyncSqlSessionTemplate has been destroyed");
+    }
+    call.run();
+  }
+
+  private static int detectPoolSize(SqlSessionTemplate sqlSessionTemplate) {
+    notNull(sqlSessionTemplate, "Property 'sqlSessionTemplate' is required");
+    DataSource dataSource = sqlSessionTemplate.getConfiguration().getEnvironment().getDataSource();
+    int poolSize = detectPoolSize(dataSource);
+    isTrue(poolSize > 0, () -> "Cannot detect the connection pool size of " + dataSource + ", set the pool size");
+    return poolSize;
+  }
+
+  /**
+   * Reads the maximum number of connections of a connection pool.
+   *
+   * @param dataSource
+   *          the pool
+   * @return the maximum number of connections, -1 if unknown
+   */
+  static int detectPoolSize(DataSource dataSource) {
+    DataSource target = dataSource;
+    while (target instanceof DelegatingDataSource) {
+      target = ((DelegatingDataSource) target).getTargetDataSource();
+    }
+    if (target instanceof PooledDataSource) {
+      return ((PooledDataSource) target).getPoolMaximumActiveConnections();
+    }
+    if (target != null) {
+      BeanWrapper pool = PropertyAccessorFactory.forBeanPropertyAccess(target);
+      for (String property : POOL_SIZE_PROPERTIES) {
+        if (pool.isReadableProperty(property)) {
+          Object value = pool.getPropertyValue(property);
+          if (value instanceof Number && ((Number) value).intValue() > 0) {
+            return ((Number) value).intValue();
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+}
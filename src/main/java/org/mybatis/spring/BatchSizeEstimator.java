@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+/**
+ * Estimates the heap a statement added to a JDBC batch keeps until the batch is flushed, mostly its parameter object
+ * and the values bound from it.
+ *
+ * @see SqlSessionTemplate#setBatchFlushBytes(long)
+ * @since 2.0.6
+ */
+@FunctionalInterface
+public interface BatchSizeEstimator {
+
+  /**
+   * Estimates the size of a batched statement.
+   *
+   * @param parameter
+   *          the parameter object of the statement, the argument array of a mapper method with several arguments, or
+   *          {@code null}
+   * @return the estimated size in bytes
+   */
+  long estimate(Object parameter);
+
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.mybatis.logging.SessionTrace;
+import org.mybatis.logging.SessionTraceEvent;
+import org.mybatis.spring.jfr.FlightRecorderEvents;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+
+/**
+ * Reactive Streams {@code Publisher} of the rows of a query, read through a MyBatis {@code Cursor}.
+ * <p>
+ * Each subscription opens its own {@code SqlSession} when the first rows are requested and keeps it, with its
+ * connection, while the subscriber asks for more. Rows are only read when there is demand, at most a fetch size worth
+ * of rows at a time. The JDBC statement keeps the fetch size of the mapped statement (or the default one of the
+ * configuration): set it on the statement for the driver to fetch the rows in chunks too. The session is committed
+ * and closed once all rows are emitted, and rolled back and closed when the subscription is cancelled or the query
+ * fails. Errors are translated by the exception translator of the template.
+ * <p>
+ * Without an {@code Executor} the rows are read and emitted on the thread that calls {@code Subscription.request}.
+ * With one, all the work of a subscription (opening the session included) runs on it, one task at a time.
+ * <p>
+ * The session is opened from the factory of the template, not through {@link SqlSessionUtils}, because the rows may be
+ * read on other threads and long after the subscribing call returned. So it never joins the Spring transaction or the
+ * {@link SqlSessionScope} of the subscriber: a publisher subscribed on a thread with an active transaction uses the
+ * connection of that transaction only if it is drained on the same thread, before the transaction ends. The session
+ * is still reported to the session trace, the Flight Recorder events and the metrics as an unmanaged session.
+ * <p>
+ * This class needs the {@code org.reactivestreams:reactive-streams} library.
+ *
+ * <pre class="code">
+ * Publisher&lt;User&gt; users = new CursorPublisher&lt;&gt;(sqlSessionTemplate, "findAllUsers", null);
+ * Flux.from(users).buffer(100).subscribe(batch -&gt; ...);
+ * </pre>
+ *
+ * @param <T>
+ *          the type of the rows
+ * @since 2.0.6
+ */
+public final class CursorPublisher<T> implements Publisher<T> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CursorPublisher.class);
+
+  private static final int DEFAULT_FETCH_SIZE = 256;
+
+  private final SqlSessionTemplate sqlSessionTemplate;
+
+  private final String statement;
+
+  private final Object parameter;
+
+  private final int fetchSize;
+
+  private final Executor executor;
+
+  /**
+   * Creates a publisher that reads as many rows at a time as the fetch size of the statement.
+   *
+   * @param sqlSessionTemplate
+   *          the template whose factory, executor type and exception translator are used
+   * @param statement
+   *          the id of the select statement
+   * @param parameter
+   *          the parameter of the statement, may be {@code null}
+   */
+  public CursorPublisher(SqlSessionTemplate sqlSessionTemplate, String statement, Object parameter) {
+    this(sqlSessionTemplate, statement, parameter, 0, null);
+  }
+
+  /**
+   * Creates a publisher.
+   *
+   * @param sqlSessionTemplate
+   *          the template whose factory, executor type and exception translator are used
+   * @param statement
+   *          the id of the select statement
+   * @param parameter
+   *          the parameter of the statement, may be {@code null}
+   * @param fetchSize
+   *          the maximum number of rows read at a time, {@code 0} to use the fetch size of the statement; the fetch
+   *          size of the JDBC statement is always the one of the mapped statement
+   * @param executor
+   *          the executor that reads and emits the rows, {@code null} to do it on the requesting thread
+   */
+  public CursorPublisher(SqlSessionTemplate sqlSessionTemplate, String statement, Object parameter, int fetchSize,
+      Executor executor) {
+    notNull(sqlSessionTemplate, "Property 'sqlSessionTemplate' is required");
+    notNull(statement, "Property 'statement' is required");
+    isTrue(fetchSize >= 0, "Property 'fetchSize' must not be negative");
+    this.sqlSessionTemplate = sqlSessionTemplate;
+    this.statement = statement;
+    this.parameter = parameter;
+    this.fetchSize = fetchSize;
+    this.executor = executor;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    notNull(subscriber, "Subscriber must not be null");
+    subscriber.onSubscribe(new CursorSubscription(subscriber));
+  }
+
+  private int chunkSize(Configuration configuration) {
+    if (fetchSize > 0) {
+      return fetchSize;
+    }
+    MappedStatement ms = configuration.getMappedStatement(statement);
+    if (ms.getFetchSize() != null && ms.getFetchSize() > 0) {
+      return ms.getFetchSize();
+    }
+    Integer defaultFetchSize = configuration.getDefaultFetchSize();
+    return defaultFetchSize != null && defaultFetchSize > 0 ? defaultFetchSize : DEFAULT_FETCH_SIZE;
+  }
+
+  /**
+   * Serializes all the work of a subscription with a work-in-progress counter: whoever brings it from zero runs the
+   * drain loop, the other signals only make the loop go round once more.
+   */
+  private final class CursorSubscription implements Subscription, Runnable {
+
+    private final Subscriber<? super T> subscriber;
+
+    private final AtomicLong requested = new AtomicLong();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean cancelled;
+
+    private volatile String invalidRequest;
+
+    // only accessed by the drain loop
+    private SqlSession sqlSession;
+
+    private Iterator<T> iterator;
+
+    private Object recording;
+
+    private int chunkSize;
+
+    private boolean done;
+
+    CursorSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = "Subscription.request() must be called with a positive number, got " + n;
+      } else {
+        long current;
+        do {
+          current = requested.get();
+          if (current == Long.MAX_VALUE) {
+            break;
+          }
+        } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (wip.getAndIncrement() == 0) {
+        if (executor != null) {
+          executor.execute(this);
+        } else {
+          run();
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        if (!done) {
+          drain();
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      if (cancelled) {
+        LOGGER.debug(() -> "Cursor publisher of " + statement + " cancelled");
+        terminate(false);
+        return;
+      }
+      if (invalidRequest != null) {
+        terminate(false);
+        subscriber.onError(new IllegalArgumentException(invalidRequest));
+        return;
+      }
+      try {
+        if (sqlSession == null) {
+          open();
+        }
+        long demand = requested.get();
+        long emitted = 0;
+        while (emitted < demand && emitted < chunkSize) {
+          if (cancelled) {
+            terminate(false);
+            return;
+          }
+          if (!iterator.hasNext()) {
+            complete();
+            return;
+          }
+          subscriber.onNext(iterator.next());
+          emitted++;
+        }
+        if (emitted > 0 && demand != Long.MAX_VALUE) {
+          demand = requested.addAndGet(-emitted);
+        }
+        if (cancelled) {
+          terminate(false);
+        } else if (demand == 0 && !iterator.hasNext()) {
+          // the last requested row was the last one
+          complete();
+        } else if (demand > 0) {
+          // more rows are requested, read the next chunk in another round of the loop
+          wip.incrementAndGet();
+        }
+      } catch (RuntimeException e) {
+        terminate(false);
+        subscriber.onError(translate(e));
+      }
+    }
+
+    private void open() {
+      SqlSessionFactory sessionFactory = sqlSessionTemplate.getSqlSessionFactory();
+      ExecutorType executorType = sqlSessionTemplate.getExecutorType();
+      SqlSession session = sessionFactory.openSession(executorType);
+      LOGGER.debug(() -> "Opening SqlSession [" + session + "] for cursor publisher of " + statement);
+      SessionTrace.record(SessionTraceEvent.CREATED, session);
+      recording = FlightRecorderEvents.sessionOpened(executorType);
+      SessionMetrics.opened(sessionFactory, executorType, false);
+      sqlSession = session;
+      Cursor<T> cursor = session.selectCursor(statement, parameter);
+      iterator = cursor.iterator();
+      chunkSize = chunkSize(session.getConfiguration());
+    }
+
+    private void complete() {
+      RuntimeException failure = terminate(true);
+      if (failure == null) {
+        subscriber.onComplete();
+      } else {
+        subscriber.onError(translate(failure));
+      }
+    }
+
+    /**
+     * Ends and closes the session, if it was opened.
+     *
+     * @return the exception thrown by the commit, if any
+     */
+    private RuntimeException terminate(boolean commit) {
+      done = true;
+      SqlSession session = sqlSession;
+      if (session == null) {
+        return null;
+      }
+      sqlSession = null;
+      iterator = null;
+      try {
+        if (commit) {
+          session.commit(true);
+        } else {
+          session.rollback(true);
+        }
+        return null;
+      } catch (RuntimeException e) {
+        LOGGER.debug(() -> "Cannot end SqlSession [" + session + "] of cursor publisher: " + e);
+        return commit ? e : null;
+      } finally {
+        LOGGER.debug(() -> "Closing SqlSession [" + session + "] of cursor publisher of " + statement);
+        session.close();
+        SessionTrace.record(SessionTraceEvent.CLOSED, session);
+        FlightRecorderEvents.sessionClosed(recording, false);
+        recording = null;
+        SessionMetrics.closed(sqlSessionTemplate.getSqlSessionFactory(), false);
+      }
+    }
+
+    private Throwable translate(RuntimeException e) {
+      PersistenceExceptionTranslator exceptionTranslator = sqlSessionTemplate.getPersistenceExceptionTranslator();
+      if (exceptionTranslator != null && e instanceof PersistenceException) {
+        DataAccessException translated = exceptionTranslator.translateExceptionIfPossible(e);
+        if (translated != null) {
+          return translated;
+        }
+      }
+      return e;
+    }
+  }
+
+}
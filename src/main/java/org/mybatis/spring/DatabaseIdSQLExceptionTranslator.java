@@ -0,0 +1,290 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.InvalidResultSetAccessException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLErrorCodes;
+import org.springframework.jdbc.support.SQLErrorCodesFactory;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+/**
+ * {@code SQLExceptionTranslator} that knows the error codes of its database up front, from the MyBatis
+ * {@code databaseId}, so translating an exception never needs a connection to read the {@code DatabaseMetaData}.
+ * <p>
+ * The error codes of Spring's {@code sql-error-codes.xml} are turned once into an immutable code-to-category table
+ * shared by all the translators of a database. The translated exception gets the task as its message, the message of
+ * the {@code SQLException} is only appended by {@code getMessage()}. Errors whose code is not in the table go through
+ * Spring's {@code SQLErrorCodeSQLExceptionTranslator} with the same error codes.
+ *
+ * @since 2.0.6
+ * @see MyBatisExceptionTranslator
+ */
+public class DatabaseIdSQLExceptionTranslator implements SQLExceptionTranslator {
+
+  private static final Map<String, String> ERROR_CODES_NAMES = createErrorCodesNames();
+
+  private static final Map<String, Optional<DatabaseIdSQLExceptionTranslator>> TRANSLATORS = new ConcurrentHashMap<>();
+
+  private final Map<String, Category> categories;
+
+  private final boolean useSqlStateForTranslation;
+
+  private final SQLErrorCodeSQLExceptionTranslator fallback;
+
+  /**
+   * Creates a translator for the given error codes.
+   *
+   * @param sqlErrorCodes
+   *          the error codes of the database
+   */
+  public DatabaseIdSQLExceptionTranslator(SQLErrorCodes sqlErrorCodes) {
+    this.useSqlStateForTranslation = sqlErrorCodes.isUseSqlStateForTranslation();
+    this.fallback = new SQLErrorCodeSQLExceptionTranslator();
+    this.fallback.setSqlErrorCodes(sqlErrorCodes);
+    if (sqlErrorCodes.getCustomSqlExceptionTranslator() != null
+        || (sqlErrorCodes.getCustomTranslations() != null && sqlErrorCodes.getCustomTranslations().length > 0)) {
+      // custom translations come first, leave everything to Spring
+      this.categories = Collections.emptyMap();
+    } else {
+      this.categories = createCategories(sqlErrorCodes);
+    }
+  }
+
+  /**
+   * Returns the translator shared by the sessions of a database.
+   *
+   * @param databaseId
+   *          the MyBatis database id: the name of an error codes bean of Spring's {@code sql-error-codes.xml}, a
+   *          database product name, or a usual alias such as {@code mysql}, {@code postgresql} or {@code sqlserver}
+   * @return the translator, {@code null} if no error codes are known for the database id
+   */
+  public static DatabaseIdSQLExceptionTranslator forDatabaseId(String databaseId) {
+    if (databaseId == null) {
+      return null;
+    }
+    return TRANSLATORS.computeIfAbsent(databaseId, key -> {
+      String name = ERROR_CODES_NAMES.getOrDefault(key.toLowerCase(Locale.ROOT), key);
+      SQLErrorCodes sqlErrorCodes = SQLErrorCodesFactory.getInstance().getErrorCodes(name);
+      return isEmpty(sqlErrorCodes) ? Optional.empty() : Optional.of(new DatabaseIdSQLExceptionTranslator(sqlErrorCodes));
+    }).orElse(null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DataAccessException translate(String task, String sql, SQLException ex) {
+    SQLException sqlEx = unwrapBatch(ex);
+    Category category = categorize(sqlEx);
+    if (category == null) {
+      return fallback.translate(task, sql, ex);
+    }
+    return category.create(task, sql, sqlEx);
+  }
+
+  /**
+   * Returns the expected failure an exception would be translated to, without translating it.
+   *
+   * @return the failure, {@code null} if the exception is not translated to an expected one
+   */
+  ExpectedDataAccessFailure expectedFailure(SQLException ex) {
+    Category category = categorize(unwrapBatch(ex));
+    return category == null ? null : category.expected;
+  }
+
+  private static SQLException unwrapBatch(SQLException ex) {
+    if (ex instanceof BatchUpdateException && ex.getNextException() != null) {
+      SQLException nested = ex.getNextException();
+      if (nested.getErrorCode() > 0 || nested.getSQLState() != null) {
+        return nested;
+      }
+    }
+    return ex;
+  }
+
+  private Category categorize(SQLException sqlEx) {
+    String errorCode;
+    if (useSqlStateForTranslation) {
+      errorCode = sqlEx.getSQLState();
+    } else {
+      SQLException current = sqlEx;
+      while (current.getErrorCode() == 0 && current.getCause() instanceof SQLException) {
+        current = (SQLException) current.getCause();
+      }
+      errorCode = Integer.toString(current.getErrorCode());
+    }
+    return errorCode == null ? null : categories.get(errorCode);
+  }
+
+  private static boolean isEmpty(SQLErrorCodes codes) {
+    return !codes.isUseSqlStateForTranslation() && codes.getBadSqlGrammarCodes().length == 0
+        && codes.getDataIntegrityViolationCodes().length == 0 && codes.getDuplicateKeyCodes().length == 0
+        && codes.getCustomSqlExceptionTranslator() == null;
+  }
+
+  private static Map<String, Category> createCategories(SQLErrorCodes codes) {
+    Map<String, Category> categories = new HashMap<>();
+    // the order of Spring's SQLErrorCodeSQLExceptionTranslator: the first category of a code wins
+    register(categories, codes.getBadSqlGrammarCodes(), Category.BAD_SQL_GRAMMAR);
+    register(categories, codes.getInvalidResultSetAccessCodes(), Category.INVALID_RESULT_SET_ACCESS);
+    register(categories, codes.getDuplicateKeyCodes(), Category.DUPLICATE_KEY);
+    register(categories, codes.getDataIntegrityViolationCodes(), Category.DATA_INTEGRITY_VIOLATION);
+    register(categories, codes.getPermissionDeniedCodes(), Category.PERMISSION_DENIED);
+    register(categories, codes.getDataAccessResourceFailureCodes(), Category.DATA_ACCESS_RESOURCE_FAILURE);
+    register(categories, codes.getTransientDataAccessResourceCodes(), Category.TRANSIENT_DATA_ACCESS_RESOURCE);
+    register(categories, codes.getCannotAcquireLockCodes(), Category.CANNOT_ACQUIRE_LOCK);
+    register(categories, codes.getDeadlockLoserCodes(), Category.DEADLOCK_LOSER);
+    register(categories, codes.getCannotSerializeTransactionCodes(), Category.CANNOT_SERIALIZE_TRANSACTION);
+    return Collections.unmodifiableMap(categories);
+  }
+
+  private static void register(Map<String, Category> categories, String[] codes, Category category) {
+    for (String code : codes) {
+      categories.putIfAbsent(code, category);
+    }
+  }
+
+  private static Map<String, String> createErrorCodesNames() {
+    Map<String, String> names = new HashMap<>();
+    names.put("db2", "DB2");
+    names.put("derby", "Derby");
+    names.put("h2", "H2");
+    names.put("hana", "HDB");
+    names.put("hdb", "HDB");
+    names.put("hsql", "HSQL");
+    names.put("hsqldb", "HSQL");
+    names.put("informix", "Informix");
+    names.put("mariadb", "MySQL");
+    names.put("mysql", "MySQL");
+    names.put("oracle", "Oracle");
+    names.put("postgres", "PostgreSQL");
+    names.put("postgresql", "PostgreSQL");
+    names.put("ms-sql", "MS-SQL");
+    names.put("mssql", "MS-SQL");
+    names.put("sqlserver", "MS-SQL");
+    names.put("sybase", "Sybase");
+    return Collections.unmodifiableMap(names);
+  }
+
+  private static String message(String task, String sql) {
+    return sql == null ? task : task + "; SQL [" + sql + "]";
+  }
+
+  /**
+   * The exception a group of error codes is translated to.
+   */
+  private enum Category {
+
+    BAD_SQL_GRAMMAR(null) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new BadSqlGrammarException(task, sql != null ? sql : "", ex);
+      }
+    },
+
+    INVALID_RESULT_SET_ACCESS(null) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new InvalidResultSetAccessException(task, sql != null ? sql : "", ex);
+      }
+    },
+
+    DUPLICATE_KEY(ExpectedDataAccessFailure.DUPLICATE_KEY) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new DuplicateKeyException(message(task, sql), ex);
+      }
+    },
+
+    DATA_INTEGRITY_VIOLATION(null) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new DataIntegrityViolationException(message(task, sql), ex);
+      }
+    },
+
+    PERMISSION_DENIED(null) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new PermissionDeniedDataAccessException(message(task, sql), ex);
+      }
+    },
+
+    DATA_ACCESS_RESOURCE_FAILURE(null) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new DataAccessResourceFailureException(message(task, sql), ex);
+      }
+    },
+
+    TRANSIENT_DATA_ACCESS_RESOURCE(null) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new TransientDataAccessResourceException(message(task, sql), ex);
+      }
+    },
+
+    CANNOT_ACQUIRE_LOCK(ExpectedDataAccessFailure.CANNOT_ACQUIRE_LOCK) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new CannotAcquireLockException(message(task, sql), ex);
+      }
+    },
+
+    DEADLOCK_LOSER(ExpectedDataAccessFailure.DEADLOCK_LOSER) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new DeadlockLoserDataAccessException(message(task, sql), ex);
+      }
+    },
+
+    CANNOT_SERIALIZE_TRANSACTION(ExpectedDataAccessFailure.CANNOT_SERIALIZE_TRANSACTION) {
+      @Override
+      DataAccessException create(String task, String sql, SQLException ex) {
+        return new CannotSerializeTransactionException(message(task, sql), ex);
+      }
+    };
+
+    private final ExpectedDataAccessFailure expected;
+
+    Category(ExpectedDataAccessFailure expected) {
+      this.expected = expected;
+    }
+
+    abstract DataAccessException create(String task, String sql, SQLException ex);
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.binding.MapperProxy;
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * Mapper proxy bound to a {@link SqlSessionTemplate} that runs each mapper method directly over the {@code SqlSession}
+ * of the current call.
+ * <p>
+ * A MyBatis {@code MapperProxy} over a template calls the template, which in turn gets the session, so every mapper
+ * call goes through two dispatches. This proxy gets the session once per invocation and executes the cached
+ * {@code MapperMethod} on it. Default methods are delegated to a regular {@code MapperProxy} so they behave as usual,
+ * calling back into this proxy.
+ * <p>
+ * Any {@code PersistenceException} thrown while running the method is translated by the template, including the
+ * {@code BindingException}s raised by {@code MapperMethod} after the statement ran.
+ *
+ * @see SqlSessionTemplate#getDirectMapper(Class)
+ * @since 2.0.6
+ */
+final class DirectMapperProxy<T> implements InvocationHandler {
+
+  private final SqlSessionTemplate sqlSessionTemplate;
+
+  private final Class<T> mapperInterface;
+
+  private final MapperProxy<T> fallback;
+
+  private final Map<Method, DirectMethod> methodCache = new ConcurrentHashMap<>();
+
+  private DirectMapperProxy(SqlSessionTemplate sqlSessionTemplate, Class<T> mapperInterface, MapperProxy<T> fallback) {
+    this.sqlSessionTemplate = sqlSessionTemplate;
+    this.mapperInterface = mapperInterface;
+    this.fallback = fallback;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> T newInstance(SqlSessionTemplate sqlSessionTemplate, Class<T> mapperInterface) {
+    // fails like SqlSession.getMapper() if the mapper is not known
+    T mapper = sqlSessionTemplate.getConfiguration().getMapper(mapperInterface, sqlSessionTemplate);
+    MapperProxy<T> fallback = (MapperProxy<T>) Proxy.getInvocationHandler(mapper);
+    return (T) Proxy.newProxyInstance(mapperInterface.getClassLoader(), new Class[] { mapperInterface },
+        new DirectMapperProxy<>(sqlSessionTemplate, mapperInterface, fallback));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (Object.class.equals(method.getDeclaringClass())) {
+      try {
+        return method.invoke(this, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+    if (method.isDefault()) {
+      return fallback.invoke(proxy, method, args);
+    }
+    DirectMethod directMethod = cachedMethod(method);
+    Object parameter = args == null || args.length != 1 ? args : args[0];
+    return sqlSessionTemplate.execute(directMethod.statement, parameter,
+        sqlSession -> directMethod.mapperMethod.execute(sqlSession, args));
+  }
+
+  private DirectMethod cachedMethod(Method method) {
+    // a get first avoids the lock taken by computeIfAbsent on Java 8
+    DirectMethod directMethod = methodCache.get(method);
+    if (directMethod != null) {
+      return directMethod;
+    }
+    return methodCache.computeIfAbsent(method, m -> new DirectMethod(mapperInterface, m, sqlSessionTemplate));
+  }
+
+  @Override
+  public String toString() {
+    return "DirectMapperProxy[" + mapperInterface.getName() + "]";
+  }
+
+  private static final class DirectMethod {
+
+    private final MapperMethod mapperMethod;
+
+    // the statement id passed to the template, null for a flush
+    private final String statement;
+
+    DirectMethod(Class<?> mapperInterface, Method method, SqlSessionTemplate sqlSessionTemplate) {
+      this.mapperMethod = new MapperMethod(mapperInterface, method, sqlSessionTemplate.getConfiguration());
+      MapperMethod.SqlCommand command = new MapperMethod.SqlCommand(sqlSessionTemplate.getConfiguration(),
+          mapperInterface, method);
+      this.statement = command.getName();
+    }
+  }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.sql.SQLException;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Data access failures that an application expects and handles, e.g. a duplicate key on an idempotent insert or a
+ * deadlock on a retried transaction. A {@link MyBatisExceptionTranslator} can translate them to exceptions that have
+ * a fixed message and no stack trace, which are much cheaper to throw.
+ *
+ * @since 2.0.6
+ * @see MyBatisExceptionTranslator#setStacklessFailures(java.util.Set)
+ */
+public enum ExpectedDataAccessFailure {
+
+  /**
+   * A {@code DuplicateKeyException}: an insert or update violated a primary key or unique constraint.
+   */
+  DUPLICATE_KEY(DuplicateKeyException.class) {
+    @Override
+    DataAccessException create(SQLException cause) {
+      return new StacklessDuplicateKeyException(cause);
+    }
+  },
+
+  /**
+   * An {@code OptimisticLockingFailureException}, as thrown by custom translators or application code.
+   */
+  OPTIMISTIC_LOCK(OptimisticLockingFailureException.class) {
+    @Override
+    DataAccessException create(SQLException cause) {
+      return new StacklessOptimisticLockingFailureException(cause);
+    }
+  },
+
+  /**
+   * A {@code DeadlockLoserDataAccessException}: the transaction was chosen as the victim of a deadlock.
+   */
+  DEADLOCK_LOSER(DeadlockLoserDataAccessException.class) {
+    @Override
+    DataAccessException create(SQLException cause) {
+      return new StacklessDeadlockLoserDataAccessException(cause);
+    }
+  },
+
+  /**
+   * A {@code CannotAcquireLockException}: a lock could not be acquired, e.g. with {@code SELECT ... FOR UPDATE NOWAIT}.
+   */
+  CANNOT_ACQUIRE_LOCK(CannotAcquireLockException.class) {
+    @Override
+    DataAccessException create(SQLException cause) {
+      return new StacklessCannotAcquireLockException(cause);
+    }
+  },
+
+  /**
+   * A {@code CannotSerializeTransactionException}: a serializable transaction conflicted with a concurrent one, the
+   * optimistic concurrency failure of databases such as PostgreSQL.
+   */
+  CANNOT_SERIALIZE_TRANSACTION(CannotSerializeTransactionException.class) {
+    @Override
+    DataAccessException create(SQLException cause) {
+      return new StacklessCannotSerializeTransactionException(cause);
+    }
+  };
+
+  private static final String MESSAGE_SUFFIX = " (stack trace omitted, see the debug log of "
+      + MyBatisExceptionTranslator.class.getName() + ")";
+
+  private final Class<? extends DataAccessException> type;
+
+  ExpectedDataAccessFailure(Class<? extends DataAccessException> type) {
+    this.type = type;
+  }
+
+  /**
+   * @return the type of the exceptions of this failure
+   */
+  public Class<? extends DataAccessException> getType() {
+    return type;
+  }
+
+  /**
+   * Creates the stackless exception of this failure.
+   */
+  abstract DataAccessException create(SQLException cause);
+
+  /**
+   * Returns the failure a translated exception stands for.
+   *
+   * @param translated
+   *          an exception returned by a translator
+   * @return its failure, {@code null} if it is not an expected one
+   */
+  static ExpectedDataAccessFailure of(DataAccessException translated) {
+    for (ExpectedDataAccessFailure failure : values()) {
+      if (failure.type.isInstance(translated)) {
+        return failure;
+      }
+    }
+    return null;
+  }
+
+  private static final class StacklessDuplicateKeyException extends DuplicateKeyException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MESSAGE = "Duplicate key" + MESSAGE_SUFFIX;
+
+    StacklessDuplicateKeyException(Throwable cause) {
+      super(MESSAGE, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class StacklessOptimisticLockingFailureException extends OptimisticLockingFailureException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MESSAGE = "Optimistic locking failure" + MESSAGE_SUFFIX;
+
+    StacklessOptimisticLockingFailureException(Throwable cause) {
+      super(MESSAGE, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class StacklessDeadlockLoserDataAccessException extends DeadlockLoserDataAccessException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MESSAGE = "Deadlock loser" + MESSAGE_SUFFIX;
+
+    StacklessDeadlockLoserDataAccessException(Throwable cause) {
+      super(MESSAGE, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class StacklessCannotAcquireLockException extends CannotAcquireLockException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MESSAGE = "Cannot acquire lock" + MESSAGE_SUFFIX;
+
+    StacklessCannotAcquireLockException(Throwable cause) {
+      super(MESSAGE, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class StacklessCannotSerializeTransactionException
+      extends CannotSerializeTransactionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MESSAGE = "Cannot serialize transaction" + MESSAGE_SUFFIX;
+
+    StacklessCannotSerializeTransactionException(Throwable cause) {
+      super(MESSAGE, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+}
@@ -15,12 +15,20 @@
  */
 package org.mybatis.spring;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.function.Supplier;
 
 import javax.sql.DataSource;
 
 import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.Configuration;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.support.PersistenceExceptionTranslator;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
@@ -38,8 +46,11 @@ import org.springframework.transaction.TransactionException;
  */
 public class MyBatisExceptionTranslator implements PersistenceExceptionTranslator {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(MyBatisExceptionTranslator.class);
+
   private final Supplier<SQLExceptionTranslator> exceptionTranslatorSupplier;
   private SQLExceptionTranslator exceptionTranslator;
+  private volatile Set<ExpectedDataAccessFailure> stacklessFailures = Collections.emptySet();
 
   /**
    * Creates a new {@code PersistenceExceptionTranslator} instance with {@code SQLErrorCodeSQLExceptionTranslator}.
@@ -54,6 +65,23 @@ public class MyBatisExceptionTranslator implements PersistenceExceptionTranslato
     this(() -> new SQLErrorCodeSQLExceptionTranslator(dataSource), exceptionTranslatorLazyInit);
   }
 
+  /**
+   * Creates a new {@code PersistenceExceptionTranslator} instance for the sessions of a MyBatis configuration. When its
+   * {@code databaseId} names a database known to Spring's {@code sql-error-codes.xml}, the shared
+   * {@code DatabaseIdSQLExceptionTranslator} of that database is used and translating never needs a connection.
+   * Otherwise a {@code SQLErrorCodeSQLExceptionTranslator} reads the metadata of the environment's DataSource.
+   *
+   * @param configuration
+   *          the MyBatis configuration whose exceptions are translated
+   * @param exceptionTranslatorLazyInit
+   *          if true, the translator instantiates internal stuff only the first time will have the need to translate
+   *          exceptions.
+   * @since 2.0.6
+   */
+  public MyBatisExceptionTranslator(Configuration configuration, boolean exceptionTranslatorLazyInit) {
+    this(translatorSupplier(configuration), exceptionTranslatorLazyInit);
+  }
+
   /**
    * Creates a new {@code PersistenceExceptionTranslator} instance with specified {@code SQLExceptionTranslator}.
    *
@@ -85,7 +113,12 @@ public class MyBatisExceptionTranslator implements PersistenceExceptionTranslato
       }
       if (e.getCause() instanceof SQLException) {
         this.initExceptionTranslator();
-        return this.exceptionTranslator.translate(e.getMessage() + "\n", null, (SQLException) e.getCause());
+        SQLException sqlException = (SQLException) e.getCause();
+        Set<ExpectedDataAccessFailure> stackless = this.stacklessFailures;
+        if (stackless.isEmpty()) {
+          return this.exceptionTranslator.translate(e.getMessage(), null, sqlException);
+        }
+        return translateStackless(e, sqlException, stackless);
       } else if (e.getCause() instanceof TransactionException) {
         throw (TransactionException) e.getCause();
       }
@@ -94,6 +127,64 @@ public class MyBatisExceptionTranslator implements PersistenceExceptionTranslato
     return null;
   }
 
+  /**
+   * Sets the expected failures that are translated to exceptions with a fixed message and no stack trace. The
+   * {@code PersistenceException} and its {@code SQLException} are still logged at debug level. Defaults to none.
+   * <p>
+   * With a {@link DatabaseIdSQLExceptionTranslator} the expected failures are recognized from their error code and
+   * only the stackless exception is created; other translators first translate the exception as usual.
+   *
+   * @param stacklessFailures
+   *          the failures translated to stackless exceptions
+   * @since 2.0.6
+   */
+  public void setStacklessFailures(Set<ExpectedDataAccessFailure> stacklessFailures) {
+    this.stacklessFailures = stacklessFailures == null || stacklessFailures.isEmpty() ? Collections.emptySet()
+        : Collections.unmodifiableSet(EnumSet.copyOf(stacklessFailures));
+  }
+
+  /**
+   * @return the failures translated to stackless exceptions
+   * @since 2.0.6
+   */
+  public Set<ExpectedDataAccessFailure> getStacklessFailures() {
+    return this.stacklessFailures;
+  }
+
+  private DataAccessException translateStackless(RuntimeException e, SQLException sqlException,
+      Set<ExpectedDataAccessFailure> stackless) {
+    ExpectedDataAccessFailure failure;
+    if (this.exceptionTranslator instanceof DatabaseIdSQLExceptionTranslator) {
+      failure = ((DatabaseIdSQLExceptionTranslator) this.exceptionTranslator).expectedFailure(sqlException);
+      if (failure == null || !stackless.contains(failure)) {
+        return this.exceptionTranslator.translate(e.getMessage(), null, sqlException);
+      }
+    } else {
+      DataAccessException translated = this.exceptionTranslator.translate(e.getMessage(), null, sqlException);
+      failure = translated == null ? null : ExpectedDataAccessFailure.of(translated);
+      if (failure == null || !stackless.contains(failure)) {
+        return translated;
+      }
+    }
+    LOGGER.debug(() -> "Translating to a stackless " + failure + " failure: " + stackTrace(e));
+    return failure.create(sqlException);
+  }
+
+  private static String stackTrace(Throwable e) {
+    StringWriter writer = new StringWriter();
+    e.printStackTrace(new PrintWriter(writer));
+    return writer.toString();
+  }
+
+  private static Supplier<SQLExceptionTranslator> translatorSupplier(Configuration configuration) {
+    SQLExceptionTranslator translator = DatabaseIdSQLExceptionTranslator.forDatabaseId(configuration.getDatabaseId());
+    if (translator != null) {
+      return () -> translator;
+    }
+    DataSource dataSource = configuration.getEnvironment().getDataSource();
+    return () -> new SQLErrorCodeSQLExceptionTranslator(dataSource);
+  }
+
   /**
    * Initializes the internal translator reference.
    */
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+/**
+ * How a {@link SqlSessionTemplate} ends the {@code SqlSession} of a call that runs outside of a Spring transaction
+ * when the call only ran a plain {@code SELECT}.
+ * <p>
+ * Calls that run any other statement, or a {@code SELECT} mapped as a callable statement, are always committed.
+ * These modes only matter for connections that are not in auto-commit mode: with auto-commit enabled the commit and
+ * the rollback are never sent to the database.
+ *
+ * @see SqlSessionTemplate#setSelectCompletionMode(SelectCompletionMode)
+ * @since 2.0.6
+ */
+public enum SelectCompletionMode {
+
+  /**
+   * Forces a commit, as done for every other statement. This is the default and the only safe choice for databases
+   * that refuse to close a connection that has an active unit of work (e.g. Derby or DB2) when the {@code DataSource}
+   * closes physical connections instead of pooling them.
+   */
+  COMMIT,
+
+  /**
+   * Rolls the session back instead of committing it. Some drivers skip the rollback when nothing was changed. A
+   * statement that stores its results in a second level cache is still committed, because a rollback would discard
+   * the cached entries.
+   */
+  ROLLBACK,
+
+  /**
+   * Neither commits nor rolls back: the connection is released as is and its pool is expected to end the unit of
+   * work (most pools roll back connections returned outside of auto-commit mode).
+   */
+  NONE
+
+}
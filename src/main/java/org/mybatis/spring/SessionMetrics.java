@@ -0,0 +1,63 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.metrics.SqlSessionMetrics;
+
+/**
+ * Reports the session events to the {@link org.mybatis.spring.metrics.SqlSessionMetricsRecorder}, if any.
+ */
+final class SessionMetrics {
+
+  private SessionMetrics() {
+    // NOP
+  }
+
+  static void opened(SqlSessionFactory sessionFactory, ExecutorType executorType, boolean managed) {
+    if (SqlSessionMetrics.isEnabled()) {
+      SqlSessionMetrics.getRecorder().sessionOpened(SqlSessionMetrics.getFactoryName(sessionFactory), executorType,
+          managed);
+    }
+  }
+
+  static void reused(SqlSessionFactory sessionFactory, ExecutorType executorType, SqlSessionHolder holder) {
+    if (SqlSessionMetrics.isEnabled()) {
+      SqlSessionMetrics.getRecorder().sessionReused(SqlSessionMetrics.getFactoryName(sessionFactory), executorType,
+          holder.getReferences());
+    }
+  }
+
+  static void closed(SqlSessionFactory sessionFactory, boolean managed) {
+    if (SqlSessionMetrics.isEnabled() && sessionFactory != null) {
+      SqlSessionMetrics.getRecorder().sessionClosed(SqlSessionMetrics.getFactoryName(sessionFactory), managed);
+    }
+  }
+
+  static long start() {
+    return SqlSessionMetrics.isEnabled() ? System.nanoTime() : 0L;
+  }
+
+  static void executed(long start, SqlSessionFactory sessionFactory, ExecutorType executorType, String statement,
+      boolean failed) {
+    if (start != 0L && statement != null && SqlSessionMetrics.isEnabled()) {
+      SqlSessionMetrics.getRecorder().statementExecuted(SqlSessionMetrics.getFactoryName(sessionFactory), executorType,
+          statement, System.nanoTime() - start, failed);
+    }
+  }
+
+}
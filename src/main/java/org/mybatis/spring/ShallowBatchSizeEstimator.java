@@ -0,0 +1,94 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.binding.MapperMethod.ParamMap;
+
+/**
+ * Default {@link BatchSizeEstimator}: sums rough sizes of strings, byte arrays, numbers and the content of collections,
+ * maps and arrays, and counts any other object as a fixed size. It does not look into the properties of beans.
+ * <p>
+ * The parameter map of a mapper method holds each argument under several names (e.g. {@code id} and
+ * {@code param1}): only its distinct values are counted.
+ */
+final class ShallowBatchSizeEstimator implements BatchSizeEstimator {
+
+  static final ShallowBatchSizeEstimator INSTANCE = new ShallowBatchSizeEstimator();
+
+  // header and fields of an object the estimator does not look into
+  private static final long OBJECT_SIZE = 64;
+
+  private static final long REFERENCE_SIZE = 8;
+
+  private ShallowBatchSizeEstimator() {
+  }
+
+  @Override
+  public long estimate(Object parameter) {
+    if (parameter == null) {
+      return 0;
+    }
+    if (parameter instanceof CharSequence) {
+      return 40 + 2L * ((CharSequence) parameter).length();
+    }
+    if (parameter instanceof byte[]) {
+      return 16 + ((byte[]) parameter).length;
+    }
+    if (parameter instanceof Number || parameter instanceof Boolean || parameter instanceof Character) {
+      return 16;
+    }
+    if (parameter instanceof Object[]) {
+      long size = 16;
+      for (Object element : (Object[]) parameter) {
+        size += REFERENCE_SIZE + estimate(element);
+      }
+      return size;
+    }
+    if (parameter instanceof Collection) {
+      long size = OBJECT_SIZE;
+      for (Object element : (Collection<?>) parameter) {
+        size += REFERENCE_SIZE + estimate(element);
+      }
+      return size;
+    }
+    if (parameter instanceof ParamMap) {
+      long size = OBJECT_SIZE;
+      Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (Object value : ((Map<?, ?>) parameter).values()) {
+        size += 32;
+        if (values.add(value)) {
+          size += estimate(value);
+        }
+      }
+      return size;
+    }
+    if (parameter instanceof Map) {
+      long size = OBJECT_SIZE;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) parameter).entrySet()) {
+        size += 32 + estimate(entry.getKey()) + estimate(entry.getValue());
+      }
+      return size;
+    }
+    return OBJECT_SIZE;
+  }
+
+}
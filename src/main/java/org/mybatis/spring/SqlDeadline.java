@@ -0,0 +1,163 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A time budget for the SQL statements run by the current thread.
+ * <p>
+ * While a deadline is open, every {@code SqlSessionTemplate} call fails with a {@code QueryTimeoutException} once the
+ * deadline has passed, and the query timeout of each statement run through a {@code SpringManagedTransaction} is
+ * lowered to the time left (rounded up to a second, the unit of JDBC timeouts). A
+ * {@link org.mybatis.spring.support.StatementCancelInterceptor} registered as a MyBatis plugin also cancels a running
+ * statement as soon as the deadline passes or the calling thread is interrupted.
+ *
+ * <pre class="code">
+ * try (SqlDeadline deadline = SqlDeadline.start(Duration.ofMillis(200))) {
+ *   userMapper.findById(1);
+ *   orderMapper.findByUser(1);
+ * }
+ * </pre>
+ *
+ * Deadlines can be nested: an inner deadline never ends after the outer one. A deadline belongs to the thread that
+ * started it and must be closed on that thread; the same can be declared with
+ * {@link org.mybatis.spring.annotation.WithSqlDeadline}.
+ *
+ * @since 2.0.6
+ */
+public final class SqlDeadline implements AutoCloseable {
+
+  private static final ThreadLocal<SqlDeadline> CURRENT = new ThreadLocal<>();
+
+  private final long deadlineNanos;
+
+  private final SqlDeadline previous;
+
+  private boolean closed;
+
+  private SqlDeadline(long deadlineNanos, SqlDeadline previous) {
+    this.deadlineNanos = deadlineNanos;
+    this.previous = previous;
+  }
+
+  /**
+   * Starts a deadline on the current thread.
+   *
+   * @param budget
+   *          the time the statements run from now on may take
+   * @return the deadline, to be closed when the unit of work ends
+   */
+  public static SqlDeadline start(Duration budget) {
+    return start(budget.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Starts a deadline on the current thread.
+   *
+   * @param budget
+   *          the time the statements run from now on may take
+   * @param unit
+   *          the unit of the budget
+   * @return the deadline, to be closed when the unit of work ends
+   */
+  public static SqlDeadline start(long budget, TimeUnit unit) {
+    SqlDeadline previous = CURRENT.get();
+    long deadlineNanos = System.nanoTime() + unit.toNanos(budget);
+    if (previous != null && previous.deadlineNanos - deadlineNanos < 0) {
+      deadlineNanos = previous.deadlineNanos;
+    }
+    SqlDeadline deadline = new SqlDeadline(deadlineNanos, previous);
+    CURRENT.set(deadline);
+    return deadline;
+  }
+
+  /**
+   * Runs an action within a deadline.
+   *
+   * @param budget
+   *          the time the statements run by the action may take
+   * @param action
+   *          the unit of work
+   * @param <T>
+   *          the result type of the action
+   * @return the result of the action
+   */
+  public static <T> T call(Duration budget, Supplier<T> action) {
+    try (SqlDeadline deadline = start(budget)) {
+      return action.get();
+    }
+  }
+
+  /**
+   * Returns the deadline of the current thread.
+   *
+   * @return the innermost open deadline, {@code null} if there is none
+   */
+  public static SqlDeadline current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * @return the time left before the deadline, in nanoseconds, negative once it has passed
+   */
+  public long getRemainingNanos() {
+    return deadlineNanos - System.nanoTime();
+  }
+
+  /**
+   * Returns the time left as a JDBC query timeout.
+   *
+   * @return the time left in seconds, rounded up, at least 1
+   */
+  public int getRemainingSeconds() {
+    long remaining = getRemainingNanos();
+    if (remaining <= 0) {
+      return 1;
+    }
+    long seconds = (remaining + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    return (int) Math.min(seconds, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return true if the deadline has passed
+   */
+  public boolean isExpired() {
+    return getRemainingNanos() <= 0;
+  }
+
+  /**
+   * Ends this deadline, the enclosing one (if any) applies again.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (CURRENT.get() != this) {
+      throw new IllegalStateException("SqlDeadline must be closed on the thread that started it, innermost first");
+    }
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+import org.apache.ibatis.cursor.Cursor;
+
+/**
+ * {@code Cursor} returned by a {@link SqlSessionTemplate} call made outside of a transaction. It owns the
+ * {@code SqlSession} that opened the underlying cursor and ends it when the cursor is closed or fully read, so the
+ * rows can still be read after the template call returned.
+ *
+ * @since 2.0.6
+ */
+final class SqlSessionCursor<T> implements Cursor<T> {
+
+  private final Cursor<T> delegate;
+
+  private final Runnable sessionCloser;
+
+  private boolean closed;
+
+  SqlSessionCursor(Cursor<T> delegate, Runnable sessionCloser) {
+    this.delegate = delegate;
+    this.sessionCloser = sessionCloser;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return !closed && delegate.isOpen();
+  }
+
+  @Override
+  public boolean isConsumed() {
+    return delegate.isConsumed();
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return delegate.getCurrentIndex();
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    Iterator<T> iterator = delegate.iterator();
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        if (closed) {
+          return false;
+        }
+        boolean hasNext = iterator.hasNext();
+        if (!hasNext) {
+          // fully read, release the connection without waiting for close()
+          close();
+        }
+        return hasNext;
+      }
+
+      @Override
+      public T next() {
+        return iterator.next();
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      delegate.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      sessionCloser.run();
+    }
+  }
+
+}
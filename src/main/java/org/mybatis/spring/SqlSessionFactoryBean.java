@@ -34,7 +34,11 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.type.TypeHandler;
 import org.mybatis.logging.Logger;
 import org.mybatis.logging.LoggerFactory;
+import org.mybatis.spring.jmx.SqlSessionFactoryStatistics;
+import org.mybatis.spring.metrics.SqlSessionMetrics;
 import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationEvent;
@@ -53,6 +57,7 @@ import org.springframework.util.ClassUtils;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Modifier;
 import java.sql.SQLException;
 import java.util.HashSet;
@@ -94,7 +99,9 @@ import static org.springframework.util.StringUtils.tokenizeToStringArray;
  * @see #setConfigLocation
  * @see #setDataSource
  */
-public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, InitializingBean, ApplicationListener<ApplicationEvent> {
+public class SqlSessionFactoryBean
+        implements FactoryBean<SqlSessionFactory>, InitializingBean, DisposableBean, BeanNameAware,
+        ApplicationListener<ApplicationEvent> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SqlSessionFactoryBean.class);
 
@@ -120,8 +127,14 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
     // EnvironmentAware requires spring 3.1
     private String environment = SqlSessionFactoryBean.class.getSimpleName();
 
+    private String beanName;
+
     private boolean failFast;
 
+    private boolean jmxEnabled;
+
+    private SqlSessionFactoryStatistics statistics;
+
     private Interceptor[] plugins;
 
     private TypeHandler<?>[] typeHandlers;
@@ -317,6 +330,18 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
         this.failFast = failFast;
     }
 
+    /**
+     * If true, the runtime statistics of the {@code SqlSessionFactory} are registered as an MBean in the platform
+     * MBean server. Defaults to false.
+     *
+     * @param jmxEnabled enable the MBean
+     * @see SqlSessionFactoryStatistics
+     * @since 2.0.6
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
     /**
      * Set the location of the MyBatis {@code SqlSessionFactory} config file. A typical value is
      * "WEB-INF/mybatis-configuration.xml".
@@ -429,6 +454,18 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
         this.environment = environment;
     }
 
+    /**
+     * The bean name is the name of the factory in the metrics of MyBatis-Spring.
+     *
+     * @param beanName the name of this bean
+     * @see org.mybatis.spring.metrics.SqlSessionMetrics#getFactoryName
+     * @since 2.0.6
+     */
+    @Override
+    public void setBeanName(String beanName) {
+        this.beanName = beanName;
+    }
+
     /**
      * Set scripting language drivers.
      *
@@ -460,8 +497,26 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
         notNull(sqlSessionFactoryBuilder, "Property 'sqlSessionFactoryBuilder' is required");
         state((configuration == null && configLocation == null) || !(configuration != null && configLocation != null),
                 "Property 'configuration' and 'configLocation' can not specified with together");
-        System.out.println("4--sqlSessionFactoryBean --afterPropertiesSet()方法执行");
         this.sqlSessionFactory = buildSqlSessionFactory();
+        if (jmxEnabled) {
+            this.statistics = new SqlSessionFactoryStatistics(this.sqlSessionFactory);
+            this.statistics.register(ManagementFactory.getPlatformMBeanServer());
+        }
+    }
+
+    /**
+     * Unregisters the MBean of the statistics, if any, and the metrics name of the factory.
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        if (this.statistics != null) {
+            this.statistics.close();
+            this.statistics = null;
+        }
+        if (this.sqlSessionFactory != null) {
+            SqlSessionMetrics.removeFactoryName(this.sqlSessionFactory);
+        }
     }
 
     /**
@@ -521,6 +576,11 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
             });
         }
 
+        if (this.jmxEnabled) {
+            // the interceptors cannot be added once the factory serves sessions
+            SqlSessionFactoryStatistics.addInterceptor(targetConfiguration);
+        }
+
         if (hasLength(this.typeHandlersPackage)) {
             scanClasses(this.typeHandlersPackage, TypeHandler.class).stream().filter(clazz -> !clazz.isAnonymousClass())
                     .filter(clazz -> !clazz.isInterface()).filter(clazz -> !Modifier.isAbstract(clazz.getModifiers()))
@@ -566,9 +626,14 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
             }
         }
 
-        targetConfiguration.setEnvironment(new Environment(this.environment,
-                this.transactionFactory == null ? new SpringManagedTransactionFactory() : this.transactionFactory,
-                this.dataSource));
+        String metricsName = this.beanName != null ? this.beanName : this.environment;
+        TransactionFactory targetTransactionFactory = this.transactionFactory == null
+                ? new SpringManagedTransactionFactory() : this.transactionFactory;
+        if (targetTransactionFactory instanceof SpringManagedTransactionFactory
+                && ((SpringManagedTransactionFactory) targetTransactionFactory).getMetricsName() == null) {
+            ((SpringManagedTransactionFactory) targetTransactionFactory).setMetricsName(metricsName);
+        }
+        targetConfiguration.setEnvironment(new Environment(this.environment, targetTransactionFactory, this.dataSource));
 
         if (this.mapperLocations != null) {
             if (this.mapperLocations.length == 0) {
@@ -594,7 +659,9 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
             LOGGER.debug(() -> "Property 'mapperLocations' was not specified.");
         }
 
-        return this.sqlSessionFactoryBuilder.build(targetConfiguration);
+        SqlSessionFactory targetSqlSessionFactory = this.sqlSessionFactoryBuilder.build(targetConfiguration);
+        SqlSessionMetrics.setFactoryName(targetSqlSessionFactory, metricsName);
+        return targetSqlSessionFactory;
     }
 
     /**
@@ -608,7 +675,6 @@ public class SqlSessionFactoryBean implements FactoryBean<SqlSessionFactory>, In
     public SqlSessionFactory getObject() throws Exception {
         if (this.sqlSessionFactory == null) {
             // 返回 DefaultSqlSessionFactory 对象
-            System.out.println("4--sqlSessionFactoryBean --getObject()方法执行--调用afterPropertiesSet()方法");
             afterPropertiesSet();
         }
 
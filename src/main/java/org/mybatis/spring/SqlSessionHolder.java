@@ -17,6 +17,12 @@ package org.mybatis.spring;
 
 import static org.springframework.util.Assert.notNull;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.springframework.dao.support.PersistenceExceptionTranslator;
@@ -24,8 +30,12 @@ import org.springframework.transaction.support.ResourceHolderSupport;
 
 /**
  * Used to keep current {@code SqlSession} in {@code TransactionSynchronizationManager}. The {@code SqlSessionFactory}
- * that created that {@code SqlSession} is used as a key. {@code ExecutorType} is also kept to be able to check if the
- * user is trying to change it during a TX (that is not allowed) and throw a Exception in that case.
+ * that created that {@code SqlSession} is used as a key. {@code ExecutorType} is also kept to know which executor the
+ * session was opened with.
+ * <p>
+ * A transactional holder keeps one more {@code SqlSession} for each other {@code ExecutorType} used during the
+ * transaction, for instance a {@code BATCH} session next to the default {@code SIMPLE} one. All of them share the
+ * connection of the transaction.
  *
  * @author Hunter Presnall
  * @author Eduardo Macarron
@@ -38,6 +48,24 @@ public final class SqlSessionHolder extends ResourceHolderSupport {
 
   private final PersistenceExceptionTranslator exceptionTranslator;
 
+  private boolean scoped;
+
+  private boolean readOnly;
+
+  private Object recording;
+
+  private Map<ExecutorType, SqlSession> otherSessions;
+
+  private Map<ExecutorType, Object> otherRecordings;
+
+  private ExecutorType currentExecutorType;
+
+  private int batchedStatements;
+
+  private long batchedBytes;
+
+  private int references;
+
   /**
    * Creates a new holder instance.
    *
@@ -57,6 +85,7 @@ public final class SqlSessionHolder extends ResourceHolderSupport {
     this.sqlSession = sqlSession;
     this.executorType = executorType;
     this.exceptionTranslator = exceptionTranslator;
+    this.currentExecutorType = executorType;
   }
 
   public SqlSession getSqlSession() {
@@ -71,4 +100,184 @@ public final class SqlSessionHolder extends ResourceHolderSupport {
     return exceptionTranslator;
   }
 
+  /**
+   * Returns the session of this holder that uses an executor type.
+   *
+   * @param executorType
+   *          the executor type of the session
+   * @return the session, {@code null} if none has been opened with that executor type
+   * @since 2.0.6
+   */
+  public SqlSession getSqlSession(ExecutorType executorType) {
+    if (executorType == this.executorType) {
+      return sqlSession;
+    }
+    return otherSessions == null ? null : otherSessions.get(executorType);
+  }
+
+  /**
+   * Returns all the sessions of this holder: the one it was created with, then the others in the order they were
+   * opened.
+   *
+   * @return the sessions of this holder
+   * @since 2.0.6
+   */
+  public List<SqlSession> getSqlSessions() {
+    if (otherSessions == null) {
+      return Collections.singletonList(sqlSession);
+    }
+    List<SqlSession> sessions = new ArrayList<>(otherSessions.size() + 1);
+    sessions.add(sqlSession);
+    sessions.addAll(otherSessions.values());
+    return sessions;
+  }
+
+  List<ExecutorType> getExecutorTypes() {
+    if (otherSessions == null) {
+      return Collections.singletonList(executorType);
+    }
+    List<ExecutorType> executorTypes = new ArrayList<>(otherSessions.size() + 1);
+    executorTypes.add(executorType);
+    executorTypes.addAll(otherSessions.keySet());
+    return executorTypes;
+  }
+
+  void addSqlSession(ExecutorType executorType, SqlSession session, Object recording) {
+    if (otherSessions == null) {
+      otherSessions = new LinkedHashMap<>(4);
+      otherRecordings = new LinkedHashMap<>(4);
+    }
+    otherSessions.put(executorType, session);
+    otherRecordings.put(executorType, recording);
+  }
+
+  boolean holds(SqlSession session) {
+    return session == sqlSession || (otherSessions != null && otherSessions.containsValue(session));
+  }
+
+  /**
+   * @return the executor type of the session used by the latest call
+   */
+  ExecutorType getCurrentExecutorType() {
+    return currentExecutorType;
+  }
+
+  void setCurrentExecutorType(ExecutorType currentExecutorType) {
+    this.currentExecutorType = currentExecutorType;
+  }
+
+  /**
+   * Returns if this holder was bound by a {@link SqlSessionScope} instead of a Spring transaction.
+   *
+   * @return true if the {@code SqlSession} belongs to a session scope
+   * @since 2.0.6
+   */
+  public boolean isScoped() {
+    return scoped;
+  }
+
+  void setScoped(boolean scoped) {
+    this.scoped = scoped;
+  }
+
+  /**
+   * Returns if the sessions of this holder belong to a read-only transaction. Such sessions are not flushed nor
+   * committed, and {@code SqlSessionTemplate} rejects the write statements run with them.
+   *
+   * @return true if the transaction is read-only
+   * @since 2.0.6
+   */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  void setReadOnly(boolean readOnly) {
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Returns the number of statements added to the batch of the {@code BATCH} session since it was last flushed by
+   * MyBatis-Spring.
+   *
+   * @return the number of batched statements
+   * @since 2.0.6
+   */
+  public int getBatchedStatements() {
+    return batchedStatements;
+  }
+
+  /**
+   * Returns the estimated size of the statements added to the batch of the {@code BATCH} session since it was last
+   * flushed by MyBatis-Spring.
+   *
+   * @return the estimated size in bytes, 0 if no size limit is set
+   * @see BatchSizeEstimator
+   * @since 2.0.6
+   */
+  public long getBatchedBytes() {
+    return batchedBytes;
+  }
+
+  void batched(long bytes) {
+    batchedStatements++;
+    batchedBytes += bytes;
+  }
+
+  void resetBatched() {
+    batchedStatements = 0;
+    batchedBytes = 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void requested() {
+    super.requested();
+    references++;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void released() {
+    super.released();
+    references--;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void reset() {
+    super.reset();
+    references = 0;
+  }
+
+  /**
+   * @return the number of calls that currently hold the sessions of this holder
+   */
+  int getReferences() {
+    return references;
+  }
+
+  /**
+   * @return the Flight Recorder event of the session, {@code null} if it is not recorded
+   */
+  Object getRecording() {
+    return recording;
+  }
+
+  Object getRecording(ExecutorType executorType) {
+    if (executorType == this.executorType) {
+      return recording;
+    }
+    return otherRecordings == null ? null : otherRecordings.get(executorType);
+  }
+
+  void setRecording(Object recording) {
+    this.recording = recording;
+  }
+
 }
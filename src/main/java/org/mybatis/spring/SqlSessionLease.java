@@ -0,0 +1,103 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.mybatis.logging.SessionTrace;
+import org.mybatis.logging.SessionTraceEvent;
+import org.mybatis.spring.jfr.FlightRecorderEvents;
+
+/**
+ * A {@code SqlSession} handed out by {@link SqlSessionUtils#leaseSqlSession} together with the holder it was found in,
+ * so the caller knows whether the session is managed by Spring and can give it back without looking the holder up
+ * again.
+ * <p>
+ * A lease is meant to be used by a single call on the thread that got it and must be released exactly once.
+ *
+ * @since 2.0.6
+ */
+public final class SqlSessionLease {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqlSessionLease.class);
+
+  private final SqlSession sqlSession;
+
+  private final SqlSessionHolder holder;
+
+  private final Object recording;
+
+  private final SqlSessionFactory sessionFactory;
+
+  SqlSessionLease(SqlSession sqlSession, SqlSessionHolder holder) {
+    this(sqlSession, holder, null, null);
+  }
+
+  SqlSessionLease(SqlSession sqlSession, SqlSessionHolder holder, Object recording, SqlSessionFactory sessionFactory) {
+    this.sqlSession = sqlSession;
+    this.holder = holder;
+    this.recording = recording;
+    this.sessionFactory = sessionFactory;
+  }
+
+  /**
+   * @return the leased session
+   */
+  public SqlSession getSqlSession() {
+    return sqlSession;
+  }
+
+  /**
+   * @return the holder that manages the session, {@code null} if the session is not managed by Spring
+   */
+  public SqlSessionHolder getHolder() {
+    return holder;
+  }
+
+  /**
+   * Returns if the session is managed by Spring, either by a transaction or by a {@link SqlSessionScope}. A managed
+   * session must not be committed nor closed by the caller.
+   *
+   * @return true if session is transactional, otherwise false
+   * @see SqlSessionUtils#isSqlSessionTransactional
+   */
+  public boolean isTransactional() {
+    return holder != null;
+  }
+
+  /**
+   * Gives the session back: a managed session is only released, it stays open until its transaction or scope ends;
+   * any other session is closed.
+   *
+   * @see SqlSessionUtils#closeSqlSession
+   */
+  public void release() {
+    if (holder != null) {
+      LOGGER.debug(() -> "Releasing transactional SqlSession [" + sqlSession + "]");
+      holder.released();
+      SessionTrace.record(SessionTraceEvent.RELEASED, sqlSession);
+    } else {
+      LOGGER.debug(() -> "Closing non transactional SqlSession [" + sqlSession + "]");
+      sqlSession.close();
+      SessionTrace.record(SessionTraceEvent.CLOSED, sqlSession);
+      FlightRecorderEvents.sessionClosed(recording, false);
+      SessionMetrics.closed(sessionFactory, false);
+    }
+  }
+
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.springframework.util.Assert.notNull;
+
+import java.util.function.Supplier;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.mybatis.logging.SessionTrace;
+import org.mybatis.logging.SessionTraceEvent;
+import org.mybatis.spring.jfr.FlightRecorderEvents;
+import org.springframework.core.Ordered;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Binds one {@code SqlSession} to the current thread for a unit of work that runs outside of a Spring transaction.
+ * <p>
+ * Without a transaction every {@code SqlSessionTemplate} call opens a session, forces a commit and closes it. Inside a
+ * scope all calls done with the same {@code SqlSessionFactory} reuse one session (and so one connection and its first
+ * level cache); the session is committed and closed once, when the scope is closed.
+ *
+ * <pre class="code">
+ * try (SqlSessionScope scope = SqlSessionScope.open(sqlSessionFactory)) {
+ *   userMapper.findById(1);
+ *   userMapper.findById(2);
+ * }
+ * </pre>
+ *
+ * A scope does not start a transaction: if the connection is in auto-commit mode each statement is still committed by
+ * the driver. Opening a scope inside a transaction, or inside another scope for the same factory, does nothing. When a
+ * transaction starts inside a scope the scoped session is suspended while the transaction runs and resumed after it
+ * completes. A scope belongs to the thread that opened it and must be closed on that thread.
+ *
+ * @see org.mybatis.spring.annotation.SqlSessionScoped
+ * @since 2.0.6
+ */
+public final class SqlSessionScope implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqlSessionScope.class);
+
+  private final SqlSessionFactory sessionFactory;
+
+  private final SqlSessionHolder holder;
+
+  private boolean closed;
+
+  private SqlSessionScope(SqlSessionFactory sessionFactory, SqlSessionHolder holder) {
+    this.sessionFactory = sessionFactory;
+    this.holder = holder;
+  }
+
+  /**
+   * Opens a scope using the default {@code ExecutorType} of the factory.
+   *
+   * @param sessionFactory
+   *          the factory whose sessions are scoped
+   * @return the scope, to be closed when the unit of work ends
+   */
+  public static SqlSessionScope open(SqlSessionFactory sessionFactory) {
+    notNull(sessionFactory, "No SqlSessionFactory specified");
+    return open(sessionFactory, sessionFactory.getConfiguration().getDefaultExecutorType());
+  }
+
+  /**
+   * Opens a scope.
+   *
+   * @param sessionFactory
+   *          the factory whose sessions are scoped
+   * @param executorType
+   *          the executor type of the scoped session
+   * @return the scope, to be closed when the unit of work ends
+   */
+  public static SqlSessionScope open(SqlSessionFactory sessionFactory, ExecutorType executorType) {
+    notNull(sessionFactory, "No SqlSessionFactory specified");
+    notNull(executorType, "No ExecutorType specified");
+
+    if (TransactionSynchronizationManager.getResource(sessionFactory) != null
+        || TransactionSynchronizationManager.isSynchronizationActive()) {
+      LOGGER.debug(() -> "SqlSession scope joins the current transaction or scope");
+      return new SqlSessionScope(sessionFactory, null);
+    }
+
+    SqlSession session = sessionFactory.openSession(executorType);
+    SessionTrace.record(SessionTraceEvent.CREATED, session);
+    PersistenceExceptionTranslator exceptionTranslator = new MyBatisExceptionTranslator(
+        sessionFactory.getConfiguration(), true);
+    SqlSessionHolder holder = new SqlSessionHolder(session, executorType, exceptionTranslator);
+    holder.setScoped(true);
+    holder.setRecording(FlightRecorderEvents.sessionOpened(executorType));
+    LOGGER.debug(() -> "Binding scoped SqlSession [" + session + "]");
+    TransactionSynchronizationManager.bindResource(sessionFactory, holder);
+    SessionTrace.record(SessionTraceEvent.REGISTERED, session);
+    SessionMetrics.opened(sessionFactory, executorType, true);
+    return new SqlSessionScope(sessionFactory, holder);
+  }
+
+  /**
+   * Runs an action inside a scope using the default {@code ExecutorType} of the factory. The scoped session is
+   * committed if the action completes normally and rolled back if it throws an exception.
+   *
+   * @param sessionFactory
+   *          the factory whose sessions are scoped
+   * @param action
+   *          the unit of work
+   * @param <T>
+   *          the result type of the action
+   * @return the result of the action
+   */
+  public static <T> T execute(SqlSessionFactory sessionFactory, Supplier<T> action) {
+    notNull(sessionFactory, "No SqlSessionFactory specified");
+    return execute(sessionFactory, sessionFactory.getConfiguration().getDefaultExecutorType(), action);
+  }
+
+  /**
+   * Runs an action inside a scope. The scoped session is committed if the action completes normally and rolled back if
+   * it throws an exception; an exception thrown by the rollback is added as suppressed to the one of the action.
+   *
+   * @param sessionFactory
+   *          the factory whose sessions are scoped
+   * @param executorType
+   *          the executor type of the scoped session, the one of the templates used by the action
+   * @param action
+   *          the unit of work
+   * @param <T>
+   *          the result type of the action
+   * @return the result of the action
+   */
+  public static <T> T execute(SqlSessionFactory sessionFactory, ExecutorType executorType, Supplier<T> action) {
+    SqlSessionScope scope = open(sessionFactory, executorType);
+    T result;
+    try {
+      result = action.get();
+    } catch (RuntimeException | Error e) {
+      try {
+        scope.rollback();
+      } catch (RuntimeException rollbackException) {
+        e.addSuppressed(rollbackException);
+      }
+      throw e;
+    }
+    scope.close();
+    return result;
+  }
+
+  /**
+   * Returns if a scope opened on this thread is currently bound for the given factory.
+   *
+   * @param sessionFactory
+   *          a factory of SqlSession
+   * @return true if the calls using the factory share a scoped session
+   */
+  public static boolean isActive(SqlSessionFactory sessionFactory) {
+    Object holder = TransactionSynchronizationManager.getResource(sessionFactory);
+    return holder instanceof SqlSessionHolder && ((SqlSessionHolder) holder).isScoped();
+  }
+
+  /**
+   * Unbinds a scoped holder because a transaction started inside its scope. It will be bound again once the
+   * transaction completes.
+   */
+  static void suspend(SqlSessionFactory sessionFactory, SqlSessionHolder holder) {
+    LOGGER.debug(() -> "Suspending scoped SqlSession [" + holder.getSqlSession() + "] for the current transaction");
+    TransactionSynchronizationManager.unbindResource(sessionFactory);
+    TransactionSynchronizationManager.registerSynchronization(new ScopeResumingSynchronization(sessionFactory, holder));
+  }
+
+  /**
+   * Returns if this scope owns a session, false if it joined a transaction or an outer scope.
+   *
+   * @return true if closing this scope closes a session
+   */
+  public boolean isOwner() {
+    return holder != null;
+  }
+
+  /**
+   * Commits and closes the scoped session. Does nothing if this scope joined a transaction or an outer scope.
+   */
+  @Override
+  public void close() {
+    close(true);
+  }
+
+  /**
+   * Rolls back and closes the scoped session. Does nothing if this scope joined a transaction or an outer scope.
+   */
+  public void rollback() {
+    close(false);
+  }
+
+  private void close(boolean commit) {
+    if (holder == null || closed) {
+      return;
+    }
+    closed = true;
+
+    if (TransactionSynchronizationManager.getResource(sessionFactory) == holder) {
+      TransactionSynchronizationManager.unbindResource(sessionFactory);
+    }
+    holder.unbound();
+
+    SqlSession session = holder.getSqlSession();
+    try {
+      if (commit) {
+        LOGGER.debug(() -> "Committing scoped SqlSession [" + session + "]");
+        session.commit(true);
+      } else {
+        LOGGER.debug(() -> "Rolling back scoped SqlSession [" + session + "]");
+        session.rollback(true);
+      }
+    } catch (PersistenceException p) {
+      DataAccessException translated = holder.getPersistenceExceptionTranslator().translateExceptionIfPossible(p);
+      throw translated != null ? translated : p;
+    } finally {
+      LOGGER.debug(() -> "Closing scoped SqlSession [" + session + "]");
+      session.close();
+      SessionTrace.record(SessionTraceEvent.CLOSED, session);
+      FlightRecorderEvents.sessionClosed(holder.getRecording(), true);
+      SessionMetrics.closed(sessionFactory, true);
+    }
+  }
+
+  /**
+   * Binds a suspended scoped holder again when the transaction that suspended it completes.
+   */
+  private static final class ScopeResumingSynchronization extends TransactionSynchronizationAdapter {
+
+    private final SqlSessionFactory sessionFactory;
+
+    private final SqlSessionHolder holder;
+
+    private final Thread owner = Thread.currentThread();
+
+    ScopeResumingSynchronization(SqlSessionFactory sessionFactory, SqlSessionHolder holder) {
+      this.sessionFactory = sessionFactory;
+      this.holder = holder;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getOrder() {
+      // after the transactional SqlSession has been unbound
+      return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterCompletion(int status) {
+      if (holder.isVoid()) {
+        return;
+      }
+      if (Thread.currentThread() != owner || TransactionSynchronizationManager.hasResource(sessionFactory)) {
+        LOGGER.warn(() -> "Cannot resume scoped SqlSession [" + holder.getSqlSession()
+            + "], calls will use a new SqlSession until its scope is closed");
+        return;
+      }
+      LOGGER.debug(() -> "Resuming scoped SqlSession [" + holder.getSqlSession() + "]");
+      TransactionSynchronizationManager.bindResource(sessionFactory, holder);
+    }
+  }
+
+}
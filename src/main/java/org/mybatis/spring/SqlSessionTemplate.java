@@ -18,28 +18,39 @@ package org.mybatis.spring;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.session.*;
+import org.mybatis.spring.jfr.FlightRecorderEvents;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
-
-import static java.lang.reflect.Proxy.newProxyInstance;
-import static org.apache.ibatis.reflection.ExceptionUtil.unwrapThrowable;
-import static org.mybatis.spring.SqlSessionUtils.closeSqlSession;
-import static org.mybatis.spring.SqlSessionUtils.isSqlSessionTransactional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.mybatis.spring.SqlSessionUtils.leaseSqlSession;
+import static org.springframework.util.Assert.isInstanceOf;
 import static org.springframework.util.Assert.notNull;
 
 /**
  * 问题1：
  * SqlSessionTemplate是如何保证线程安全的？mybatis默认的sqlSession不是线程安全的，需要每个线程有一个单例的对象实例。
  * 问题2：
- * 具体的SqlSession的功能，则是通过内部包含的sqlSessionProxy来实现，这也是静态代理的一种实现。
- * 同时内部的sqlSessionProxy实现InvocationHandler接口，则是动态代理的一种实现，而线程安全也是在这里实现的。
+ * 具体的SqlSession的功能，则是每个方法通过execute获取当前线程对应的SqlSession后直接调用来实现，没有动态代理和反射调用，
+ * 而线程安全也是在这里实现的。
  * SqlSession的主要作用是提供SQL操作的API，执行指定的SQL语句，mapper需要依赖SqlSession来执行其方法对应的SQL。
  * <p>
  * Thread safe, Spring managed, {@code SqlSession} that works with Spring transaction management to ensure that that the
@@ -77,17 +88,22 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
 
     private final ExecutorType executorType;
 
-    /**
-     * 具体的SqlSession的功能，则是通过内部包含的sqlSessionProxy来实现，这也是静态代理的一种实现。
-     * 一个代理类，由于SqlSessionTemplate是单例，被所有mapper 所有线程共享
-     * sqlSessionProxy的实现方式也是实现了InvocationHandler接口实现了动态代理
-     * 根据动态代理可知，invoke方法会拦截所有mapper的所有方法调用
-     * 所以这里的实现方式是在invoke方法内部创建一个sqlSession局部变量，从而实现了每个mapper的每个方法调用都使用
-     */
-    private final SqlSession sqlSessionProxy;
-
     private final PersistenceExceptionTranslator exceptionTranslator;
 
+    private SelectCompletionMode selectCompletionMode = SelectCompletionMode.COMMIT;
+
+    private int batchFlushStatements;
+
+    private long batchFlushBytes;
+
+    private BatchSizeEstimator batchSizeEstimator = ShallowBatchSizeEstimator.INSTANCE;
+
+    private Consumer<List<BatchResult>> batchFlushListener;
+
+    private final Map<Class<?>, Object> mappers = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Object> directMappers = new ConcurrentHashMap<>();
+
     /**
      * Constructs a Spring managed SqlSession with the {@code SqlSessionFactory} provided as an argument.
      *
@@ -108,7 +124,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
         this(
                 sqlSessionFactory,
                 executorType,
-                new MyBatisExceptionTranslator(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(), true)
+                new MyBatisExceptionTranslator(sqlSessionFactory.getConfiguration(), true)
         );
     }
 
@@ -130,17 +146,9 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
 
         notNull(sqlSessionFactory, "Property 'sqlSessionFactory' is required");
         notNull(executorType, "Property 'executorType' is required");
-        System.out.println("=======SqlSessionTemplate 构造方法....");
         this.sqlSessionFactory = sqlSessionFactory;
         this.executorType = executorType;
         this.exceptionTranslator = exceptionTranslator;
-        /**
-         * SqlSessionInterceptor实现了动态代理，每次都是动态创建sqlSession
-         */
-        this.sqlSessionProxy = (SqlSession) newProxyInstance(
-                SqlSessionFactory.class.getClassLoader(),
-                new Class[]{SqlSession.class},
-                new SqlSessionInterceptor());
     }
 
     public SqlSessionFactory getSqlSessionFactory() {
@@ -155,15 +163,111 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
         return this.exceptionTranslator;
     }
 
+    /**
+     * Sets the expected failures, e.g. duplicate keys, that the calls of this template throw as exceptions with a fixed
+     * message and no stack trace. Needs the default {@code MyBatisExceptionTranslator} or one given to the constructor.
+     *
+     * @param stacklessFailures the failures thrown as stackless exceptions
+     * @see MyBatisExceptionTranslator#setStacklessFailures(Set)
+     * @since 2.0.6
+     */
+    public void setStacklessFailures(Set<ExpectedDataAccessFailure> stacklessFailures) {
+        isInstanceOf(MyBatisExceptionTranslator.class, this.exceptionTranslator,
+                "Stackless failures need a MyBatisExceptionTranslator");
+        ((MyBatisExceptionTranslator) this.exceptionTranslator).setStacklessFailures(stacklessFailures);
+    }
+
+    /**
+     * Sets how the session of a call that runs outside of a transaction is ended when the call only ran a
+     * {@code SELECT}. Defaults to {@link SelectCompletionMode#COMMIT}, which commits it like any other call.
+     *
+     * @param selectCompletionMode the completion of non transactional {@code SELECT}s
+     * @since 2.0.6
+     */
+    public void setSelectCompletionMode(SelectCompletionMode selectCompletionMode) {
+        notNull(selectCompletionMode, "Property 'selectCompletionMode' is required");
+        this.selectCompletionMode = selectCompletionMode;
+    }
+
+    /**
+     * @return the completion of non transactional {@code SELECT}s
+     * @since 2.0.6
+     */
+    public SelectCompletionMode getSelectCompletionMode() {
+        return this.selectCompletionMode;
+    }
+
+    /**
+     * Sets how many statements a {@code BATCH} template adds to the batch of a transaction before it flushes them,
+     * instead of keeping all of them until the transaction commits. Defaults to 0, no limit.
+     *
+     * @param batchFlushStatements the maximum number of batched statements, 0 for no limit
+     * @since 2.0.6
+     */
+    public void setBatchFlushStatements(int batchFlushStatements) {
+        this.batchFlushStatements = batchFlushStatements;
+    }
+
+    /**
+     * @return the maximum number of batched statements, 0 for no limit
+     * @since 2.0.6
+     */
+    public int getBatchFlushStatements() {
+        return this.batchFlushStatements;
+    }
+
+    /**
+     * Sets the estimated size of the statements a {@code BATCH} template adds to the batch of a transaction before it
+     * flushes them. Defaults to 0, no limit.
+     *
+     * @param batchFlushBytes the maximum estimated size of the batched statements in bytes, 0 for no limit
+     * @see #setBatchSizeEstimator(BatchSizeEstimator)
+     * @since 2.0.6
+     */
+    public void setBatchFlushBytes(long batchFlushBytes) {
+        this.batchFlushBytes = batchFlushBytes;
+    }
+
+    /**
+     * @return the maximum estimated size of the batched statements in bytes, 0 for no limit
+     * @since 2.0.6
+     */
+    public long getBatchFlushBytes() {
+        return this.batchFlushBytes;
+    }
+
+    /**
+     * Sets how the size of a batched statement is estimated for {@link #setBatchFlushBytes(long)}. The default estimator
+     * sums the sizes of simple values, collections and maps and counts any other parameter object as 64 bytes.
+     *
+     * @param batchSizeEstimator the estimator of the size of batched statements
+     * @since 2.0.6
+     */
+    public void setBatchSizeEstimator(BatchSizeEstimator batchSizeEstimator) {
+        notNull(batchSizeEstimator, "Property 'batchSizeEstimator' is required");
+        this.batchSizeEstimator = batchSizeEstimator;
+    }
+
+    /**
+     * Sets a listener called with the results of each flush done because a batch limit was reached, e.g. to check the
+     * update counts. The flushed statements are not returned by a later {@link #flushStatements()}.
+     *
+     * @param batchFlushListener the listener of the flushes, {@code null} for none
+     * @since 2.0.6
+     */
+    public void setBatchFlushListener(Consumer<List<BatchResult>> batchFlushListener) {
+        this.batchFlushListener = batchFlushListener;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public <T> T selectOne(String statement) {
-        //SqlSessionTemplate在内部访问数据库时，其实是委派给sqlSessionProxy来执行数据库操作的，
+        //SqlSessionTemplate在内部访问数据库时，其实是委派给当前线程的SqlSession来执行数据库操作的，
         // SqlSessionTemplate不是自身重新实现了一套mybatis数据库访问的逻辑。
-        // SqlSessionTemplate通过静态代理机制来提供SqlSession接口的行为，即实现SqlSession接口来获取SqlSession的所有方法
-        return this.sqlSessionProxy.selectOne(statement);
+        // 每个方法都通过execute获取SqlSession后直接调用对应的方法，不再经过动态代理和Method.invoke
+        return execute(statement, sqlSession -> sqlSession.selectOne(statement));
     }
 
     /**
@@ -171,7 +275,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <T> T selectOne(String statement, Object parameter) {
-        return this.sqlSessionProxy.selectOne(statement, parameter);
+        return execute(statement, sqlSession -> sqlSession.selectOne(statement, parameter));
     }
 
     /**
@@ -179,7 +283,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
-        return this.sqlSessionProxy.selectMap(statement, mapKey);
+        return execute(statement, sqlSession -> sqlSession.selectMap(statement, mapKey));
     }
 
     /**
@@ -187,7 +291,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
-        return this.sqlSessionProxy.selectMap(statement, parameter, mapKey);
+        return execute(statement, sqlSession -> sqlSession.selectMap(statement, parameter, mapKey));
     }
 
     /**
@@ -195,7 +299,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
-        return this.sqlSessionProxy.selectMap(statement, parameter, mapKey, rowBounds);
+        return execute(statement, sqlSession -> sqlSession.selectMap(statement, parameter, mapKey, rowBounds));
     }
 
     /**
@@ -203,7 +307,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <T> Cursor<T> selectCursor(String statement) {
-        return this.sqlSessionProxy.selectCursor(statement);
+        return execute(statement, sqlSession -> sqlSession.selectCursor(statement));
     }
 
     /**
@@ -211,7 +315,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <T> Cursor<T> selectCursor(String statement, Object parameter) {
-        return this.sqlSessionProxy.selectCursor(statement, parameter);
+        return execute(statement, sqlSession -> sqlSession.selectCursor(statement, parameter));
     }
 
     /**
@@ -219,7 +323,61 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds) {
-        return this.sqlSessionProxy.selectCursor(statement, parameter, rowBounds);
+        return execute(statement, sqlSession -> sqlSession.selectCursor(statement, parameter, rowBounds));
+    }
+
+    /**
+     * Retrieves rows as a {@code Stream} over a {@code Cursor}. The stream must be closed, e.g. with a
+     * try-with-resources block; outside of a transaction its {@code SqlSession} is also ended once all the rows are
+     * read.
+     *
+     * @param statement Unique identifier matching the statement to use.
+     * @param <T>       the returned stream element type.
+     * @return a stream of mapped objects, backed by a cursor
+     * @see #selectCursor(String)
+     * @since 2.0.6
+     */
+    public <T> Stream<T> selectStream(String statement) {
+        return toStream(selectCursor(statement));
+    }
+
+    /**
+     * Retrieves rows as a {@code Stream} over a {@code Cursor}.
+     *
+     * @param statement Unique identifier matching the statement to use.
+     * @param parameter A parameter object to pass to the statement.
+     * @param <T>       the returned stream element type.
+     * @return a stream of mapped objects, backed by a cursor
+     * @see #selectStream(String)
+     * @since 2.0.6
+     */
+    public <T> Stream<T> selectStream(String statement, Object parameter) {
+        return toStream(selectCursor(statement, parameter));
+    }
+
+    /**
+     * Retrieves rows as a {@code Stream} over a {@code Cursor} within the specified row bounds.
+     *
+     * @param statement Unique identifier matching the statement to use.
+     * @param parameter A parameter object to pass to the statement.
+     * @param rowBounds Bounds to limit object retrieval
+     * @param <T>       the returned stream element type.
+     * @return a stream of mapped objects, backed by a cursor
+     * @see #selectStream(String)
+     * @since 2.0.6
+     */
+    public <T> Stream<T> selectStream(String statement, Object parameter, RowBounds rowBounds) {
+        return toStream(selectCursor(statement, parameter, rowBounds));
+    }
+
+    private static <T> Stream<T> toStream(Cursor<T> cursor) {
+        return StreamSupport.stream(cursor.spliterator(), false).onClose(() -> {
+            try {
+                cursor.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     /**
@@ -227,7 +385,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <E> List<E> selectList(String statement) {
-        return this.sqlSessionProxy.selectList(statement);
+        return execute(statement, sqlSession -> sqlSession.selectList(statement));
     }
 
     /**
@@ -235,7 +393,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <E> List<E> selectList(String statement, Object parameter) {
-        return this.sqlSessionProxy.selectList(statement, parameter);
+        return execute(statement, sqlSession -> sqlSession.selectList(statement, parameter));
     }
 
     /**
@@ -243,7 +401,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
-        return this.sqlSessionProxy.selectList(statement, parameter, rowBounds);
+        return execute(statement, sqlSession -> sqlSession.selectList(statement, parameter, rowBounds));
     }
 
     /**
@@ -251,7 +409,10 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public void select(String statement, ResultHandler handler) {
-        this.sqlSessionProxy.select(statement, handler);
+        execute(statement, sqlSession -> {
+            sqlSession.select(statement, handler);
+            return null;
+        });
     }
 
     /**
@@ -259,7 +420,10 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public void select(String statement, Object parameter, ResultHandler handler) {
-        this.sqlSessionProxy.select(statement, parameter, handler);
+        execute(statement, sqlSession -> {
+            sqlSession.select(statement, parameter, handler);
+            return null;
+        });
     }
 
     /**
@@ -267,7 +431,10 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
-        this.sqlSessionProxy.select(statement, parameter, rowBounds, handler);
+        execute(statement, sqlSession -> {
+            sqlSession.select(statement, parameter, rowBounds, handler);
+            return null;
+        });
     }
 
     /**
@@ -275,7 +442,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public int insert(String statement) {
-        return this.sqlSessionProxy.insert(statement);
+        return execute(statement, sqlSession -> sqlSession.insert(statement));
     }
 
     /**
@@ -283,7 +450,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public int insert(String statement, Object parameter) {
-        return this.sqlSessionProxy.insert(statement, parameter);
+        return execute(statement, parameter, sqlSession -> sqlSession.insert(statement, parameter));
     }
 
     /**
@@ -291,7 +458,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public int update(String statement) {
-        return this.sqlSessionProxy.update(statement);
+        return execute(statement, sqlSession -> sqlSession.update(statement));
     }
 
     /**
@@ -299,7 +466,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public int update(String statement, Object parameter) {
-        return this.sqlSessionProxy.update(statement, parameter);
+        return execute(statement, parameter, sqlSession -> sqlSession.update(statement, parameter));
     }
 
     /**
@@ -307,7 +474,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public int delete(String statement) {
-        return this.sqlSessionProxy.delete(statement);
+        return execute(statement, sqlSession -> sqlSession.delete(statement));
     }
 
     /**
@@ -315,7 +482,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public int delete(String statement, Object parameter) {
-        return this.sqlSessionProxy.delete(statement, parameter);
+        return execute(statement, parameter, sqlSession -> sqlSession.delete(statement, parameter));
     }
 
     /**
@@ -323,7 +490,33 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public <T> T getMapper(Class<T> type) {
-        return getConfiguration().getMapper(type, this);
+        // mappers over this template are stateless, build them once
+        Object mapper = this.mappers.get(type);
+        if (mapper == null) {
+            mapper = this.mappers.computeIfAbsent(type, t -> getConfiguration().getMapper(t, this));
+        }
+        return type.cast(mapper);
+    }
+
+    /**
+     * Returns a mapper that runs each method directly over the {@code SqlSession} of the call, instead of going
+     * through a MyBatis {@code MapperProxy} that calls back into this template. Mappers are built once per interface.
+     * <p>
+     * The only visible difference with {@link #getMapper(Class)} is that the {@code BindingException}s raised by
+     * MyBatis once a statement has run (e.g. a {@code null} result for a primitive return type) are translated by the
+     * {@code PersistenceExceptionTranslator} of this template.
+     *
+     * @param type the mapper interface
+     * @param <T>  the mapper type
+     * @return a mapper bound to this template
+     * @since 2.0.6
+     */
+    public <T> T getDirectMapper(Class<T> type) {
+        Object mapper = this.directMappers.get(type);
+        if (mapper == null) {
+            mapper = this.directMappers.computeIfAbsent(type, t -> DirectMapperProxy.newInstance(this, t));
+        }
+        return type.cast(mapper);
     }
 
     /**
@@ -371,7 +564,10 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public void clearCache() {
-        this.sqlSessionProxy.clearCache();
+        execute(sqlSession -> {
+            sqlSession.clearCache();
+            return null;
+        });
     }
 
     /**
@@ -387,7 +583,7 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public Connection getConnection() {
-        return this.sqlSessionProxy.getConnection();
+        return execute(sqlSession -> sqlSession.getConnection());
     }
 
     /**
@@ -397,7 +593,14 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
      */
     @Override
     public List<BatchResult> flushStatements() {
-        return this.sqlSessionProxy.flushStatements();
+        List<BatchResult> results = execute(sqlSession -> sqlSession.flushStatements());
+        if (isBatchLimited()) {
+            SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(this.sqlSessionFactory);
+            if (holder != null) {
+                holder.resetBatched();
+            }
+        }
+        return results;
     }
 
     /**
@@ -426,57 +629,191 @@ public class SqlSessionTemplate implements SqlSession, DisposableBean {
     }
 
     /**
-     * ！！！！ 如何保证SqlSessionTemplate是线程安全的，其实真正执行sql的是sqlSessionProxy代理，
-     * 这里使用sqlSession局部变量来保证线程私有
+     * ！！！！ 如何保证SqlSessionTemplate是线程安全的，每次调用都使用sqlSession局部变量来保证线程私有
      * <p>
-     * Proxy needed to route MyBatis method calls to the proper SqlSession got from Spring's Transaction Manager It also
-     * unwraps exceptions thrown by {@code Method#invoke(Object, Object...)} to pass a {@code PersistenceException} to the
-     * {@code PersistenceExceptionTranslator}.
-     */
-    private class SqlSessionInterceptor implements InvocationHandler {
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            // 获取一个sqlSession来执行proxy的method对应的SQL,
-            // 每次调用都获取创建一个sqlSession线程局部变量，故不同线程相互不影响，在这里实现了SqlSessionTemplate的线程安全性
-            SqlSession sqlSession = SqlSessionUtils.getSqlSession(
-                    SqlSessionTemplate.this.sqlSessionFactory,
-                    SqlSessionTemplate.this.executorType,
-                    SqlSessionTemplate.this.exceptionTranslator
-            );
-            try {
-                //直接通过新创建的SqlSession反射调用method
-                //这也就解释了为什么不需要目标类属性了，这里每次都会创建一个
-                Object result = method.invoke(sqlSession, args);
-                //判断是否加了事务 如果加了事务，则不需要手动commit
-                // 如果当前业务没有使用@Transation,那么每次执行了Mapper接口的方法直接commit
-                // 还记得纯Mybatis的一级缓存吗，这里一级缓存不能起作用了，因为每执行一个Mapper的方法，sqlSession都提交了，sqlSession提交，会清空一级缓存
-                if (!isSqlSessionTransactional(sqlSession, SqlSessionTemplate.this.sqlSessionFactory)) {
-                    // force commit even on non-dirty sessions because some databases require
-                    // a commit/rollback before calling close()
-                    sqlSession.commit(true);
+     * Routes a MyBatis operation to the proper SqlSession got from Spring's Transaction Manager. The operation is called
+     * directly on the session, so no reflection is involved and any {@code PersistenceException} reaches the
+     * {@code PersistenceExceptionTranslator} as it was thrown. Non transactional sessions are committed and closed
+     * once the operation ends.
+     *
+     * @param operation the operation to run over the current {@code SqlSession}
+     * @param <T>       the result type of the operation
+     * @return the result of the operation
+     */
+    private <T> T execute(Function<SqlSession, T> operation) {
+        return execute(null, operation);
+    }
+
+    /**
+     * Routes a MyBatis operation that runs a single mapped statement. The statement id is only looked up when the
+     * {@link SelectCompletionMode} allows to skip the commit of a non transactional {@code SELECT}, it is also the id of
+     * the Flight Recorder event of the call.
+     *
+     * @param statement the id of the statement run by the operation, {@code null} if unknown
+     * @param operation the operation to run over the current {@code SqlSession}
+     * @param <T>       the result type of the operation
+     * @return the result of the operation
+     */
+    <T> T execute(String statement, Function<SqlSession, T> operation) {
+        return execute(statement, null, operation);
+    }
+
+    /**
+     * Routes a MyBatis operation that runs a single mapped statement with a parameter. The parameter is used to
+     * estimate the size of a batched statement when the batches of a {@code BATCH} template are limited.
+     *
+     * @param statement the id of the statement run by the operation, {@code null} if unknown
+     * @param parameter the parameter of the statement
+     * @param operation the operation to run over the current {@code SqlSession}
+     * @param <T>       the result type of the operation
+     * @return the result of the operation
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(String statement, Object parameter, Function<SqlSession, T> operation) {
+        // 获取一个sqlSession来执行对应的SQL,
+        // 每次调用都获取创建一个sqlSession线程局部变量，故不同线程相互不影响，在这里实现了SqlSessionTemplate的线程安全性
+        SqlDeadline deadline = SqlDeadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            // fail before a connection is taken for a statement that has no time left
+            throw new QueryTimeoutException(
+                    "The SQL deadline has passed before running statement '" + statement + "'");
+        }
+        long start = SessionMetrics.start();
+        SqlSessionLease lease = leaseSqlSession(this.sqlSessionFactory, this.executorType, this.exceptionTranslator);
+        SqlSession sqlSession = lease.getSqlSession();
+        Object recording = FlightRecorderEvents.statementStarted();
+        boolean failed = true;
+        try {
+            if (statement != null && lease.isTransactional() && lease.getHolder().isReadOnly()) {
+                checkReadOnly(statement);
+            }
+            T result = operation.apply(sqlSession);
+            FlightRecorderEvents.statementEnded(recording, statement, result);
+            recording = null;
+            if (lease.isTransactional() && statement != null && isBatchLimited()) {
+                flushBatchIfFull(lease.getHolder(), sqlSession, statement, parameter);
+            }
+            //判断是否加了事务 如果加了事务，则不需要手动commit
+            // 如果当前业务没有使用@Transation,那么每次执行了Mapper接口的方法直接commit
+            // 还记得纯Mybatis的一级缓存吗，这里一级缓存不能起作用了，因为每执行一个Mapper的方法，sqlSession都提交了，sqlSession提交，会清空一级缓存
+            if (!lease.isTransactional()) {
+                if (result instanceof Cursor) {
+                    // the cursor is read after this call returns, so it ends the session when it is closed
+                    SqlSessionLease cursorLease = lease;
+                    lease = null;
+                    failed = false;
+                    return (T) new SqlSessionCursor<>((Cursor<?>) result,
+                            () -> closeCursorSession(cursorLease, statement));
                 }
-                return result;
-            } catch (Throwable t) {
-                Throwable unwrapped = unwrapThrowable(t);
-                if (SqlSessionTemplate.this.exceptionTranslator != null && unwrapped instanceof PersistenceException) {
-                    // release the connection to avoid a deadlock if the translator is no loaded. See issue #22
-                    closeSqlSession(sqlSession, SqlSessionTemplate.this.sqlSessionFactory);
-                    sqlSession = null;
-                    Throwable translated = SqlSessionTemplate.this.exceptionTranslator
-                            .translateExceptionIfPossible((PersistenceException) unwrapped);
-                    if (translated != null) {
-                        unwrapped = translated;
-                    }
+                completeNonTransactional(sqlSession, statement);
+            }
+            failed = false;
+            return result;
+        } catch (RuntimeException e) {
+            FlightRecorderEvents.statementFailed(recording, statement, e);
+            RuntimeException thrown = e;
+            if (this.exceptionTranslator != null && e instanceof PersistenceException) {
+                // release the connection to avoid a deadlock if the translator is no loaded. See issue #22
+                lease.release();
+                lease = null;
+                RuntimeException translated = this.exceptionTranslator.translateExceptionIfPossible(e);
+                if (translated != null) {
+                    thrown = translated;
                 }
-                throw unwrapped;
+            }
+            throw thrown;
+        } finally {
+            // ！！！！SqlSession会话关闭的逻辑：分为开启事务和不开启事务 如果是开启事务 那么进行update引用；如果不是事务 那么进行关闭
+            if (lease != null) {
+                lease.release();
+            }
+            SessionMetrics.executed(start, this.sqlSessionFactory, this.executorType, statement, failed);
+        }
+    }
+
+    private void closeCursorSession(SqlSessionLease lease, String statement) {
+        try {
+            completeNonTransactional(lease.getSqlSession(), statement);
+        } catch (PersistenceException e) {
+            RuntimeException translated = this.exceptionTranslator == null ? null
+                    : this.exceptionTranslator.translateExceptionIfPossible(e);
+            throw translated != null ? translated : e;
+        } finally {
+            lease.release();
+        }
+    }
+
+    private void checkReadOnly(String statement) {
+        Configuration configuration = getConfiguration();
+        if (!configuration.hasStatement(statement, false)) {
+            return;
+        }
+        SqlCommandType commandType = configuration.getMappedStatement(statement, false).getSqlCommandType();
+        if (commandType == SqlCommandType.INSERT || commandType == SqlCommandType.UPDATE
+                || commandType == SqlCommandType.DELETE) {
+            throw new InvalidDataAccessApiUsageException(
+                    "Cannot run the " + commandType + " statement '" + statement + "' in a read-only transaction");
+        }
+    }
+
+    private boolean isBatchLimited() {
+        return this.executorType == ExecutorType.BATCH && (this.batchFlushStatements > 0 || this.batchFlushBytes > 0);
+    }
+
+    private void flushBatchIfFull(SqlSessionHolder holder, SqlSession sqlSession, String statement, Object parameter) {
+        Configuration configuration = getConfiguration();
+        if (!configuration.hasStatement(statement, false)) {
+            return;
+        }
+        if (configuration.getMappedStatement(statement, false).getSqlCommandType() == SqlCommandType.SELECT) {
+            // the batch executor flushes before any query
+            holder.resetBatched();
+            return;
+        }
+        holder.batched(this.batchFlushBytes > 0 ? this.batchSizeEstimator.estimate(parameter) : 0);
+        if ((this.batchFlushStatements > 0 && holder.getBatchedStatements() >= this.batchFlushStatements)
+                || (this.batchFlushBytes > 0 && holder.getBatchedBytes() >= this.batchFlushBytes)) {
+            int batchedStatements = holder.getBatchedStatements();
+            Object recording = FlightRecorderEvents.batchFlushStarted();
+            List<BatchResult> results;
+            try {
+                results = sqlSession.flushStatements();
             } finally {
-                // ！！！！SqlSession会话关闭的逻辑：分为开启事务和不开启事务 如果是开启事务 那么进行update引用；如果不是事务 那么进行关闭
-                if (sqlSession != null) {
-                    closeSqlSession(sqlSession, SqlSessionTemplate.this.sqlSessionFactory);
+                // a failed flush discards the batch as well
+                holder.resetBatched();
+            }
+            FlightRecorderEvents.batchFlushEnded(recording, statement, batchedStatements, results);
+            if (this.batchFlushListener != null) {
+                this.batchFlushListener.accept(results);
+            }
+        }
+    }
 
-                }
+    private void completeNonTransactional(SqlSession sqlSession, String statement) {
+        SelectCompletionMode mode = this.selectCompletionMode;
+        if (mode != SelectCompletionMode.COMMIT && statement != null && isCommitElidable(statement, mode)) {
+            if (mode == SelectCompletionMode.ROLLBACK) {
+                sqlSession.rollback(true);
             }
+            return;
+        }
+        // force commit even on non-dirty sessions because some databases require
+        // a commit/rollback before calling close()
+        sqlSession.commit(true);
+    }
+
+    private boolean isCommitElidable(String statement, SelectCompletionMode mode) {
+        Configuration configuration = getConfiguration();
+        if (!configuration.hasStatement(statement, false)) {
+            return false;
+        }
+        MappedStatement ms = configuration.getMappedStatement(statement, false);
+        if (ms.getSqlCommandType() != SqlCommandType.SELECT || ms.getStatementType() == StatementType.CALLABLE) {
+            return false;
         }
+        // a rollback would discard what the select put in the second level cache
+        return mode != SelectCompletionMode.ROLLBACK || ms.getCache() == null || !ms.isUseCache()
+                || !configuration.isCacheEnabled();
     }
 
 }
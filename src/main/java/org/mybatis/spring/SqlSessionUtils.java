@@ -22,6 +22,9 @@ import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.logging.Logger;
 import org.mybatis.logging.LoggerFactory;
+import org.mybatis.logging.SessionTrace;
+import org.mybatis.logging.SessionTraceEvent;
+import org.mybatis.spring.jfr.FlightRecorderEvents;
 import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.TransientDataAccessResourceException;
@@ -87,29 +90,71 @@ public final class SqlSessionUtils {
      */
     public static SqlSession getSqlSession(SqlSessionFactory sessionFactory, ExecutorType executorType,
                                            PersistenceExceptionTranslator exceptionTranslator) {
+        return leaseSqlSession(sessionFactory, executorType, exceptionTranslator).getSqlSession();
+    }
+
+    /**
+     * Gets an SqlSession like {@link #getSqlSession(SqlSessionFactory, ExecutorType, PersistenceExceptionTranslator)}
+     * and returns it with the holder it is managed by. The lease tells whether the session is transactional and gives it
+     * back with {@link SqlSessionLease#release()}, so a call looks the current holder up only once instead of again in
+     * {@link #isSqlSessionTransactional} and {@link #closeSqlSession}.
+     *
+     * @param sessionFactory      a MyBatis {@code SqlSessionFactory} to create new sessions
+     * @param executorType        The executor type of the SqlSession to create
+     * @param exceptionTranslator Optional. Translates SqlSession.commit() exceptions to Spring exceptions.
+     * @return a lease over an SqlSession managed by Spring Transaction Manager
+     * @throws TransientDataAccessResourceException if a transaction is active and the {@code SqlSessionFactory} is not using a
+     *                                              {@code SpringManagedTransactionFactory}
+     * @since 2.0.6
+     */
+    public static SqlSessionLease leaseSqlSession(SqlSessionFactory sessionFactory, ExecutorType executorType,
+                                                  PersistenceExceptionTranslator exceptionTranslator) {
 
         notNull(sessionFactory, NO_SQL_SESSION_FACTORY_SPECIFIED);
         notNull(executorType, NO_EXECUTOR_TYPE_SPECIFIED);
 
         SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sessionFactory);
 
-        System.out.println("--getSqlSession---");
-
-        SqlSession session = sessionHolder(executorType, holder);
+        if (holder != null && holder.isScoped() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            // a transaction started inside a SqlSessionScope, it must not use the scoped session
+            SqlSessionScope.suspend(sessionFactory, holder);
+            holder = null;
+        }
 
-        System.out.println("--session is " + session);
+        executorType = resolveExecutorType(executorType, holder);
 
+        SqlSession session = sessionHolder(sessionFactory, executorType, holder);
         if (session != null) {
-            return session;
+            return new SqlSessionLease(session, holder);
         }
 
-        System.out.println("Creating a new SqlSession");
+        LOGGER.debug(() -> "Creating a new SqlSession");
         session = sessionFactory.openSession(executorType);
+        SessionTrace.record(SessionTraceEvent.CREATED, session);
+        Object recording = FlightRecorderEvents.sessionOpened(executorType);
 
         //将创建的SqlSession对象放入TransactionSynchronizationManager内部的ThreadLocal中
-        registerSessionHolder(sessionFactory, executorType, exceptionTranslator, session);
+        holder = registerSessionHolder(sessionFactory, executorType, exceptionTranslator, session);
 
-        return session;
+        SessionMetrics.opened(sessionFactory, executorType, holder != null);
+        if (holder != null) {
+            holder.setRecording(recording);
+            return new SqlSessionLease(session, holder);
+        }
+        return new SqlSessionLease(session, null, recording, sessionFactory);
+    }
+
+    /**
+     * Read-only transactions get a {@code REUSE} session instead of a {@code SIMPLE} one, so a query run several times
+     * in the transaction prepares its statement only once.
+     */
+    private static ExecutorType resolveExecutorType(ExecutorType executorType, SqlSessionHolder holder) {
+        if (executorType != ExecutorType.SIMPLE) {
+            return executorType;
+        }
+        boolean readOnly = holder != null && holder.isSynchronizedWithTransaction() ? holder.isReadOnly()
+                : TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        return readOnly ? ExecutorType.REUSE : executorType;
     }
 
     /**
@@ -125,14 +170,14 @@ public final class SqlSessionUtils {
      * @param executorType        executorType used for registration.
      * @param exceptionTranslator persistenceExceptionTranslator used for registration.
      * @param session             sqlSession used for registration.
+     * @return the registered holder, {@code null} if the session was not registered
      */
-    private static void registerSessionHolder(
+    private static SqlSessionHolder registerSessionHolder(
             SqlSessionFactory sessionFactory,
             ExecutorType executorType,
             PersistenceExceptionTranslator exceptionTranslator,
             SqlSession session
     ) {
-        System.out.println("=======registerSessionHolder");
         if (TransactionSynchronizationManager.isSynchronizationActive()) {
             Environment environment = sessionFactory.getConfiguration().getEnvironment();
 
@@ -140,16 +185,17 @@ public final class SqlSessionUtils {
                 LOGGER.debug(() -> "Registering transaction synchronization for SqlSession [" + session + "]");
 
                 SqlSessionHolder holder = new SqlSessionHolder(session, executorType, exceptionTranslator);
+                holder.setReadOnly(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
 
                 TransactionSynchronizationManager.bindResource(sessionFactory, holder);
-
-                System.out.println("--TransactionSynchronizationManager--registerSessionHolder---");
+                SessionTrace.record(SessionTraceEvent.REGISTERED, session);
 
                 TransactionSynchronizationManager.registerSynchronization(new SqlSessionSynchronization(holder, sessionFactory));
 
                 holder.setSynchronizedWithTransaction(true);
 
                 holder.requested();
+                return holder;
             } else {
                 if (TransactionSynchronizationManager.getResource(environment.getDataSource()) == null) {
                     LOGGER.debug(() -> "SqlSession [" + session
@@ -160,29 +206,84 @@ public final class SqlSessionUtils {
                 }
             }
         } else {
-            System.out.println("---synchronization is not active");
             LOGGER.debug(() -> "SqlSession [" + session
                     + "] was not registered for synchronization because synchronization is not active");
         }
-
+        return null;
     }
 
-    private static SqlSession sessionHolder(ExecutorType executorType, SqlSessionHolder holder) {
+    private static SqlSession sessionHolder(SqlSessionFactory sessionFactory, ExecutorType executorType,
+                                            SqlSessionHolder holder) {
         SqlSession session = null;
-        if (holder != null && holder.isSynchronizedWithTransaction()) {
-            if (holder.getExecutorType() != executorType) {
-                throw new TransientDataAccessResourceException(
-                        "Cannot change the ExecutorType when there is an existing transaction");
+        if (holder != null && (holder.isSynchronizedWithTransaction() || holder.isScoped())) {
+            session = holder.getSqlSession(executorType);
+            boolean reused = session != null;
+            if (session == null) {
+                if (holder.isScoped()) {
+                    throw new TransientDataAccessResourceException(
+                            "Cannot change the ExecutorType when there is an existing SqlSessionScope");
+                }
+                session = openExecutorSession(sessionFactory, executorType, holder);
+            } else {
+                LOGGER.debug(() -> "Fetched SqlSession [" + holder.getSqlSession(executorType) + "] from current transaction");
+                SessionTrace.record(SessionTraceEvent.REUSED, session);
+                FlightRecorderEvents.sessionReused(holder.getRecording(executorType));
             }
 
-            holder.requested();
+            switchExecutor(holder, executorType, session);
 
-            LOGGER.debug(() -> "Fetched SqlSession [" + holder.getSqlSession() + "] from current transaction");
-            session = holder.getSqlSession();
+            holder.requested();
+            if (reused) {
+                SessionMetrics.reused(sessionFactory, executorType, holder);
+            }
         }
         return session;
     }
 
+    /**
+     * Opens one more session in a transaction that already has one with another {@code ExecutorType}. It gets the
+     * connection of the transaction and is committed and closed with the other sessions of the holder.
+     */
+    private static SqlSession openExecutorSession(SqlSessionFactory sessionFactory, ExecutorType executorType,
+                                                  SqlSessionHolder holder) {
+        LOGGER.debug(() -> "Creating a new SqlSession with the " + executorType + " executor for the current transaction");
+        SqlSession session = sessionFactory.openSession(executorType);
+        SessionTrace.record(SessionTraceEvent.CREATED, session);
+        holder.addSqlSession(executorType, session, FlightRecorderEvents.sessionOpened(executorType));
+        SessionTrace.record(SessionTraceEvent.REGISTERED, session);
+        SessionMetrics.opened(sessionFactory, executorType, true);
+        return session;
+    }
+
+    /**
+     * Keeps the sessions of a holder consistent when a call uses another executor than the previous one: the
+     * statements batched so far are executed first, and the local cache of the session is cleared because the other
+     * sessions may have changed the data it cached.
+     */
+    private static void switchExecutor(SqlSessionHolder holder, ExecutorType executorType, SqlSession session) {
+        ExecutorType previous = holder.getCurrentExecutorType();
+        if (previous == executorType) {
+            return;
+        }
+        holder.setCurrentExecutorType(executorType);
+        try {
+            if (previous == ExecutorType.BATCH) {
+                LOGGER.debug(() -> "Flushing the batched statements before using the " + executorType + " executor");
+                holder.getSqlSession(ExecutorType.BATCH).flushStatements();
+                holder.resetBatched();
+            }
+            session.clearCache();
+        } catch (PersistenceException p) {
+            if (holder.getPersistenceExceptionTranslator() != null) {
+                DataAccessException translated = holder.getPersistenceExceptionTranslator().translateExceptionIfPossible(p);
+                if (translated != null) {
+                    throw translated;
+                }
+            }
+            throw p;
+        }
+    }
+
     /**
      * 关闭sqlsession会话的逻辑：【可以翻译英文注释或者点开源码】
      * 如果不是被事务管理 那么关闭会话 其实也就是关闭数据库连接；
@@ -201,18 +302,21 @@ public final class SqlSessionUtils {
         notNull(sessionFactory, NO_SQL_SESSION_FACTORY_SPECIFIED);
 
         SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sessionFactory);
-        if ((holder != null) && (holder.getSqlSession() == session)) {
+        if ((holder != null) && holder.holds(session)) {
             LOGGER.debug(() -> "Releasing transactional SqlSession [" + session + "]");
             /**
              * 开启了事务 那么更新引用 referenceCount 减减操作，关闭的会话的操作让spring来进行
              */
             holder.released();
+            SessionTrace.record(SessionTraceEvent.RELEASED, session);
         } else {
             LOGGER.debug(() -> "Closing non transactional SqlSession [" + session + "]");
             /**
              * 关闭session会话
              */
             session.close();
+            SessionTrace.record(SessionTraceEvent.CLOSED, session);
+            SessionMetrics.closed(sessionFactory, false);
         }
     }
 
@@ -230,7 +334,7 @@ public final class SqlSessionUtils {
 
         SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sessionFactory);
 
-        return (holder != null) && (holder.getSqlSession() == session);
+        return (holder != null) && holder.holds(session);
     }
 
     /**
@@ -246,6 +350,14 @@ public final class SqlSessionUtils {
 
         private boolean holderActive = true;
 
+        private final boolean actualTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+
+        private boolean commitStarted;
+
+        private boolean committing;
+
+        private boolean closed;
+
         public SqlSessionSynchronization(SqlSessionHolder holder, SqlSessionFactory sessionFactory) {
             notNull(holder, "Parameter 'holder' must be not null");
             notNull(sessionFactory, "Parameter 'sessionFactory' must be not null");
@@ -292,14 +404,22 @@ public final class SqlSessionUtils {
         public void beforeCommit(boolean readOnly) {
             // Connection commit or rollback will be handled by ConnectionSynchronization or
             // DataSourceTransactionManager.
-            // But, do cleanup the SqlSession / Executor, including flushing BATCH statements so
-            // they are actually executed.
-            // SpringManagedTransaction will no-op the commit over the jdbc connection
-            // TODO This updates 2nd level caches but the tx may be rolledback later on!
-            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // But, do flush BATCH statements so they are actually executed.
+            // The SqlSession is committed once the transaction has committed, so the second level caches are only
+            // updated with the changes of a transaction that has not been rolled back
+            // A read-only transaction has nothing to flush nor to commit, the sessions are only closed
+            this.commitStarted = true;
+            if (this.actualTransaction && !this.holder.isReadOnly()) {
+                Object recording = FlightRecorderEvents.commitStarted();
                 try {
-                    LOGGER.debug(() -> "Transaction synchronization committing SqlSession [" + this.holder.getSqlSession() + "]");
-                    this.holder.getSqlSession().commit();
+                    // in the order the sessions were opened, a BATCH one has statements pending only if it ran last
+                    for (SqlSession session : this.holder.getSqlSessions()) {
+                        LOGGER.debug(() -> "Transaction synchronization flushing SqlSession [" + session + "]");
+                        session.flushStatements();
+                    }
+                    this.holder.resetBatched();
+                    this.committing = true;
+                    FlightRecorderEvents.commitEnded(recording, this.holder.getExecutorType());
                 } catch (PersistenceException p) {
                     if (this.holder.getPersistenceExceptionTranslator() != null) {
                         DataAccessException translated = this.holder.getPersistenceExceptionTranslator()
@@ -318,15 +438,19 @@ public final class SqlSessionUtils {
          */
         @Override
         public void beforeCompletion() {
-            // Issue #18 Close SqlSession and deregister it now
-            // because afterCompletion may be called from a different thread
+            // Issue #18 Deregister and close the SqlSession now because afterCompletion may be called from a different
+            // thread. The sessions of a committing transaction are only closed in afterCompletion, once the outcome
+            // is known, to publish or discard their second level cache entries: their statements have been flushed
+            // and SpringManagedTransaction releases their connection now
             if (!this.holder.isOpen()) {
                 LOGGER
                         .debug(() -> "Transaction synchronization deregistering SqlSession [" + this.holder.getSqlSession() + "]");
                 TransactionSynchronizationManager.unbindResource(sessionFactory);
                 this.holderActive = false;
-                LOGGER.debug(() -> "Transaction synchronization closing SqlSession [" + this.holder.getSqlSession() + "]");
-                this.holder.getSqlSession().close();
+                if (!this.actualTransaction || !this.commitStarted) {
+                    // rolling back, or no actual transaction to wait for
+                    completeAll(STATUS_ROLLED_BACK);
+                }
             }
         }
 
@@ -342,10 +466,55 @@ public final class SqlSessionUtils {
                         .debug(() -> "Transaction synchronization deregistering SqlSession [" + this.holder.getSqlSession() + "]");
                 TransactionSynchronizationManager.unbindResourceIfPossible(sessionFactory);
                 this.holderActive = false;
-                LOGGER.debug(() -> "Transaction synchronization closing SqlSession [" + this.holder.getSqlSession() + "]");
-                this.holder.getSqlSession().close();
+            }
+            completeAll(status);
+        }
+
+        private void completeAll(int status) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            RuntimeException failure = null;
+            for (ExecutorType executorType : this.holder.getExecutorTypes()) {
+                try {
+                    complete(executorType, status);
+                } catch (RuntimeException e) {
+                    // the remaining sessions must be closed anyway
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
             }
             this.holder.reset();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void complete(ExecutorType executorType, int status) {
+            SqlSession session = this.holder.getSqlSession(executorType);
+            try {
+                if (status == STATUS_COMMITTED) {
+                    if (this.committing) {
+                        // publishes the second level cache entries, SpringManagedTransaction no-ops the jdbc commit
+                        LOGGER.debug(() -> "Transaction synchronization committing SqlSession [" + session + "]");
+                        session.commit();
+                    }
+                } else if (this.actualTransaction) {
+                    // discards the pending second level cache entries and BATCH statements
+                    LOGGER.debug(() -> "Transaction synchronization rolling back SqlSession [" + session + "]");
+                    session.rollback(true);
+                }
+            } finally {
+                LOGGER.debug(() -> "Transaction synchronization closing SqlSession [" + session + "]");
+                session.close();
+                SessionTrace.record(SessionTraceEvent.CLOSED, session);
+                FlightRecorderEvents.sessionClosed(this.holder.getRecording(executorType), true);
+                SessionMetrics.closed(this.sessionFactory, true);
+            }
         }
     }
 
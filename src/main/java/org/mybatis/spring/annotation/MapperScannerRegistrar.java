@@ -74,7 +74,6 @@ public class MapperScannerRegistrar implements ImportBeanDefinitionRegistrar, Re
         // 获取@MapperScan注解的value值
         Map<String, Object> annotationAttributeMap = importingClassMetadata.getAnnotationAttributes(MapperScan.class.getName());
         AnnotationAttributes mapperScanAttrs = AnnotationAttributes.fromMap(annotationAttributeMap);
-        System.out.println("1--MapperScannerRegistrar--执行registerBeanDefinitions---@MapperScan---begin");
         // 判断@MapperScan注解value值是否为空，如@MapperScan("com.chenhao.mapper")
         // 如果value值不为空 注册MapperScannerConfigurer类bean定义
         if (mapperScanAttrs != null) {
@@ -166,12 +165,10 @@ public class MapperScannerRegistrar implements ImportBeanDefinitionRegistrar, Re
         }
 
         builder.addPropertyValue("basePackage", StringUtils.collectionToCommaDelimitedString(basePackages));
-        System.out.println("1--MapperScannerRegistrar basePackage:  " + basePackages);
         // !!!! 这里进行注册
         // 此处的beanName： org.mybatis.test.config.MybatisConfig#MapperScannerRegistrar#0
         // beanDefinition：Generic bean: class [org.mybatis.spring.mapper.MapperScannerConfigurer]; scope=; abstract=false; lazyInit=null; autowireMode=0; dependencyCheck=0; autowireCandidate=true; primary=false; factoryBeanName=null; factoryMethodName=null; initMethodName=null; destroyMethodName=null
         AbstractBeanDefinition beanDefinition = builder.getBeanDefinition();
-        System.out.println("1--MapperScannerRegistrar beanName:  " + beanName);
 
         registry.registerBeanDefinition(beanName, beanDefinition);
 
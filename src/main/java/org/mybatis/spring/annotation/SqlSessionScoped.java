@@ -0,0 +1,56 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.apache.ibatis.session.ExecutorType;
+
+/**
+ * Runs the annotated method, or every method of the annotated class, inside a
+ * {@link org.mybatis.spring.SqlSessionScope}: outside of a transaction all the MyBatis calls it does share one
+ * {@code SqlSession}, committed when the method returns and rolled back when it throws an exception.
+ *
+ * <p>
+ * The annotation is applied by a {@link org.mybatis.spring.support.SqlSessionScopeAdvisor}, which needs an advisor
+ * auto-proxy creator in the context (e.g. the one registered by {@code @EnableAspectJAutoProxy} or
+ * {@code @EnableTransactionManagement}).
+ *
+ * <p>
+ * The scoped session uses the {@link #executorType()} of the annotation, so a {@code SqlSessionTemplate} created with a
+ * {@code BATCH} or {@code REUSE} executor can be called from the annotated method.
+ *
+ * @since 2.0.6
+ * @see org.mybatis.spring.SqlSessionScope
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Documented
+public @interface SqlSessionScoped {
+
+  /**
+   * The {@code ExecutorType} of the scoped session. It must match the executor type of the
+   * {@code SqlSessionTemplate}s called inside the scope. No value means the default executor type of the factory.
+   *
+   * @return the executor type, at most one
+   */
+  ExecutorType[] executorType() default {};
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the annotated method, or every method of the annotated class, within a {@link org.mybatis.spring.SqlDeadline}:
+ * all the MyBatis statements it runs must complete within the given time.
+ *
+ * <p>
+ * The annotation is applied by a {@link org.mybatis.spring.support.SqlDeadlineAdvisor}, which needs an advisor
+ * auto-proxy creator in the context (e.g. the one registered by {@code @EnableAspectJAutoProxy} or
+ * {@code @EnableTransactionManagement}).
+ *
+ * @since 2.0.6
+ * @see org.mybatis.spring.SqlDeadline
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Documented
+public @interface WithSqlDeadline {
+
+  /**
+   * @return the time budget of the statements, in milliseconds
+   */
+  long millis();
+
+}
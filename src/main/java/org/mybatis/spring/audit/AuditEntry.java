@@ -0,0 +1,104 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.audit;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An entry of the SQL audit log, as decoded by {@link AuditLogReader}.
+ *
+ * @since 2.0.6
+ */
+public final class AuditEntry {
+
+  private final Instant timestamp;
+
+  private final long durationNanos;
+
+  private final boolean failed;
+
+  private final boolean batched;
+
+  private final String statementId;
+
+  private final List<Object> parameters;
+
+  AuditEntry(Instant timestamp, long durationNanos, boolean failed, boolean batched, String statementId,
+      List<Object> parameters) {
+    this.timestamp = timestamp;
+    this.durationNanos = durationNanos;
+    this.failed = failed;
+    this.batched = batched;
+    this.statementId = statementId;
+    this.parameters = Collections.unmodifiableList(parameters);
+  }
+
+  /**
+   * @return when the call ended
+   */
+  public Instant getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return the duration of the call in nanoseconds
+   */
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  /**
+   * @return true if the call threw an exception
+   */
+  public boolean isFailed() {
+    return failed;
+  }
+
+  /**
+   * @return true if the statement was only queued by a {@code BATCH} executor, it runs when the batch is flushed
+   */
+  public boolean isBatched() {
+    return batched;
+  }
+
+  /**
+   * @return the id of the mapped statement
+   */
+  public String getStatementId() {
+    return statementId;
+  }
+
+  /**
+   * Returns the bound parameters in the order of the SQL. Numbers are {@code Long}s or {@code Double}s, dates are
+   * {@code Instant}s, binary values are only described by their size and any other value is a (possibly truncated)
+   * {@code String}.
+   *
+   * @return the parameters
+   */
+  public List<Object> getParameters() {
+    return parameters;
+  }
+
+  @Override
+  public String toString() {
+    return timestamp + " " + TimeUnit.NANOSECONDS.toMicros(durationNanos) + "us "
+        + (failed ? "FAILED " : batched ? "BATCHED " : "OK ") + statementId + " " + parameters;
+  }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.audit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Encodes audit entries into the binary form of {@link AuditLogFormat}. An encoder reuses its buffer and is not thread
+ * safe, the interceptor keeps one per thread.
+ */
+final class AuditEntryEncoder {
+
+  private final int maxValueLength;
+
+  private byte[] buffer = new byte[256];
+
+  private int position;
+
+  AuditEntryEncoder(int maxValueLength) {
+    this.maxValueLength = maxValueLength;
+  }
+
+  void begin(long timestampMillis, long durationNanos, byte flags, String statementId, int parameterCount) {
+    position = 0;
+    writeVarLong(timestampMillis);
+    writeVarLong(durationNanos);
+    writeByte(flags);
+    writeString(statementId);
+    writeVarLong(parameterCount);
+  }
+
+  void writeValue(Object value) {
+    if (value == null) {
+      writeByte(AuditLogFormat.NULL);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      writeByte(AuditLogFormat.LONG);
+      long number = ((Number) value).longValue();
+      writeVarLong((number << 1) ^ (number >> 63));
+    } else if (value instanceof Double || value instanceof Float) {
+      writeByte(AuditLogFormat.DOUBLE);
+      long bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+      for (int i = 56; i >= 0; i -= 8) {
+        writeByte((byte) (bits >>> i));
+      }
+    } else if (value instanceof Boolean) {
+      writeByte((Boolean) value ? AuditLogFormat.TRUE : AuditLogFormat.FALSE);
+    } else if (value instanceof byte[]) {
+      // only the size of binary values is kept
+      writeByte(AuditLogFormat.BINARY);
+      writeVarLong(((byte[]) value).length);
+    } else if (value instanceof Date) {
+      writeByte(AuditLogFormat.TIMESTAMP);
+      writeVarLong(((Date) value).getTime());
+    } else {
+      writeByte(AuditLogFormat.STRING);
+      writeString(value instanceof Enum ? ((Enum<?>) value).name() : String.valueOf(value));
+    }
+  }
+
+  byte[] end() {
+    return Arrays.copyOf(buffer, position);
+  }
+
+  private void writeString(String value) {
+    String truncated = value.length() > maxValueLength ? value.substring(0, maxValueLength) : value;
+    byte[] bytes = truncated.getBytes(StandardCharsets.UTF_8);
+    writeVarLong(bytes.length);
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void writeVarLong(long value) {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      writeByte((byte) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    writeByte((byte) remaining);
+  }
+
+  private void writeByte(byte value) {
+    ensureCapacity(1);
+    buffer[position++] = value;
+  }
+
+  private void ensureCapacity(int size) {
+    if (position + size > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + size));
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.audit;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary format of the audit files.
+ * <p>
+ * A file starts with a {@value #HEADER_SIZE} bytes header: the magic number, the format version, the sequence number
+ * of the file (which orders the files of a ring) and its creation time. Entries follow, each one is an {@code int}
+ * length and that many bytes: the time of the call in epoch milliseconds, its duration in nanoseconds (both as
+ * variable length longs), a flags byte, the statement id (variable length size and UTF-8 bytes), the number of
+ * parameters and the parameters, each a tag byte and its value. A zero length ends the entries of a file.
+ */
+final class AuditLogFormat {
+
+  static final int MAGIC = 0x4D424155;
+
+  static final short VERSION = 1;
+
+  static final int HEADER_SIZE = 32;
+
+  static final String FILE_SUFFIX = ".audit";
+
+  static final byte FLAG_FAILED = 1;
+
+  static final byte FLAG_BATCHED = 2;
+
+  static final byte NULL = 0;
+
+  static final byte LONG = 1;
+
+  static final byte DOUBLE = 2;
+
+  static final byte TRUE = 3;
+
+  static final byte FALSE = 4;
+
+  static final byte STRING = 5;
+
+  static final byte BINARY = 6;
+
+  static final byte TIMESTAMP = 7;
+
+  private AuditLogFormat() {
+    // not instantiable
+  }
+
+  static String fileName(String prefix, int index) {
+    return prefix + "-" + index + FILE_SUFFIX;
+  }
+
+  static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  static long decodeZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.audit;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the files written by a {@link SqlAuditInterceptor}.
+ * <p>
+ * It can be run from the command line to print the entries of a directory, oldest first:
+ *
+ * <pre>
+ * java -cp mybatis-spring.jar:mybatis.jar org.mybatis.spring.audit.AuditLogReader /var/log/app/audit [prefix]
+ * </pre>
+ *
+ * @since 2.0.6
+ */
+public final class AuditLogReader {
+
+  private AuditLogReader() {
+    // not instantiable
+  }
+
+  /**
+   * Prints the entries of the audit files of a directory.
+   *
+   * @param args
+   *          the directory and, optionally, the prefix of the file names
+   * @throws IOException
+   *           if a file cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: AuditLogReader <directory> [prefix]");
+      System.exit(2);
+    }
+    String prefix = args.length > 1 ? args[1] : SqlAuditInterceptor.DEFAULT_FILE_PREFIX;
+    PrintStream out = System.out;
+    read(Paths.get(args[0]), prefix, out::println);
+  }
+
+  /**
+   * Reads the entries of the audit files of a directory, oldest first.
+   *
+   * @param directory
+   *          the directory of the files
+   * @param prefix
+   *          the prefix of the file names
+   * @param consumer
+   *          receives the entries
+   * @throws IOException
+   *           if a file cannot be read
+   */
+  public static void read(Path directory, String prefix, Consumer<AuditEntry> consumer) throws IOException {
+    TreeMap<Long, Path> files = new TreeMap<>();
+    for (int index = 0;; index++) {
+      Path path = directory.resolve(AuditLogFormat.fileName(prefix, index));
+      if (!Files.exists(path)) {
+        break;
+      }
+      long sequence = readSequence(path);
+      if (sequence >= 0) {
+        files.put(sequence, path);
+      }
+    }
+    for (Path path : files.values()) {
+      readFile(path, consumer);
+    }
+  }
+
+  /**
+   * Reads the entries of one audit file.
+   *
+   * @param path
+   *          the file
+   * @param consumer
+   *          receives the entries
+   * @throws IOException
+   *           if the file cannot be read or is not an audit file
+   */
+  public static void readFile(Path path, Consumer<AuditEntry> consumer) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < AuditLogFormat.HEADER_SIZE || buffer.getInt(0) != AuditLogFormat.MAGIC) {
+        throw new IOException(path + " is not a SQL audit file");
+      }
+      if (buffer.getShort(Integer.BYTES) != AuditLogFormat.VERSION) {
+        throw new IOException("Unsupported version of SQL audit file " + path);
+      }
+      ((Buffer) buffer).position(AuditLogFormat.HEADER_SIZE);
+      while (buffer.remaining() >= Integer.BYTES) {
+        int length = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+          break;
+        }
+        ByteBuffer entry = buffer.slice();
+        ((Buffer) entry).limit(length);
+        ((Buffer) buffer).position(buffer.position() + length);
+        consumer.accept(decode(entry));
+      }
+    }
+  }
+
+  /**
+   * Returns the sequence number of an audit file.
+   *
+   * @return the sequence number, -1 if the file does not exist or is not an audit file
+   */
+  static long readSequence(Path path) {
+    if (!Files.isRegularFile(path)) {
+      return -1;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(AuditLogFormat.HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read the whole header
+      }
+      ((Buffer) header).flip();
+      if (header.remaining() < AuditLogFormat.HEADER_SIZE || header.getInt(0) != AuditLogFormat.MAGIC) {
+        return -1;
+      }
+      return header.getLong(Integer.BYTES * 2);
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  private static AuditEntry decode(ByteBuffer entry) {
+    long timestamp = AuditLogFormat.readVarLong(entry);
+    long durationNanos = AuditLogFormat.readVarLong(entry);
+    byte flags = entry.get();
+    String statementId = readString(entry);
+    int count = (int) AuditLogFormat.readVarLong(entry);
+    List<Object> parameters = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      parameters.add(readValue(entry));
+    }
+    return new AuditEntry(Instant.ofEpochMilli(timestamp), durationNanos,
+        (flags & AuditLogFormat.FLAG_FAILED) != 0, (flags & AuditLogFormat.FLAG_BATCHED) != 0, statementId, parameters);
+  }
+
+  private static Object readValue(ByteBuffer entry) {
+    byte tag = entry.get();
+    switch (tag) {
+      case AuditLogFormat.NULL:
+        return null;
+      case AuditLogFormat.LONG:
+        return AuditLogFormat.decodeZigZag(AuditLogFormat.readVarLong(entry));
+      case AuditLogFormat.DOUBLE:
+        return Double.longBitsToDouble(entry.getLong());
+      case AuditLogFormat.TRUE:
+        return Boolean.TRUE;
+      case AuditLogFormat.FALSE:
+        return Boolean.FALSE;
+      case AuditLogFormat.STRING:
+        return readString(entry);
+      case AuditLogFormat.BINARY:
+        return "<" + AuditLogFormat.readVarLong(entry) + " bytes>";
+      case AuditLogFormat.TIMESTAMP:
+        return Instant.ofEpochMilli(AuditLogFormat.readVarLong(entry));
+      default:
+        throw new IllegalStateException("Unknown value tag " + tag);
+    }
+  }
+
+  private static String readString(ByteBuffer entry) {
+    int length = (int) AuditLogFormat.readVarLong(entry);
+    byte[] bytes = new byte[length];
+    entry.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.audit;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+
+/**
+ * Writes encoded audit entries to a ring of memory-mapped files on its own thread.
+ * <p>
+ * The callers only add the entries to a lock-free queue. The writer thread copies them to the mapped file and starts
+ * the next file of the ring, overwriting the oldest one, when the current file is full. Mapped pages are forced to
+ * the disk at most every second. When the queue is full entries are dropped and counted rather than blocking the
+ * callers. A file that cannot be opened drops the entries until the next file of the ring is tried, a second later.
+ */
+final class AuditLogWriter implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuditLogWriter.class);
+
+  private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Path directory;
+
+  private final String prefix;
+
+  private final int fileSize;
+
+  private final int fileCount;
+
+  private final int queueCapacity;
+
+  private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger pending = new AtomicInteger();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final AtomicLong written = new AtomicLong();
+
+  private final Thread thread;
+
+  private volatile boolean running = true;
+
+  private volatile boolean parked;
+
+  private MappedByteBuffer file;
+
+  private int fileIndex;
+
+  private long sequence;
+
+  private boolean dirty;
+
+  private long lastForceNanos = System.nanoTime();
+
+  private long failedOpenNanos;
+
+  AuditLogWriter(Path directory, String prefix, int fileSize, int fileCount, int queueCapacity) throws IOException {
+    this.directory = directory;
+    this.prefix = prefix;
+    this.fileSize = fileSize;
+    this.fileCount = fileCount;
+    this.queueCapacity = queueCapacity;
+    Files.createDirectories(directory);
+    findLastFile();
+    openNextFile();
+    this.thread = new Thread(this, "mybatis-audit-writer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  boolean offer(byte[] entry) {
+    if (pending.incrementAndGet() > queueCapacity) {
+      pending.decrementAndGet();
+      if (dropped.getAndIncrement() == 0) {
+        LOGGER.warn(() -> "The SQL audit queue is full, entries are dropped");
+      }
+      return false;
+    }
+    queue.offer(entry);
+    if (parked) {
+      LockSupport.unpark(thread);
+    }
+    return true;
+  }
+
+  long getDroppedEntries() {
+    return dropped.get();
+  }
+
+  long getWrittenEntries() {
+    return written.get();
+  }
+
+  /**
+   * Writes the queued entries and stops the writer thread.
+   */
+  void close() {
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    while (running || !queue.isEmpty()) {
+      byte[] entry = queue.poll();
+      if (entry != null) {
+        pending.decrementAndGet();
+        write(entry);
+        continue;
+      }
+      forceIfDue(false);
+      parked = true;
+      if (running && queue.isEmpty()) {
+        LockSupport.parkNanos(this, FORCE_INTERVAL_NANOS);
+      }
+      parked = false;
+    }
+    forceIfDue(true);
+  }
+
+  private void write(byte[] entry) {
+    int size = Integer.BYTES + entry.length;
+    if (file == null) {
+      // the last file could not be opened, the next one of the ring is tried at most every second
+      if (System.nanoTime() - failedOpenNanos >= FORCE_INTERVAL_NANOS) {
+        openNextFile();
+      }
+    } else if (file.position() + size + Integer.BYTES > fileSize) {
+      forceIfDue(true);
+      openNextFile();
+    }
+    if (file == null || file.position() + size + Integer.BYTES > fileSize) {
+      dropped.incrementAndGet();
+      return;
+    }
+    int position = file.position();
+    ((Buffer) file).position(position + Integer.BYTES);
+    file.put(entry);
+    // end marker first, then the length: a reader never sees a partial entry
+    file.putInt(file.position(), 0);
+    file.putInt(position, entry.length);
+    dirty = true;
+    written.incrementAndGet();
+  }
+
+  private void forceIfDue(boolean always) {
+    if (dirty && (always || System.nanoTime() - lastForceNanos >= FORCE_INTERVAL_NANOS)) {
+      file.force();
+      dirty = false;
+      lastForceNanos = System.nanoTime();
+    }
+  }
+
+  private void findLastFile() {
+    fileIndex = -1;
+    for (int index = 0; index < fileCount; index++) {
+      Path path = directory.resolve(AuditLogFormat.fileName(prefix, index));
+      long fileSequence = AuditLogReader.readSequence(path);
+      if (fileSequence >= sequence) {
+        sequence = fileSequence + 1;
+        fileIndex = index;
+      }
+    }
+  }
+
+  private void openNextFile() {
+    fileIndex = (fileIndex + 1) % fileCount;
+    Path path = directory.resolve(AuditLogFormat.fileName(prefix, fileIndex));
+    try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+      raf.setLength(fileSize);
+      // the mapping stays valid once the file is closed
+      file = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+    } catch (IOException e) {
+      LOGGER.error(() -> "Cannot open the SQL audit file " + path, e);
+      file = null;
+      failedOpenNanos = System.nanoTime();
+      return;
+    }
+    ByteBuffer header = file.duplicate();
+    header.putInt(AuditLogFormat.MAGIC).putShort(AuditLogFormat.VERSION).putShort((short) 0).putLong(sequence++)
+        .putLong(System.currentTimeMillis());
+    ((Buffer) file).position(AuditLogFormat.HEADER_SIZE);
+    file.putInt(AuditLogFormat.HEADER_SIZE, 0);
+    dirty = true;
+  }
+
+}
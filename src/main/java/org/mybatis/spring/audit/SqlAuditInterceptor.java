@@ -0,0 +1,409 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * MyBatis plugin that writes an audit entry for every statement run: its id, its bound parameters, its duration and
+ * whether it failed.
+ * <p>
+ * The calling thread only encodes the entry into a compact binary form and adds it to a lock-free queue; one writer
+ * thread copies the entries into a ring of memory-mapped files ({@code fileCount} files of {@code fileSize} bytes,
+ * the oldest one is overwritten once all are full). {@link AuditLogReader} decodes the files.
+ *
+ * <pre class="code">
+ * &#64;Bean
+ * public SqlAuditInterceptor sqlAuditInterceptor() {
+ *   SqlAuditInterceptor audit = new SqlAuditInterceptor();
+ *   audit.setDirectory(Paths.get("/var/log/app/audit"));
+ *   return audit;
+ * }
+ *
+ * factoryBean.setPlugins(sqlAuditInterceptor);
+ * </pre>
+ *
+ * When it is configured in the MyBatis XML configuration instead, the settings are read from the plugin properties
+ * {@code directory}, {@code filePrefix}, {@code fileSize}, {@code fileCount}, {@code queueCapacity} and
+ * {@code maxValueLength}. Entries are dropped, and counted, when the queue is full. String values longer than
+ * {@code maxValueLength} characters are truncated and only the size of binary values is kept.
+ * <p>
+ * The parameters are those of the {@code BoundSql} the statement was run with. Calls answered from a cache run no
+ * statement and are not audited; updates queued by a {@code BATCH} executor are audited when they are queued and
+ * flagged as {@linkplain AuditEntry#isBatched() batched}. The nested selects of a result map and the lazy loads get
+ * their own entries. Auditing never fails a call: an entry that cannot be built or written is dropped and counted.
+ *
+ * @since 2.0.6
+ */
+@Intercepts({
+    @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+    @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+        RowBounds.class, ResultHandler.class }),
+    @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+        RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class }),
+    @Signature(type = Executor.class, method = "queryCursor", args = { MappedStatement.class, Object.class,
+        RowBounds.class }),
+    @Signature(type = StatementHandler.class, method = "parameterize", args = { Statement.class }),
+    @Signature(type = StatementHandler.class, method = "batch", args = { Statement.class }),
+    @Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }),
+    @Signature(type = StatementHandler.class, method = "queryCursor", args = { Statement.class }),
+    @Signature(type = StatementHandler.class, method = "update", args = { Statement.class }) })
+public class SqlAuditInterceptor implements Interceptor, InitializingBean, DisposableBean {
+
+  /**
+   * The default prefix of the audit file names.
+   */
+  public static final String DEFAULT_FILE_PREFIX = "mybatis-audit";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqlAuditInterceptor.class);
+
+  // the innermost executor call of the thread; the nested selects and lazy loads are run by the executor itself
+  private final ThreadLocal<Execution> executions = new ThreadLocal<>();
+
+  private final ThreadLocal<AuditEntryEncoder> encoders = ThreadLocal
+      .withInitial(() -> new AuditEntryEncoder(this.maxValueLength));
+
+  private Path directory;
+
+  private String filePrefix = DEFAULT_FILE_PREFIX;
+
+  private int fileSize = 16 * 1024 * 1024;
+
+  private int fileCount = 4;
+
+  private int queueCapacity = 65_536;
+
+  private int maxValueLength = 256;
+
+  private volatile AuditLogWriter writer;
+
+  private final AtomicLong failedEntries = new AtomicLong();
+
+  /**
+   * Sets the directory of the audit files. Required.
+   *
+   * @param directory
+   *          the directory, created if needed
+   */
+  public void setDirectory(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Sets the prefix of the audit file names. Default is {@value #DEFAULT_FILE_PREFIX}.
+   *
+   * @param filePrefix
+   *          the prefix of the file names
+   */
+  public void setFilePrefix(String filePrefix) {
+    this.filePrefix = filePrefix;
+  }
+
+  /**
+   * Sets the size of each audit file. Default is 16 MiB.
+   *
+   * @param fileSize
+   *          the size in bytes
+   */
+  public void setFileSize(int fileSize) {
+    this.fileSize = fileSize;
+  }
+
+  /**
+   * Sets the number of files of the ring. Default is 4.
+   *
+   * @param fileCount
+   *          the number of files
+   */
+  public void setFileCount(int fileCount) {
+    this.fileCount = fileCount;
+  }
+
+  /**
+   * Sets how many entries can wait for the writer thread before new ones are dropped. Default is 65536.
+   *
+   * @param queueCapacity
+   *          the maximum number of queued entries
+   */
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Sets the number of characters kept of the statement id and of each string value. Default is 256.
+   *
+   * @param maxValueLength
+   *          the maximum length of the values
+   */
+  public void setMaxValueLength(int maxValueLength) {
+    this.maxValueLength = maxValueLength;
+  }
+
+  /**
+   * Starts the writer thread.
+   */
+  @Override
+  public void afterPropertiesSet() {
+    start();
+  }
+
+  /**
+   * Writes the queued entries and stops the writer thread.
+   */
+  @Override
+  public synchronized void destroy() {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  /**
+   * Returns the number of entries dropped because the queue was full, an audit file could not be written or the
+   * entry could not be built.
+   *
+   * @return the number of dropped entries
+   */
+  public long getDroppedEntries() {
+    AuditLogWriter current = writer;
+    return failedEntries.get() + (current == null ? 0 : current.getDroppedEntries());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    if (invocation.getTarget() instanceof StatementHandler) {
+      return interceptStatement(invocation);
+    }
+    Execution outer = executions.get();
+    Execution execution = new Execution();
+    executions.set(execution);
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      Object result = invocation.proceed();
+      failed = false;
+      return result;
+    } finally {
+      long durationNanos = System.nanoTime() - start;
+      if (outer == null) {
+        executions.remove();
+      } else {
+        executions.set(outer);
+      }
+      // no statement was run when the result came from a cache
+      if (failed || execution.boundSql != null) {
+        try {
+          audit((MappedStatement) invocation.getArgs()[0], execution, durationNanos, failed);
+        } catch (RuntimeException e) {
+          auditFailed(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Binds the first statement of an executor call to it. The other statements, run by the executor itself for the
+   * nested selects of the results or for lazy loads, are audited on their own.
+   */
+  private Object interceptStatement(Invocation invocation) throws Throwable {
+    StatementHandler handler = (StatementHandler) invocation.getTarget();
+    Execution execution = executions.get();
+    String method = invocation.getMethod().getName();
+    if (method.equals("parameterize")) {
+      if (execution != null && execution.handler == null) {
+        execution.handler = handler;
+        execution.boundSql = handler.getBoundSql();
+      }
+      return invocation.proceed();
+    }
+    if (execution != null && execution.handler == handler) {
+      if (method.equals("batch")) {
+        execution.batched = true;
+      }
+      return invocation.proceed();
+    }
+    Execution statement = new Execution();
+    statement.handler = handler;
+    statement.boundSql = handler.getBoundSql();
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      Object result = invocation.proceed();
+      failed = false;
+      return result;
+    } finally {
+      long durationNanos = System.nanoTime() - start;
+      try {
+        audit(mappedStatement(handler), statement, durationNanos, failed);
+      } catch (RuntimeException e) {
+        auditFailed(e);
+      }
+    }
+  }
+
+  /**
+   * Reads the statement of a {@code RoutingStatementHandler}, possibly wrapped by other plugins, as MyBatis plugins
+   * usually do: the {@code StatementHandler} interface does not expose it.
+   */
+  private static MappedStatement mappedStatement(StatementHandler handler) {
+    MetaObject metaObject = SystemMetaObject.forObject(handler);
+    while (metaObject.hasGetter("h") && metaObject.getValue("h") instanceof Plugin) {
+      metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+    }
+    return (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setProperties(Properties properties) {
+    String value = properties.getProperty("directory");
+    if (value != null) {
+      setDirectory(Paths.get(value));
+    }
+    setFilePrefix(properties.getProperty("filePrefix", filePrefix));
+    setFileSize(Integer.parseInt(properties.getProperty("fileSize", String.valueOf(fileSize))));
+    setFileCount(Integer.parseInt(properties.getProperty("fileCount", String.valueOf(fileCount))));
+    setQueueCapacity(Integer.parseInt(properties.getProperty("queueCapacity", String.valueOf(queueCapacity))));
+    setMaxValueLength(Integer.parseInt(properties.getProperty("maxValueLength", String.valueOf(maxValueLength))));
+    start();
+  }
+
+  private synchronized AuditLogWriter start() {
+    if (writer == null) {
+      if (directory == null) {
+        throw new IllegalArgumentException("Property 'directory' is required");
+      }
+      if (fileSize <= AuditLogFormat.HEADER_SIZE * 2 || fileCount <= 0 || queueCapacity <= 0 || maxValueLength <= 0) {
+        throw new IllegalArgumentException(
+            "The file size, file count, queue capacity and value length must be positive");
+      }
+      try {
+        writer = new AuditLogWriter(directory, filePrefix, fileSize, fileCount, queueCapacity);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot create the SQL audit directory " + directory, e);
+      }
+    }
+    return writer;
+  }
+
+  private void audit(MappedStatement ms, Execution execution, long durationNanos, boolean failed) {
+    AuditLogWriter current = writer;
+    if (current == null) {
+      current = start();
+    }
+    // a call failing before its statement was bound is audited without parameters
+    BoundSql boundSql = execution.boundSql;
+    List<ParameterMapping> mappings = boundSql == null ? Collections.emptyList() : boundSql.getParameterMappings();
+    byte flags = failed ? AuditLogFormat.FLAG_FAILED : 0;
+    if (execution.batched) {
+      flags |= AuditLogFormat.FLAG_BATCHED;
+    }
+
+    AuditEntryEncoder encoder = encoders.get();
+    encoder.begin(System.currentTimeMillis(), durationNanos, flags, ms.getId(), countInParameters(mappings));
+    Configuration configuration = ms.getConfiguration();
+    Object parameter = boundSql == null ? null : boundSql.getParameterObject();
+    MetaObject metaObject = null;
+    for (ParameterMapping mapping : mappings) {
+      if (mapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      // the values DefaultParameterHandler binds
+      String property = mapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(property)) {
+        value = boundSql.getAdditionalParameter(property);
+      } else if (parameter == null) {
+        value = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+        value = parameter;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameter);
+        }
+        value = metaObject.getValue(property);
+      }
+      encoder.writeValue(value);
+    }
+    current.offer(encoder.end());
+  }
+
+  private void auditFailed(RuntimeException e) {
+    if (failedEntries.getAndIncrement() == 0) {
+      LOGGER.error(() -> "Cannot write a SQL audit entry, the entries that fail are dropped", e);
+    } else {
+      LOGGER.debug(() -> "Cannot write a SQL audit entry: " + e);
+    }
+  }
+
+  private static int countInParameters(List<ParameterMapping> mappings) {
+    int count = 0;
+    for (ParameterMapping mapping : mappings) {
+      if (mapping.getMode() != ParameterMode.OUT) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * The statement bound by a call.
+   */
+  private static final class Execution {
+
+    private StatementHandler handler;
+
+    private BoundSql boundSql;
+
+    private boolean batched;
+  }
+
+}
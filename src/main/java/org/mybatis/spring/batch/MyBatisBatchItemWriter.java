@@ -27,6 +27,7 @@ import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.logging.Logger;
 import org.mybatis.logging.LoggerFactory;
 import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.jfr.FlightRecorderEvents;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.convert.converter.Converter;
@@ -144,7 +145,9 @@ public class MyBatisBatchItemWriter<T> implements ItemWriter<T>, InitializingBea
         sqlSessionTemplate.update(statementId, itemToParameterConverter.convert(item));
       }
 
+      Object recording = FlightRecorderEvents.batchFlushStarted();
       List<BatchResult> results = sqlSessionTemplate.flushStatements();
+      FlightRecorderEvents.batchFlushEnded(recording, statementId, items.size(), results);
 
       if (assertUpdates) {
         if (results.size() != 1) {
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flush of the statements batched by a {@code MyBatisBatchItemWriter} for one chunk of items.
+ */
+@Name("org.mybatis.BatchFlush")
+@Label("Batch Flush")
+@Category("MyBatis")
+@Description("The flush of the statements batched for a chunk of items")
+final class BatchFlushEvent extends Event {
+
+  @Label("Statement Id")
+  String statementId;
+
+  @Label("Items")
+  int items;
+
+  @Label("Batches")
+  @Description("Number of JDBC batches executed by the flush")
+  int batches;
+
+  @Label("Rows")
+  @Description("Rows updated by the flush, not counting statements that did not report it")
+  long rows;
+
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jfr;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.springframework.util.ClassUtils;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Emits the JDK Flight Recorder events of MyBatis-Spring.
+ * <p>
+ * The events are only created while a recording enables them, otherwise each call costs a check of the event type and
+ * returns {@code null}. On a JVM without Flight Recorder nothing is ever recorded and the {@code jdk.jfr} classes are
+ * not loaded. The events are:
+ * <ul>
+ * <li>{@code org.mybatis.SqlSession}: a session from open to close, with its executor type and the number of calls
+ * that reused it. Sessions got with {@code SqlSessionUtils.getSqlSession} are only recorded when they are bound to a
+ * transaction.</li>
+ * <li>{@code org.mybatis.Statement}: a {@code SqlSessionTemplate} call, with its statement id and row count.</li>
+ * <li>{@code org.mybatis.SqlSessionCommit}: the commit of a transactional session before its transaction commits.</li>
+ * <li>{@code org.mybatis.BatchFlush}: the flush of a {@code MyBatisBatchItemWriter} chunk.</li>
+ * </ul>
+ * They can be enabled like any other event, for instance with {@code -XX:StartFlightRecording:settings=mybatis.jfc}
+ * where the settings file enables {@code org.mybatis.*}.
+ * <p>
+ * The {@code begin} methods return an opaque recording that must be passed to the matching {@code end} method; a
+ * {@code null} recording is ignored.
+ *
+ * @since 2.0.6
+ */
+public final class FlightRecorderEvents {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorderEvents.class);
+
+  private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+  private FlightRecorderEvents() {
+    // NOP
+  }
+
+  private static boolean isFlightRecorderAvailable() {
+    if (!ClassUtils.isPresent("jdk.jfr.FlightRecorder", FlightRecorderEvents.class.getClassLoader())) {
+      return false;
+    }
+    try {
+      return Recorder.isAvailable();
+    } catch (Throwable t) {
+      // e.g. the JVM runs with -XX:-FlightRecorder
+      LOGGER.debug(() -> "Flight Recorder events are disabled: " + t);
+      return false;
+    }
+  }
+
+  /**
+   * Starts the event of a session that has just been opened.
+   *
+   * @param executorType
+   *          the executor type of the session
+   * @return the recording to pass to {@link #sessionReused} and {@link #sessionClosed}, {@code null} if the event is
+   *         not enabled
+   */
+  public static Object sessionOpened(ExecutorType executorType) {
+    if (!AVAILABLE || !Recorder.SESSION.isEnabled()) {
+      return null;
+    }
+    return Recorder.beginSession(executorType);
+  }
+
+  /**
+   * Counts a call that reused a session.
+   *
+   * @param recording
+   *          the recording returned by {@link #sessionOpened}
+   */
+  public static void sessionReused(Object recording) {
+    if (recording != null) {
+      Recorder.reuseSession(recording);
+    }
+  }
+
+  /**
+   * Ends the event of a session that has just been closed.
+   *
+   * @param recording
+   *          the recording returned by {@link #sessionOpened}
+   * @param managed
+   *          whether the session was bound to a transaction or a scope
+   */
+  public static void sessionClosed(Object recording, boolean managed) {
+    if (recording != null) {
+      Recorder.endSession(recording, managed);
+    }
+  }
+
+  /**
+   * Starts the event of a statement.
+   *
+   * @return the recording to pass to {@link #statementEnded} or {@link #statementFailed}, {@code null} if the event is
+   *         not enabled
+   */
+  public static Object statementStarted() {
+    if (!AVAILABLE || !Recorder.STATEMENT.isEnabled()) {
+      return null;
+    }
+    return Recorder.beginStatement();
+  }
+
+  /**
+   * Ends the event of a statement that completed.
+   *
+   * @param recording
+   *          the recording returned by {@link #statementStarted}
+   * @param statementId
+   *          the id of the statement, {@code null} if unknown
+   * @param result
+   *          the result of the statement, used to count its rows
+   */
+  public static void statementEnded(Object recording, String statementId, Object result) {
+    if (recording != null) {
+      Recorder.endStatement(recording, statementId, rows(result), null);
+    }
+  }
+
+  /**
+   * Ends the event of a statement that threw an exception.
+   *
+   * @param recording
+   *          the recording returned by {@link #statementStarted}
+   * @param statementId
+   *          the id of the statement, {@code null} if unknown
+   * @param failure
+   *          the exception thrown by the statement
+   */
+  public static void statementFailed(Object recording, String statementId, Throwable failure) {
+    if (recording != null) {
+      Recorder.endStatement(recording, statementId, -1, failure.getClass().getName());
+    }
+  }
+
+  /**
+   * Starts the event of a transactional session commit.
+   *
+   * @return the recording to pass to {@link #commitEnded}, {@code null} if the event is not enabled
+   */
+  public static Object commitStarted() {
+    if (!AVAILABLE || !Recorder.COMMIT.isEnabled()) {
+      return null;
+    }
+    return Recorder.beginCommit();
+  }
+
+  /**
+   * Ends the event of a transactional session commit.
+   *
+   * @param recording
+   *          the recording returned by {@link #commitStarted}
+   * @param executorType
+   *          the executor type of the committed session
+   */
+  public static void commitEnded(Object recording, ExecutorType executorType) {
+    if (recording != null) {
+      Recorder.endCommit(recording, executorType);
+    }
+  }
+
+  /**
+   * Starts the event of a batch flush.
+   *
+   * @return the recording to pass to {@link #batchFlushEnded}, {@code null} if the event is not enabled
+   */
+  public static Object batchFlushStarted() {
+    if (!AVAILABLE || !Recorder.BATCH_FLUSH.isEnabled()) {
+      return null;
+    }
+    return Recorder.beginBatchFlush();
+  }
+
+  /**
+   * Ends the event of a batch flush.
+   *
+   * @param recording
+   *          the recording returned by {@link #batchFlushStarted}
+   * @param statementId
+   *          the id of the batched statement
+   * @param items
+   *          the number of items written
+   * @param results
+   *          the results of the flush
+   */
+  public static void batchFlushEnded(Object recording, String statementId, int items, List<BatchResult> results) {
+    if (recording != null) {
+      Recorder.endBatchFlush(recording, statementId, items, results);
+    }
+  }
+
+  private static long rows(Object result) {
+    if (result == null) {
+      return 0;
+    }
+    if (result instanceof Integer) {
+      return (Integer) result;
+    }
+    if (result instanceof Collection) {
+      return ((Collection<?>) result).size();
+    }
+    if (result instanceof Map) {
+      return ((Map<?, ?>) result).size();
+    }
+    if (result instanceof Cursor) {
+      // read after the call
+      return -1;
+    }
+    return 1;
+  }
+
+  /**
+   * Holds every reference to {@code jdk.jfr} so that it is only loaded when Flight Recorder is present.
+   */
+  private static final class Recorder {
+
+    static final EventType SESSION = EventType.getEventType(SqlSessionEvent.class);
+
+    static final EventType STATEMENT = EventType.getEventType(StatementEvent.class);
+
+    static final EventType COMMIT = EventType.getEventType(SqlSessionCommitEvent.class);
+
+    static final EventType BATCH_FLUSH = EventType.getEventType(BatchFlushEvent.class);
+
+    static boolean isAvailable() {
+      return FlightRecorder.isAvailable();
+    }
+
+    static Object beginSession(ExecutorType executorType) {
+      SqlSessionEvent event = new SqlSessionEvent();
+      event.executorType = executorType.name();
+      event.begin();
+      return event;
+    }
+
+    static void reuseSession(Object recording) {
+      ((SqlSessionEvent) recording).reuses++;
+    }
+
+    static void endSession(Object recording, boolean managed) {
+      SqlSessionEvent event = (SqlSessionEvent) recording;
+      event.managed = managed;
+      event.commit();
+    }
+
+    static Object beginStatement() {
+      StatementEvent event = new StatementEvent();
+      event.begin();
+      return event;
+    }
+
+    static void endStatement(Object recording, String statementId, long rows, String failure) {
+      StatementEvent event = (StatementEvent) recording;
+      event.end();
+      if (event.shouldCommit()) {
+        event.statementId = statementId;
+        event.rows = rows;
+        event.failure = failure;
+        event.commit();
+      }
+    }
+
+    static Object beginCommit() {
+      SqlSessionCommitEvent event = new SqlSessionCommitEvent();
+      event.begin();
+      return event;
+    }
+
+    static void endCommit(Object recording, ExecutorType executorType) {
+      SqlSessionCommitEvent event = (SqlSessionCommitEvent) recording;
+      event.executorType = executorType.name();
+      event.commit();
+    }
+
+    static Object beginBatchFlush() {
+      BatchFlushEvent event = new BatchFlushEvent();
+      event.begin();
+      return event;
+    }
+
+    static void endBatchFlush(Object recording, String statementId, int items, List<BatchResult> results) {
+      BatchFlushEvent event = (BatchFlushEvent) recording;
+      event.end();
+      if (event.shouldCommit()) {
+        event.statementId = statementId;
+        event.items = items;
+        event.batches = results.size();
+        for (BatchResult result : results) {
+          for (int updateCount : result.getUpdateCounts()) {
+            if (updateCount > 0) {
+              event.rows += updateCount;
+            }
+          }
+        }
+        event.commit();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The commit of a transactional {@code SqlSession} right before its Spring transaction commits, which flushes the
+ * pending batch statements.
+ */
+@Name("org.mybatis.SqlSessionCommit")
+@Label("SqlSession Commit")
+@Category("MyBatis")
+@Description("The commit and flush of a transactional SqlSession before its transaction commits")
+final class SqlSessionCommitEvent extends Event {
+
+  @Label("Executor Type")
+  String executorType;
+
+}
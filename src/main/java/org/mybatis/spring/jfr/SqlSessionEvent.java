@@ -0,0 +1,45 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A {@code SqlSession} from the moment it is opened until it is closed, so its duration is the time the session (and
+ * the connection it got) was held.
+ */
+@Name("org.mybatis.SqlSession")
+@Label("SqlSession")
+@Category("MyBatis")
+@Description("A SqlSession from the moment it is opened until it is closed")
+final class SqlSessionEvent extends Event {
+
+  @Label("Executor Type")
+  String executorType;
+
+  @Label("Managed")
+  @Description("Whether the session was bound to a Spring transaction or to a SqlSessionScope")
+  boolean managed;
+
+  @Label("Reuses")
+  @Description("Number of calls that reused the session after the one that opened it")
+  int reuses;
+
+}
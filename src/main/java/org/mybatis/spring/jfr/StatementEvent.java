@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call of {@code SqlSessionTemplate}, from the moment it got its session until the statement returned.
+ */
+@Name("org.mybatis.Statement")
+@Label("Statement")
+@Category("MyBatis")
+@Description("A statement run through a SqlSessionTemplate")
+final class StatementEvent extends Event {
+
+  @Label("Statement Id")
+  String statementId;
+
+  @Label("Rows")
+  @Description("Rows returned or updated by the statement, -1 if unknown")
+  long rows;
+
+  @Label("Failure")
+  @Description("Class of the exception thrown by the statement")
+  String failure;
+
+}
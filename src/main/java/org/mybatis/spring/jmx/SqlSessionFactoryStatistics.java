@@ -0,0 +1,371 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jmx;
+
+import static org.springframework.util.Assert.notNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.mybatis.spring.metrics.SqlSessionMetrics;
+import org.mybatis.spring.metrics.SqlSessionMetricsRecorder;
+
+/**
+ * The runtime statistics of one {@code SqlSessionFactory}, registered in JMX under
+ * {@code org.mybatis.spring:type=SqlSessionFactory,name=<factory name>}.
+ * <p>
+ * {@code SqlSessionFactoryBean} creates and registers one when {@code jmxEnabled} is set. It can also be created for
+ * a factory built elsewhere, whose configuration got the plugin of the statistics before the factory was built:
+ *
+ * <pre class="code">
+ * SqlSessionFactoryStatistics.addInterceptor(configuration);
+ * SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+ * SqlSessionFactoryStatistics statistics = new SqlSessionFactoryStatistics(sqlSessionFactory);
+ * statistics.register(ManagementFactory.getPlatformMBeanServer());
+ * </pre>
+ *
+ * The statistics are only counters updated by the calls of the application: the sessions and statements are counted by
+ * a {@link SqlSessionMetricsRecorder} added to {@link SqlSessionMetrics}, the pending batch statements and the requests
+ * of the second level caches by the plugin. Without the plugin, no pending batch statement and no cache hit ratio is
+ * reported. Closing the statistics unregisters the MBean and stops counting; the plugin cannot be removed from the
+ * configuration, it is disabled and no longer wraps the executors.
+ * <p>
+ * The second level caches are never iterated. A query of a statement that uses the cache is a request, and a hit
+ * unless the statement is run: a query answered by the local cache of the session counts as a hit too.
+ *
+ * @since 2.0.6
+ */
+public class SqlSessionFactoryStatistics implements SqlSessionFactoryStatisticsMXBean, AutoCloseable {
+
+  /**
+   * The domain of the names of the MBeans of MyBatis-Spring.
+   */
+  public static final String JMX_DOMAIN = "org.mybatis.spring";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqlSessionFactoryStatistics.class);
+
+  private static final ExecutorType[] EXECUTOR_TYPES = ExecutorType.values();
+
+  private final SqlSessionFactory sessionFactory;
+
+  private final String factoryName;
+
+  private final Recorder recorder = new Recorder();
+
+  private final StatisticsInterceptor interceptor;
+
+  private volatile ObjectName registeredName;
+
+  private volatile MBeanServer server;
+
+  /**
+   * Starts counting the statistics of a factory. The pending batch statements and the cache hit ratios are only
+   * counted when the configuration of the factory got the plugin of {@link #addInterceptor(Configuration)}.
+   *
+   * @param sessionFactory
+   *          a factory of SqlSession
+   */
+  public SqlSessionFactoryStatistics(SqlSessionFactory sessionFactory) {
+    notNull(sessionFactory, "No SqlSessionFactory specified");
+    this.sessionFactory = sessionFactory;
+    this.factoryName = SqlSessionMetrics.getFactoryName(sessionFactory);
+    this.interceptor = findInterceptor(sessionFactory.getConfiguration());
+    if (this.interceptor == null) {
+      LOGGER.debug(() -> "The configuration of the SqlSessionFactory '" + factoryName
+          + "' has no statistics plugin, the pending batch statements and the cache hit ratios are not counted");
+    } else {
+      this.interceptor.enable();
+    }
+    SqlSessionMetrics.addRecorder(recorder);
+  }
+
+  /**
+   * Adds the plugin that counts the pending batch statements and the requests of the second level caches to a
+   * configuration. The interceptors of a configuration are not thread safe: it must be called before the factory is
+   * built. Does nothing if the configuration already has it.
+   *
+   * @param configuration
+   *          the configuration of a factory that is not built yet
+   */
+  public static void addInterceptor(Configuration configuration) {
+    notNull(configuration, "No Configuration specified");
+    if (findInterceptor(configuration) == null) {
+      configuration.addInterceptor(new StatisticsInterceptor());
+    }
+  }
+
+  private static StatisticsInterceptor findInterceptor(Configuration configuration) {
+    for (Interceptor candidate : configuration.getInterceptors()) {
+      if (candidate instanceof StatisticsInterceptor) {
+        return (StatisticsInterceptor) candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the name of the MBean.
+   *
+   * @return {@code org.mybatis.spring:type=SqlSessionFactory,name=<factory name>}
+   */
+  public ObjectName getObjectName() {
+    try {
+      return new ObjectName(JMX_DOMAIN + ":type=SqlSessionFactory,name=" + ObjectName.quote(factoryName));
+    } catch (MalformedObjectNameException e) {
+      throw new IllegalStateException("Invalid MBean name for SqlSessionFactory '" + factoryName + "'", e);
+    }
+  }
+
+  /**
+   * Registers the MBean. Logs a warning and does nothing if an MBean with the same name is already registered.
+   *
+   * @param server
+   *          the MBean server, usually the platform one
+   * @return true if registered
+   */
+  public synchronized boolean register(MBeanServer server) {
+    notNull(server, "No MBeanServer specified");
+    ObjectName name = getObjectName();
+    try {
+      server.registerMBean(this, name);
+    } catch (InstanceAlreadyExistsException e) {
+      LOGGER.warn(() -> "An MBean named '" + name + "' is already registered, the statistics of the SqlSessionFactory '"
+          + factoryName + "' are not exposed");
+      return false;
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot register MBean '" + name + "'", e);
+    }
+    this.server = server;
+    this.registeredName = name;
+    LOGGER.debug(() -> "Registered MBean '" + name + "'");
+    return true;
+  }
+
+  /**
+   * Unregisters the MBean if it was registered and stops counting.
+   */
+  @Override
+  public synchronized void close() {
+    SqlSessionMetrics.removeRecorder(recorder);
+    if (interceptor != null) {
+      interceptor.disable();
+    }
+    if (registeredName != null) {
+      ObjectName name = registeredName;
+      try {
+        server.unregisterMBean(name);
+        LOGGER.debug(() -> "Unregistered MBean '" + name + "'");
+      } catch (InstanceNotFoundException e) {
+        // already unregistered
+      } catch (JMException e) {
+        LOGGER.warn(() -> "Cannot unregister MBean '" + name + "': " + e);
+      }
+      registeredName = null;
+      server = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getFactoryName() {
+    return factoryName;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getMappedStatementCount() {
+    // the short names are registered too, the same statement may be there twice
+    Set<Object> statements = Collections.newSetFromMap(new IdentityHashMap<>());
+    statements.addAll(sessionFactory.getConfiguration().getMappedStatements());
+    return statements.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Double> getCacheHitRatios() {
+    Map<String, Double> ratios = new TreeMap<>();
+    if (interceptor == null) {
+      return ratios;
+    }
+    for (String cacheId : caches().keySet()) {
+      long[] counts = interceptor.getCacheCounts(cacheId);
+      ratios.put(cacheId, counts[0] == 0 ? -1d : (double) counts[1] / counts[0]);
+    }
+    return ratios;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Integer> getCacheSizes() {
+    Map<String, Integer> sizes = new TreeMap<>();
+    caches().forEach((namespace, cache) -> sizes.put(namespace, cache.getSize()));
+    return sizes;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getOpenManagedSessions() {
+    return recorder.openManagedSessions.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getPendingBatchStatements() {
+    return interceptor == null ? 0 : interceptor.getPending();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Long> getSessionsOpenedByExecutorType() {
+    Map<String, Long> usage = new LinkedHashMap<>();
+    for (ExecutorType executorType : EXECUTOR_TYPES) {
+      usage.put(executorType.name(), recorder.sessionsOpened.get(executorType.ordinal()));
+    }
+    return usage;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getStatementsExecuted() {
+    return recorder.statementsExecuted.sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getStatementsFailed() {
+    return recorder.statementsFailed.sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clearCache(String namespace) {
+    Configuration configuration = sessionFactory.getConfiguration();
+    if (namespace == null || !configuration.hasCache(namespace)) {
+      throw new IllegalArgumentException("No second level cache for namespace '" + namespace + "'");
+    }
+    configuration.getCache(namespace).clear();
+    LOGGER.debug(() -> "Cleared the second level cache of namespace '" + namespace + "'");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void resetStatistics() {
+    if (interceptor != null) {
+      interceptor.resetCacheCounts();
+    }
+    for (int i = 0; i < EXECUTOR_TYPES.length; i++) {
+      recorder.sessionsOpened.set(i, 0);
+    }
+    recorder.statementsExecuted.reset();
+    recorder.statementsFailed.reset();
+  }
+
+  private Map<String, Cache> caches() {
+    // the caches are also registered under the short name of their namespace
+    Map<String, Cache> caches = new TreeMap<>();
+    for (Cache cache : sessionFactory.getConfiguration().getCaches()) {
+      caches.putIfAbsent(cache.getId(), cache);
+    }
+    return caches;
+  }
+
+  /**
+   * Counts the events of the factory.
+   */
+  private final class Recorder implements SqlSessionMetricsRecorder {
+
+    private final AtomicLong openManagedSessions = new AtomicLong();
+
+    private final AtomicLongArray sessionsOpened = new AtomicLongArray(EXECUTOR_TYPES.length);
+
+    private final LongAdder statementsExecuted = new LongAdder();
+
+    private final LongAdder statementsFailed = new LongAdder();
+
+    @Override
+    public void sessionOpened(String name, ExecutorType executorType, boolean managed) {
+      if (factoryName.equals(name)) {
+        sessionsOpened.incrementAndGet(executorType.ordinal());
+        if (managed) {
+          openManagedSessions.incrementAndGet();
+        }
+      }
+    }
+
+    @Override
+    public void sessionClosed(String name, boolean managed) {
+      if (managed && factoryName.equals(name)) {
+        openManagedSessions.decrementAndGet();
+      }
+    }
+
+    @Override
+    public void statementExecuted(String name, ExecutorType executorType, String statementId, long nanos,
+        boolean failed) {
+      if (factoryName.equals(name)) {
+        statementsExecuted.increment();
+        if (failed) {
+          statementsFailed.increment();
+        }
+      }
+    }
+
+  }
+
+}
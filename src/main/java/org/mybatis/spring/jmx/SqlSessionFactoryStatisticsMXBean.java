@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jmx;
+
+import java.util.Map;
+
+/**
+ * Runtime statistics of a {@code SqlSessionFactory}, exposed in JMX by {@link SqlSessionFactoryStatistics}.
+ *
+ * @since 2.0.6
+ */
+public interface SqlSessionFactoryStatisticsMXBean {
+
+  /**
+   * @return the name of the factory
+   */
+  String getFactoryName();
+
+  /**
+   * @return the number of mapped statements of the configuration
+   */
+  int getMappedStatementCount();
+
+  /**
+   * @return the hit ratio of the second level cache of each namespace since the statistics were reset, -1 for a
+   *         namespace whose cache has not been read; empty when the configuration has no statistics plugin
+   */
+  Map<String, Double> getCacheHitRatios();
+
+  /**
+   * @return the number of entries of the second level cache of each namespace
+   */
+  Map<String, Integer> getCacheSizes();
+
+  /**
+   * @return the number of sessions currently bound to a Spring transaction or a {@code SqlSessionScope}
+   */
+  long getOpenManagedSessions();
+
+  /**
+   * @return the number of statements added to the batches of {@code BATCH} executors and not flushed yet
+   */
+  long getPendingBatchStatements();
+
+  /**
+   * @return the number of sessions opened through Spring for each executor type
+   */
+  Map<String, Long> getSessionsOpenedByExecutorType();
+
+  /**
+   * @return the number of statements run through a {@code SqlSessionTemplate}
+   */
+  long getStatementsExecuted();
+
+  /**
+   * @return the number of statements run through a {@code SqlSessionTemplate} that threw an exception
+   */
+  long getStatementsFailed();
+
+  /**
+   * Clears the second level cache of a namespace.
+   *
+   * @param namespace
+   *          the namespace of a mapper
+   */
+  void clearCache(String namespace);
+
+  /**
+   * Resets the counters: the cache hit ratios, the sessions opened and the statements run.
+   */
+  void resetStatistics();
+
+}
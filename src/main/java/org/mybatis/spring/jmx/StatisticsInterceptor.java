@@ -0,0 +1,206 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jmx;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.CachingExecutor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Counts the statements added to the batch of each executor until the executor flushes, commits, rolls back or
+ * closes, and the queries read from the second level cache of each namespace. A {@code BATCH} executor is recognized
+ * by the value its {@code update} returns.
+ * <p>
+ * Each executor is wrapped with its own counter, which only the thread using the executor updates: the executors
+ * share nothing but the totals. A configuration cannot remove an interceptor, so once {@linkplain #disable() disabled}
+ * it stops wrapping the new executors and the counters of the existing ones stop counting.
+ * <p>
+ * A query of a statement that uses the second level cache is a request of its cache, and a miss when the executor
+ * behind the cache creates a statement handler to run it. A query answered by the local cache of the session, without
+ * running the statement, is therefore counted as a hit.
+ */
+class StatisticsInterceptor implements Interceptor {
+
+  private final AtomicLong pending = new AtomicLong();
+
+  private final Map<String, CacheCounter> cacheCounters = new ConcurrentHashMap<>();
+
+  // the cache queried by the current thread until the executor behind it creates a statement handler
+  private final ThreadLocal<CacheCounter> cacheRequest = new ThreadLocal<>();
+
+  private volatile boolean enabled = true;
+
+  long getPending() {
+    return pending.get();
+  }
+
+  /**
+   * Returns the number of requests and hits of a cache since the last reset.
+   */
+  long[] getCacheCounts(String cacheId) {
+    CacheCounter counter = cacheCounters.get(cacheId);
+    if (counter == null) {
+      return new long[2];
+    }
+    long misses = counter.misses.sum();
+    long requests = counter.requests.sum();
+    return new long[] { requests, Math.max(requests - misses, 0) };
+  }
+
+  void resetCacheCounts() {
+    cacheCounters.values().forEach(CacheCounter::reset);
+  }
+
+  void enable() {
+    enabled = true;
+  }
+
+  void disable() {
+    enabled = false;
+    pending.set(0);
+    cacheCounters.clear();
+  }
+
+  @Override
+  public Object plugin(Object target) {
+    if (target instanceof StatementHandler) {
+      CacheCounter counter = cacheRequest.get();
+      if (counter != null) {
+        // nested selects create their own handlers, only the first one is the miss
+        cacheRequest.remove();
+        counter.misses.increment();
+      }
+      return target;
+    }
+    return enabled && target instanceof Executor
+        ? Plugin.wrap(target, new ExecutorCounter(target instanceof CachingExecutor))
+        : target;
+  }
+
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    // the executors are wrapped with their own counter
+    return invocation.proceed();
+  }
+
+  /**
+   * Counts the pending statements and the cache requests of one executor.
+   */
+  @Intercepts({
+      @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+      @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+          RowBounds.class, ResultHandler.class }),
+      @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+          RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class }),
+      @Signature(type = Executor.class, method = "flushStatements", args = {}),
+      @Signature(type = Executor.class, method = "commit", args = { boolean.class }),
+      @Signature(type = Executor.class, method = "rollback", args = { boolean.class }),
+      @Signature(type = Executor.class, method = "close", args = { boolean.class }) })
+  private final class ExecutorCounter implements Interceptor {
+
+    private final boolean caching;
+
+    private int count;
+
+    ExecutorCounter(boolean caching) {
+      this.caching = caching;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      if (!enabled) {
+        return invocation.proceed();
+      }
+      String method = invocation.getMethod().getName();
+      if ("query".equals(method)) {
+        return query(invocation);
+      }
+      if ("update".equals(method)) {
+        Object result = invocation.proceed();
+        if (result instanceof Integer && (Integer) result == BatchExecutor.BATCH_UPDATE_RETURN_VALUE) {
+          count++;
+          pending.incrementAndGet();
+        }
+        return result;
+      }
+      try {
+        return invocation.proceed();
+      } finally {
+        // flushed or discarded, even when it failed
+        if (count != 0) {
+          pending.addAndGet(-count);
+          count = 0;
+        }
+      }
+    }
+
+    private Object query(Invocation invocation) throws Throwable {
+      Object[] args = invocation.getArgs();
+      MappedStatement ms = (MappedStatement) args[0];
+      Cache cache = ms.getCache();
+      // the conditions under which the CachingExecutor reads the cache
+      if (!caching || cache == null || !ms.isUseCache() || args[3] != null) {
+        return invocation.proceed();
+      }
+      CacheCounter counter = cacheCounters.computeIfAbsent(cache.getId(), id -> new CacheCounter());
+      counter.requests.increment();
+      CacheCounter outer = cacheRequest.get();
+      cacheRequest.set(counter);
+      try {
+        return invocation.proceed();
+      } finally {
+        if (outer == null) {
+          cacheRequest.remove();
+        } else {
+          cacheRequest.set(outer);
+        }
+      }
+    }
+  }
+
+  /**
+   * The requests and misses of one cache.
+   */
+  private static final class CacheCounter {
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    void reset() {
+      misses.reset();
+      requests.reset();
+    }
+  }
+
+}
@@ -202,7 +202,6 @@ public class ClassPathMapperScanner extends ClassPathBeanDefinitionScanner {
      */
     @Override
     public Set<BeanDefinitionHolder> doScan(String... basePackages) {
-        System.out.println("2--ClassPathMapperScanner--执行doScan basePackages is " + Arrays.toString(basePackages));
         // 这里调用父类ClassPathBeanDefinitionScanner进行将mapper接口进行扫描生成代理对象
         Set<BeanDefinitionHolder> beanDefinitions = super.doScan(basePackages);
 
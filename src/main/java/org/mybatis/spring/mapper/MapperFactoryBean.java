@@ -18,6 +18,7 @@ package org.mybatis.spring.mapper;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
+import org.mybatis.spring.AsyncSqlSessionTemplate;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.mybatis.spring.support.SqlSessionDaoSupport;
 import org.springframework.beans.factory.FactoryBean;
@@ -65,6 +66,10 @@ public class MapperFactoryBean<T> extends SqlSessionDaoSupport implements Factor
 
     private boolean addToConfig = true;
 
+    private boolean directMapper;
+
+    private AsyncSqlSessionTemplate asyncSqlSessionTemplate;
+
     public MapperFactoryBean() {
         // intentionally empty
     }
@@ -89,7 +94,6 @@ public class MapperFactoryBean<T> extends SqlSessionDaoSupport implements Factor
      * @param mapperInterface
      */
     public MapperFactoryBean(Class<T> mapperInterface) {
-        System.out.println("4--MapperFactoryBean构造初始化----" + mapperInterface);
         this.mapperInterface = mapperInterface;
     }
 
@@ -113,7 +117,6 @@ public class MapperFactoryBean<T> extends SqlSessionDaoSupport implements Factor
         if (this.addToConfig && !configuration.hasMapper(this.mapperInterface)) {
             try {
                 // 进行addMapper操作
-                System.out.println("--configuration.addMapper(this.mapperInterface);");
                 configuration.addMapper(this.mapperInterface);
             } catch (Exception e) {
                 logger.error("Error while adding the mapper '" + this.mapperInterface + "' to configuration.", e);
@@ -134,9 +137,14 @@ public class MapperFactoryBean<T> extends SqlSessionDaoSupport implements Factor
      */
     @Override
     public T getObject() throws Exception {
+        if (this.asyncSqlSessionTemplate != null) {
+            return this.asyncSqlSessionTemplate.getMapper(this.mapperInterface);
+        }
+        if (this.directMapper) {
+            return getSqlSessionTemplate().getDirectMapper(this.mapperInterface);
+        }
         SqlSession sqlSession = getSqlSession();
         T mapper = sqlSession.getMapper(this.mapperInterface);
-        System.out.println("4--MapperFactoryBean执行getObject()方法--" + mapper);
         return mapper;
     }
 
@@ -198,4 +206,54 @@ public class MapperFactoryBean<T> extends SqlSessionDaoSupport implements Factor
     public boolean isAddToConfig() {
         return addToConfig;
     }
+
+    /**
+     * If directMapper is true the mapper runs its methods directly over the {@code SqlSession} of each call instead of
+     * going through a MyBatis mapper proxy that calls the {@code SqlSessionTemplate}.
+     * <p>
+     * By default directMapper is false.
+     *
+     * @param directMapper a flag that whether to create a direct mapper or not
+     * @see SqlSessionTemplate#getDirectMapper(Class)
+     * @since 2.0.6
+     */
+    public void setDirectMapper(boolean directMapper) {
+        this.directMapper = directMapper;
+    }
+
+    /**
+     * Return the flag for creating a direct mapper.
+     *
+     * @return true if the mapper runs its methods directly over the {@code SqlSession} of each call
+     * @since 2.0.6
+     */
+    public boolean isDirectMapper() {
+        return directMapper;
+    }
+
+    /**
+     * Sets the template of an async mapper, an interface whose methods return {@code CompletableFuture}s. The mapper
+     * is then created by this template and, unless set explicitly, its {@code SqlSessionTemplate} is used to register
+     * the mapper.
+     *
+     * @param asyncSqlSessionTemplate the template that runs the methods of the async mapper
+     * @see AsyncSqlSessionTemplate#getMapper(Class)
+     * @since 2.0.6
+     */
+    public void setAsyncSqlSessionTemplate(AsyncSqlSessionTemplate asyncSqlSessionTemplate) {
+        this.asyncSqlSessionTemplate = asyncSqlSessionTemplate;
+        if (asyncSqlSessionTemplate != null && getSqlSessionTemplate() == null) {
+            setSqlSessionTemplate(asyncSqlSessionTemplate.getSqlSessionTemplate());
+        }
+    }
+
+    /**
+     * Return the template of the async mapper.
+     *
+     * @return the template of the async mapper, {@code null} if the mapper is not async
+     * @since 2.0.6
+     */
+    public AsyncSqlSessionTemplate getAsyncSqlSessionTemplate() {
+        return asyncSqlSessionTemplate;
+    }
 }
@@ -358,7 +358,6 @@ public class MapperScannerConfigurer
     @Override
     public void afterPropertiesSet() throws Exception {
         notNull(this.basePackage, "Property 'basePackage' is required");
-        System.out.println("2--MapperScannerConfigurer--执行空的--afterPropertiesSet()");
     }
 
     /**
@@ -370,7 +369,6 @@ public class MapperScannerConfigurer
     @Override
     public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
         // left intentionally blank
-        System.out.println("2--MapperScannerConfigurer--BeanFactoryPostProcessors--执行空的--postProcessBeanFactory");
     }
 
     /**
@@ -385,7 +383,6 @@ public class MapperScannerConfigurer
      */
     @Override
     public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
-        System.out.println("2--MapperScannerConfigurer--执行postProcessBeanDefinitionRegistry--begin");
         if (this.processPropertyPlaceHolders) {
             // 先进行相关的属性配置 主要是@MapperScan注解中的包路径进行赋值
             processPropertyPlaceHolders();
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.session.ExecutorType;
+
+/**
+ * Passes the metrics to several recorders, see {@link SqlSessionMetrics#addRecorder(SqlSessionMetricsRecorder)}.
+ */
+final class CompositeSqlSessionMetricsRecorder implements SqlSessionMetricsRecorder {
+
+  private final SqlSessionMetricsRecorder[] recorders;
+
+  private CompositeSqlSessionMetricsRecorder(SqlSessionMetricsRecorder[] recorders) {
+    this.recorders = recorders;
+  }
+
+  static SqlSessionMetricsRecorder with(SqlSessionMetricsRecorder current, SqlSessionMetricsRecorder added) {
+    List<SqlSessionMetricsRecorder> all = new ArrayList<>();
+    if (current instanceof CompositeSqlSessionMetricsRecorder) {
+      all.addAll(Arrays.asList(((CompositeSqlSessionMetricsRecorder) current).recorders));
+    } else {
+      all.add(current);
+    }
+    all.add(added);
+    return new CompositeSqlSessionMetricsRecorder(all.toArray(new SqlSessionMetricsRecorder[0]));
+  }
+
+  SqlSessionMetricsRecorder without(SqlSessionMetricsRecorder removed) {
+    List<SqlSessionMetricsRecorder> remaining = new ArrayList<>(Arrays.asList(recorders));
+    remaining.remove(removed);
+    if (remaining.isEmpty()) {
+      return null;
+    }
+    return remaining.size() == 1 ? remaining.get(0)
+        : new CompositeSqlSessionMetricsRecorder(remaining.toArray(new SqlSessionMetricsRecorder[0]));
+  }
+
+  @Override
+  public void sessionOpened(String factoryName, ExecutorType executorType, boolean managed) {
+    for (SqlSessionMetricsRecorder recorder : recorders) {
+      recorder.sessionOpened(factoryName, executorType, managed);
+    }
+  }
+
+  @Override
+  public void sessionReused(String factoryName, ExecutorType executorType, int references) {
+    for (SqlSessionMetricsRecorder recorder : recorders) {
+      recorder.sessionReused(factoryName, executorType, references);
+    }
+  }
+
+  @Override
+  public void sessionClosed(String factoryName, boolean managed) {
+    for (SqlSessionMetricsRecorder recorder : recorders) {
+      recorder.sessionClosed(factoryName, managed);
+    }
+  }
+
+  @Override
+  public void statementExecuted(String factoryName, ExecutorType executorType, String statementId, long nanos,
+      boolean failed) {
+    for (SqlSessionMetricsRecorder recorder : recorders) {
+      recorder.statementExecuted(factoryName, executorType, statementId, nanos, failed);
+    }
+  }
+
+  @Override
+  public void connectionReleased(String factoryName, long nanos, boolean transactional) {
+    for (SqlSessionMetricsRecorder recorder : recorders) {
+      recorder.connectionReleased(factoryName, nanos, transactional);
+    }
+  }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram of fixed size.
+ * <p>
+ * Values are counted in log-scaled buckets, as in HdrHistogram: each power of two is split in 16 sub-buckets, so a
+ * value is reported with a relative error of at most 1/16 over the whole {@code long} range, using 960 counters.
+ * Recording a value increments one counter and does not allocate. A snapshot can be taken, and the histogram reset,
+ * while values are being recorded.
+ *
+ * @since 2.0.6
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  static final int BUCKETS = SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS);
+
+  private final AtomicReference<Counts> counts = new AtomicReference<>(new Counts());
+
+  /**
+   * Records a value.
+   *
+   * @param nanos
+   *          the latency in nanoseconds, negative values are recorded as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0L);
+    Counts current = counts.get();
+    current.buckets.incrementAndGet(index(value));
+    current.total.add(value);
+    long max = current.max.get();
+    while (value > max && !current.max.compareAndSet(max, value)) {
+      max = current.max.get();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the values recorded since the histogram was created or last reset.
+   *
+   * @return the snapshot
+   */
+  public LatencySnapshot snapshot() {
+    return counts.get().snapshot();
+  }
+
+  /**
+   * Returns a snapshot of the recorded values and starts again from an empty histogram. Values recorded by calls that
+   * are running while the histogram is reset may be missing from both the snapshot and the new histogram.
+   *
+   * @return the snapshot of the values recorded before the reset
+   */
+  public LatencySnapshot snapshotAndReset() {
+    return counts.getAndSet(new Counts()).snapshot();
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    long next = (long) (SUB_BUCKETS + subBucket + 1) << shift;
+    // the last bucket ends at Long.MAX_VALUE
+    return next <= 0 ? Long.MAX_VALUE : next - 1;
+  }
+
+  private static final class Counts {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder total = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    LatencySnapshot snapshot() {
+      long[] copy = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        copy[i] = buckets.get(i);
+      }
+      return new LatencySnapshot(copy, total.sum(), max.get());
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable copy of the counts of a {@link LatencyHistogram}.
+ *
+ * @since 2.0.6
+ */
+public final class LatencySnapshot {
+
+  private final long[] buckets;
+
+  private final long count;
+
+  private final long totalNanos;
+
+  private final long maxNanos;
+
+  LatencySnapshot(long[] buckets, long totalNanos, long maxNanos) {
+    long sum = 0;
+    for (long bucket : buckets) {
+      sum += bucket;
+    }
+    this.buckets = buckets;
+    this.count = sum;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+  }
+
+  /**
+   * @return the number of recorded values
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return the sum of the recorded values in nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * @return the highest recorded value in nanoseconds, 0 if there is none
+   */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * @return the mean of the recorded values in nanoseconds, 0 if there is none
+   */
+  public double getMeanNanos() {
+    return count == 0 ? 0 : (double) totalNanos / count;
+  }
+
+  /**
+   * Returns the value below which a percentage of the recorded values fall. The value is the upper bound of its bucket,
+   * so it can be up to 1/16 higher than the recorded one, but never higher than the maximum.
+   *
+   * @param percentile
+   *          the percentile, between 0 and 100
+   * @return the value in nanoseconds, 0 if no value was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("The percentile must be between 0 and 100");
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.highestEquivalentValue(i), maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + count + ", mean=" + micros((long) getMeanNanos()) + ", p50="
+        + micros(getValueAtPercentile(50)) + ", p99=" + micros(getValueAtPercentile(99)) + ", max=" + micros(maxNanos);
+  }
+
+  private static String micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+  }
+
+}
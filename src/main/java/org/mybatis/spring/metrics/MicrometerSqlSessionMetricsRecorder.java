@@ -0,0 +1,210 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import static org.springframework.util.Assert.notNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+import org.apache.ibatis.session.ExecutorType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Publishes the metrics of MyBatis-Spring to a Micrometer {@code MeterRegistry}. Requires {@code micrometer-core} on
+ * the classpath.
+ * <p>
+ * All meters are tagged with the {@code factory} name; the meters are:
+ * <ul>
+ * <li>{@code mybatis.session.opened}, {@code mybatis.session.closed}: counters of sessions, tagged with {@code managed}
+ * (and {@code executor} when opened).</li>
+ * <li>{@code mybatis.session.reused}: counter of the calls that reused a transactional session, tagged with
+ * {@code executor}.</li>
+ * <li>{@code mybatis.session.references}: distribution of the number of calls holding a transactional session, its
+ * max is the peak reference count.</li>
+ * <li>{@code mybatis.statement}: timer of the template calls, tagged with {@code statement}, {@code executor} and
+ * {@code outcome} ({@code success} or {@code failure}).</li>
+ * <li>{@code mybatis.connection.held}: timer of the time a connection is held by a {@code SpringManagedTransaction},
+ * tagged with {@code transactional}.</li>
+ * </ul>
+ *
+ * @since 2.0.6
+ */
+public class MicrometerSqlSessionMetricsRecorder implements SqlSessionMetricsRecorder {
+
+  private static final String FACTORY_TAG = "factory";
+
+  private static final String EXECUTOR_TAG = "executor";
+
+  private static final String MANAGED_TAG = "managed";
+
+  private static final ExecutorType[] EXECUTOR_TYPES = ExecutorType.values();
+
+  private final MeterRegistry registry;
+
+  // the meters are registered once, the events only look them up
+  private final Map<String, FactoryMeters> meters = new ConcurrentHashMap<>();
+
+  public MicrometerSqlSessionMetricsRecorder(MeterRegistry registry) {
+    notNull(registry, "No MeterRegistry specified");
+    this.registry = registry;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void sessionOpened(String factoryName, ExecutorType executorType, boolean managed) {
+    meters(factoryName).opened(executorType, managed).increment();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void sessionReused(String factoryName, ExecutorType executorType, int references) {
+    FactoryMeters factoryMeters = meters(factoryName);
+    factoryMeters.reused(executorType).increment();
+    factoryMeters.references().record(references);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void sessionClosed(String factoryName, boolean managed) {
+    meters(factoryName).closed(managed).increment();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void statementExecuted(String factoryName, ExecutorType executorType, String statementId, long nanos,
+      boolean failed) {
+    meters(factoryName).statement(statementId, executorType, failed).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void connectionReleased(String factoryName, long nanos, boolean transactional) {
+    meters(factoryName).connectionHeld(transactional).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private FactoryMeters meters(String factoryName) {
+    FactoryMeters factoryMeters = meters.get(factoryName);
+    if (factoryMeters == null) {
+      factoryMeters = meters.computeIfAbsent(factoryName, FactoryMeters::new);
+    }
+    return factoryMeters;
+  }
+
+  private static int flagIndex(ExecutorType executorType, boolean flag) {
+    return executorType.ordinal() * 2 + (flag ? 1 : 0);
+  }
+
+  private static <M> M meter(AtomicReferenceArray<M> meters, int index, IntFunction<M> register) {
+    M meter = meters.get(index);
+    if (meter == null) {
+      // registering is idempotent, a race registers the same meter twice
+      meter = register.apply(index);
+      meters.set(index, meter);
+    }
+    return meter;
+  }
+
+  /**
+   * The meters of one factory, indexed by the executor type and the flags of their tags.
+   */
+  private final class FactoryMeters {
+
+    private final String factoryName;
+
+    private final AtomicReferenceArray<Counter> opened = new AtomicReferenceArray<>(EXECUTOR_TYPES.length * 2);
+
+    private final AtomicReferenceArray<Counter> reused = new AtomicReferenceArray<>(EXECUTOR_TYPES.length);
+
+    private final AtomicReferenceArray<Counter> closed = new AtomicReferenceArray<>(2);
+
+    private final AtomicReferenceArray<Timer> connectionHeld = new AtomicReferenceArray<>(2);
+
+    private final Map<String, AtomicReferenceArray<Timer>> statements = new ConcurrentHashMap<>();
+
+    private volatile DistributionSummary references;
+
+    FactoryMeters(String factoryName) {
+      this.factoryName = factoryName;
+    }
+
+    Counter opened(ExecutorType executorType, boolean managed) {
+      return meter(opened, flagIndex(executorType, managed),
+          index -> Counter.builder("mybatis.session.opened").description("SqlSessions opened")
+              .tag(FACTORY_TAG, factoryName).tag(EXECUTOR_TAG, executorType.name())
+              .tag(MANAGED_TAG, Boolean.toString(managed)).register(registry));
+    }
+
+    Counter reused(ExecutorType executorType) {
+      return meter(reused, executorType.ordinal(),
+          index -> Counter.builder("mybatis.session.reused")
+              .description("Calls that reused the SqlSession of their transaction").tag(FACTORY_TAG, factoryName)
+              .tag(EXECUTOR_TAG, executorType.name()).register(registry));
+    }
+
+    DistributionSummary references() {
+      DistributionSummary summary = references;
+      if (summary == null) {
+        summary = DistributionSummary.builder("mybatis.session.references")
+            .description("Calls holding a transactional SqlSession").tag(FACTORY_TAG, factoryName).register(registry);
+        references = summary;
+      }
+      return summary;
+    }
+
+    Counter closed(boolean managed) {
+      return meter(closed, managed ? 1 : 0,
+          index -> Counter.builder("mybatis.session.closed").description("SqlSessions closed")
+              .tag(FACTORY_TAG, factoryName).tag(MANAGED_TAG, Boolean.toString(managed)).register(registry));
+    }
+
+    Timer statement(String statementId, ExecutorType executorType, boolean failed) {
+      AtomicReferenceArray<Timer> timers = statements.get(statementId);
+      if (timers == null) {
+        timers = statements.computeIfAbsent(statementId, id -> new AtomicReferenceArray<>(EXECUTOR_TYPES.length * 2));
+      }
+      return meter(timers, flagIndex(executorType, failed),
+          index -> Timer.builder("mybatis.statement").description("SqlSessionTemplate calls")
+              .tag(FACTORY_TAG, factoryName).tag("statement", statementId).tag(EXECUTOR_TAG, executorType.name())
+              .tag("outcome", failed ? "failure" : "success").register(registry));
+    }
+
+    Timer connectionHeld(boolean transactional) {
+      return meter(connectionHeld, transactional ? 1 : 0,
+          index -> Timer.builder("mybatis.connection.held")
+              .description("Time a connection is held by a SpringManagedTransaction").tag(FACTORY_TAG, factoryName)
+              .tag("transactional", Boolean.toString(transactional)).register(registry));
+    }
+  }
+
+}
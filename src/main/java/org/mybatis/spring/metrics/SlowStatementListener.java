@@ -0,0 +1,43 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+
+/**
+ * Receives the statements that a {@link StatementLatencyInterceptor} found slower than its threshold.
+ *
+ * @since 2.0.6
+ */
+@FunctionalInterface
+public interface SlowStatementListener {
+
+  /**
+   * Called after a slow statement, on the thread that ran it.
+   *
+   * @param mappedStatement
+   *          the statement
+   * @param boundSql
+   *          the SQL and parameters it ran with
+   * @param nanos
+   *          the duration of the call in nanoseconds
+   * @param failed
+   *          true if the call threw an exception
+   */
+  void slowStatement(MappedStatement mappedStatement, BoundSql boundSql, long nanos, boolean failed);
+
+}
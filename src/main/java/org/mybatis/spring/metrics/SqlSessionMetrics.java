@@ -0,0 +1,147 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+/**
+ * Holds the {@link SqlSessionMetricsRecorder} of the application.
+ * <p>
+ * No recorder is set by default. Until one is set the instrumented code only reads a volatile field, it does not read
+ * the clock nor look up any name.
+ *
+ * <pre class="code">
+ * SqlSessionMetrics.setRecorder(new MicrometerSqlSessionMetricsRecorder(meterRegistry));
+ * </pre>
+ *
+ * @since 2.0.6
+ */
+public final class SqlSessionMetrics {
+
+  /**
+   * The name reported for the transactions of a {@code SpringManagedTransactionFactory} that has no name.
+   */
+  public static final String DEFAULT_FACTORY_NAME = "default";
+
+  private static final SqlSessionMetricsRecorder NOOP = new SqlSessionMetricsRecorder() {
+  };
+
+  // read on every event, the names are removed when their factory bean is destroyed
+  private static final Map<SqlSessionFactory, String> FACTORY_NAMES = new ConcurrentHashMap<>();
+
+  private static volatile SqlSessionMetricsRecorder recorder = NOOP;
+
+  private SqlSessionMetrics() {
+    // NOP
+  }
+
+  /**
+   * Sets the recorder that receives the metrics of all the factories.
+   *
+   * @param recorder
+   *          the recorder, {@code null} to stop recording
+   */
+  public static synchronized void setRecorder(SqlSessionMetricsRecorder recorder) {
+    SqlSessionMetrics.recorder = recorder == null ? NOOP : recorder;
+  }
+
+  /**
+   * Adds a recorder that receives the metrics of all the factories along with the current one(s).
+   *
+   * @param added
+   *          the recorder to add
+   */
+  public static synchronized void addRecorder(SqlSessionMetricsRecorder added) {
+    SqlSessionMetrics.recorder = recorder == NOOP ? added : CompositeSqlSessionMetricsRecorder.with(recorder, added);
+  }
+
+  /**
+   * Removes a recorder set or added before.
+   *
+   * @param removed
+   *          the recorder to remove
+   */
+  public static synchronized void removeRecorder(SqlSessionMetricsRecorder removed) {
+    if (recorder == removed) {
+      SqlSessionMetrics.recorder = NOOP;
+    } else if (recorder instanceof CompositeSqlSessionMetricsRecorder) {
+      SqlSessionMetricsRecorder remaining = ((CompositeSqlSessionMetricsRecorder) recorder).without(removed);
+      SqlSessionMetrics.recorder = remaining == null ? NOOP : remaining;
+    }
+  }
+
+  /**
+   * Returns the current recorder.
+   *
+   * @return the recorder, a recorder that does nothing if none is set
+   */
+  public static SqlSessionMetricsRecorder getRecorder() {
+    return recorder;
+  }
+
+  /**
+   * Returns if a recorder is set. The instrumented code checks it before measuring anything.
+   *
+   * @return true if metrics are recorded
+   */
+  public static boolean isEnabled() {
+    return recorder != NOOP;
+  }
+
+  /**
+   * Sets the name used in the metrics of a factory. {@code SqlSessionFactoryBean} registers its bean name.
+   *
+   * @param sessionFactory
+   *          a factory of SqlSession
+   * @param name
+   *          the name of the factory
+   */
+  public static void setFactoryName(SqlSessionFactory sessionFactory, String name) {
+    FACTORY_NAMES.put(sessionFactory, name);
+  }
+
+  /**
+   * Removes the name registered for a factory that is no longer used. {@code SqlSessionFactoryBean} removes its
+   * factory when it is destroyed.
+   *
+   * @param sessionFactory
+   *          a factory of SqlSession
+   */
+  public static void removeFactoryName(SqlSessionFactory sessionFactory) {
+    FACTORY_NAMES.remove(sessionFactory);
+  }
+
+  /**
+   * Returns the name used in the metrics of a factory: the registered name, or the id of its environment.
+   *
+   * @param sessionFactory
+   *          a factory of SqlSession
+   * @return the name of the factory
+   */
+  public static String getFactoryName(SqlSessionFactory sessionFactory) {
+    String name = FACTORY_NAMES.get(sessionFactory);
+    if (name != null) {
+      return name;
+    }
+    Environment environment = sessionFactory.getConfiguration().getEnvironment();
+    return environment == null ? DEFAULT_FACTORY_NAME : environment.getId();
+  }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import org.apache.ibatis.session.ExecutorType;
+
+/**
+ * Receives the counters and timings of the sessions, statements and connections managed by MyBatis-Spring.
+ * <p>
+ * Install a recorder with {@link SqlSessionMetrics#setRecorder(SqlSessionMetricsRecorder)}. Every method has an empty
+ * default so a recorder only implements what it needs. The methods are called on the thread that uses the session,
+ * inside the calls of the application, so they must be fast and must not throw. The {@code factoryName} is the bean
+ * name of the {@code SqlSessionFactoryBean} (see {@link SqlSessionMetrics#getFactoryName}).
+ *
+ * @see MicrometerSqlSessionMetricsRecorder
+ * @since 2.0.6
+ */
+public interface SqlSessionMetricsRecorder {
+
+  /**
+   * A session has been opened.
+   *
+   * @param factoryName
+   *          the name of the factory of the session
+   * @param executorType
+   *          the executor type of the session
+   * @param managed
+   *          true if the session is bound to a transaction or a {@code SqlSessionScope}, false if it is closed at the
+   *          end of the call
+   */
+  default void sessionOpened(String factoryName, ExecutorType executorType, boolean managed) {
+  }
+
+  /**
+   * A call reused the session bound to the current transaction or scope instead of opening one.
+   *
+   * @param factoryName
+   *          the name of the factory of the session
+   * @param executorType
+   *          the executor type of the session
+   * @param references
+   *          the number of calls that currently hold the session, including this one
+   */
+  default void sessionReused(String factoryName, ExecutorType executorType, int references) {
+  }
+
+  /**
+   * A session has been closed.
+   *
+   * @param factoryName
+   *          the name of the factory of the session
+   * @param managed
+   *          true if the session was bound to a transaction or a {@code SqlSessionScope}
+   */
+  default void sessionClosed(String factoryName, boolean managed) {
+  }
+
+  /**
+   * A {@code SqlSessionTemplate} call that runs a mapped statement has completed.
+   *
+   * @param factoryName
+   *          the name of the factory of the template
+   * @param executorType
+   *          the executor type of the template
+   * @param statementId
+   *          the id of the mapped statement
+   * @param nanos
+   *          the duration of the call, including getting and releasing the session
+   * @param failed
+   *          true if the call threw an exception
+   */
+  default void statementExecuted(String factoryName, ExecutorType executorType, String statementId, long nanos,
+      boolean failed) {
+  }
+
+  /**
+   * A {@code SpringManagedTransaction} released its connection.
+   *
+   * @param factoryName
+   *          the name of the factory of the transaction
+   * @param nanos
+   *          the time between getting the connection and releasing it
+   * @param transactional
+   *          true if the connection was bound to a Spring transaction, which may hold it longer
+   */
+  default void connectionReleased(String factoryName, long nanos, boolean transactional) {
+  }
+
+}
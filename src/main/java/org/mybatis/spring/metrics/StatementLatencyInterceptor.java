@@ -0,0 +1,210 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * MyBatis plugin that records the latency of each mapped statement in a {@link LatencyHistogram} and reports the slow
+ * ones.
+ * <p>
+ * The latency is the time of the executor call: running the statement and mapping its results, or only adding it
+ * to the batch of a {@code BATCH} executor. Recording it does not allocate once the histogram of a statement exists.
+ * Calls slower than {@code slowStatementThresholdMillis} (1 second by default, 0 disables them) are reported to a
+ * {@link SlowStatementListener} with their {@code BoundSql}; by default they are logged as warnings. With a sampling
+ * of {@code n}, about one slow call out of {@code n} is reported.
+ *
+ * <pre class="code">
+ * StatementLatencyInterceptor latencies = new StatementLatencyInterceptor();
+ * latencies.setSlowStatementThresholdMillis(500);
+ * factoryBean.setPlugins(latencies);
+ *
+ * LatencySnapshot snapshot = latencies.getSnapshot("org.mybatis.spring.sample.mapper.UserMapper.getUser");
+ * long p99 = snapshot.getValueAtPercentile(99);
+ * </pre>
+ *
+ * @since 2.0.6
+ */
+@Intercepts({
+    @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+    @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+        RowBounds.class, ResultHandler.class }),
+    @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+        RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class }),
+    @Signature(type = Executor.class, method = "queryCursor", args = { MappedStatement.class, Object.class,
+        RowBounds.class }) })
+public class StatementLatencyInterceptor implements Interceptor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StatementLatencyInterceptor.class);
+
+  private static final SlowStatementListener LOGGING_LISTENER = (ms, boundSql, nanos, failed) -> LOGGER
+      .warn(() -> "Slow statement [" + ms.getId() + "] took " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms"
+          + (failed ? " and failed" : "") + ": " + boundSql.getSql().replaceAll("\\s+", " ").trim()
+          + " with parameter " + boundSql.getParameterObject());
+
+  private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+  private volatile long slowStatementThresholdNanos = TimeUnit.SECONDS.toNanos(1);
+
+  private volatile int slowStatementSampling = 1;
+
+  private volatile SlowStatementListener slowStatementListener = LOGGING_LISTENER;
+
+  /**
+   * Sets the duration above which a call is reported as slow. Default is 1 second.
+   *
+   * @param slowStatementThresholdMillis
+   *          the threshold in milliseconds, 0 to report no call
+   */
+  public void setSlowStatementThresholdMillis(long slowStatementThresholdMillis) {
+    Assert.isTrue(slowStatementThresholdMillis >= 0, "The slow statement threshold cannot be negative");
+    this.slowStatementThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowStatementThresholdMillis);
+  }
+
+  /**
+   * Sets how many of the slow calls are reported: 1 (the default) reports all of them, {@code n} about one out of
+   * {@code n}.
+   *
+   * @param slowStatementSampling
+   *          the sampling rate of the slow calls
+   */
+  public void setSlowStatementSampling(int slowStatementSampling) {
+    Assert.isTrue(slowStatementSampling > 0, "The slow statement sampling must be positive");
+    this.slowStatementSampling = slowStatementSampling;
+  }
+
+  /**
+   * Sets the listener of the slow calls. By default they are logged as warnings.
+   *
+   * @param slowStatementListener
+   *          the listener
+   */
+  public void setSlowStatementListener(SlowStatementListener slowStatementListener) {
+    Assert.notNull(slowStatementListener, "Property 'slowStatementListener' is required");
+    this.slowStatementListener = slowStatementListener;
+  }
+
+  /**
+   * Returns a snapshot of the latencies of a statement.
+   *
+   * @param statementId
+   *          the id of the mapped statement
+   * @return the snapshot, {@code null} if the statement has not been run
+   */
+  public LatencySnapshot getSnapshot(String statementId) {
+    LatencyHistogram histogram = histograms.get(statementId);
+    return histogram == null ? null : histogram.snapshot();
+  }
+
+  /**
+   * Returns snapshots of the latencies of all the statements run.
+   *
+   * @return the snapshots by statement id
+   */
+  public Map<String, LatencySnapshot> getSnapshots() {
+    Map<String, LatencySnapshot> snapshots = new TreeMap<>();
+    histograms.forEach((id, histogram) -> snapshots.put(id, histogram.snapshot()));
+    return Collections.unmodifiableMap(snapshots);
+  }
+
+  /**
+   * Returns snapshots of the latencies of all the statements run and resets their histograms, e.g. to publish the
+   * latencies of each interval.
+   *
+   * @return the snapshots by statement id
+   */
+  public Map<String, LatencySnapshot> snapshotAndReset() {
+    Map<String, LatencySnapshot> snapshots = new TreeMap<>();
+    histograms.forEach((id, histogram) -> snapshots.put(id, histogram.snapshotAndReset()));
+    return Collections.unmodifiableMap(snapshots);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      Object result = invocation.proceed();
+      failed = false;
+      return result;
+    } finally {
+      long nanos = System.nanoTime() - start;
+      MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+      LatencyHistogram histogram = histograms.get(ms.getId());
+      if (histogram == null) {
+        histogram = histograms.computeIfAbsent(ms.getId(), id -> new LatencyHistogram());
+      }
+      histogram.record(nanos);
+      long threshold = slowStatementThresholdNanos;
+      if (threshold > 0 && nanos >= threshold && isSampled()) {
+        reportSlowStatement(invocation.getArgs(), ms, nanos, failed);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setProperties(Properties properties) {
+    String threshold = properties.getProperty("slowStatementThresholdMillis");
+    if (threshold != null) {
+      setSlowStatementThresholdMillis(Long.parseLong(threshold.trim()));
+    }
+    String sampling = properties.getProperty("slowStatementSampling");
+    if (sampling != null) {
+      setSlowStatementSampling(Integer.parseInt(sampling.trim()));
+    }
+  }
+
+  private boolean isSampled() {
+    int sampling = slowStatementSampling;
+    return sampling == 1 || ThreadLocalRandom.current().nextInt(sampling) == 0;
+  }
+
+  private void reportSlowStatement(Object[] args, MappedStatement ms, long nanos, boolean failed) {
+    try {
+      BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : ms.getBoundSql(args[1]);
+      slowStatementListener.slowStatement(ms, boundSql, nanos, failed);
+    } catch (RuntimeException e) {
+      LOGGER.warn(() -> "Could not report slow statement [" + ms.getId() + "]: " + e);
+    }
+  }
+
+}
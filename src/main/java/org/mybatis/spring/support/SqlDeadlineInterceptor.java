@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.support;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.mybatis.spring.SqlDeadline;
+import org.mybatis.spring.annotation.WithSqlDeadline;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * {@code MethodInterceptor} that runs each invocation within the {@link SqlDeadline} declared by the
+ * {@link WithSqlDeadline} annotation of the method or of its class. Invocations of methods that are not annotated run
+ * without a new deadline.
+ *
+ * @since 2.0.6
+ * @see SqlDeadlineAdvisor
+ */
+public class SqlDeadlineInterceptor implements MethodInterceptor {
+
+  private static final long NO_DEADLINE = -1L;
+
+  private final Map<MethodClassKey, Long> budgets = new ConcurrentHashMap<>();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Class<?> targetClass = invocation.getThis() == null ? invocation.getMethod().getDeclaringClass()
+        : AopUtils.getTargetClass(invocation.getThis());
+    Method method = invocation.getMethod();
+    // the budget may come from the annotation of the target class, which the method alone does not identify
+    long budget = budgets.computeIfAbsent(new MethodClassKey(method, targetClass),
+        key -> findBudget(AopUtils.getMostSpecificMethod(method, targetClass), targetClass));
+    if (budget == NO_DEADLINE) {
+      return invocation.proceed();
+    }
+    try (SqlDeadline deadline = SqlDeadline.start(budget, TimeUnit.MILLISECONDS)) {
+      return invocation.proceed();
+    }
+  }
+
+  private static long findBudget(Method method, Class<?> targetClass) {
+    WithSqlDeadline annotation = AnnotatedElementUtils.findMergedAnnotation(method, WithSqlDeadline.class);
+    if (annotation == null) {
+      annotation = AnnotatedElementUtils.findMergedAnnotation(targetClass, WithSqlDeadline.class);
+    }
+    return annotation == null ? NO_DEADLINE : annotation.millis();
+  }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.support;
+
+import org.aopalliance.aop.Advice;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.annotation.SqlSessionScoped;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AbstractPointcutAdvisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+
+/**
+ * Advisor that applies a {@link SqlSessionScopeInterceptor} to the beans and methods annotated with
+ * {@link SqlSessionScoped}. It is picked up by any advisor auto-proxy creator of the context:
+ *
+ * <pre class="code">
+ * {@code @Configuration}
+ * {@code @EnableTransactionManagement}
+ * public class MyBatisConfig {
+ *   {@code @Bean}
+ *   public SqlSessionScopeAdvisor sqlSessionScopeAdvisor(SqlSessionFactory sqlSessionFactory) {
+ *     return new SqlSessionScopeAdvisor(sqlSessionFactory);
+ *   }
+ * }
+ * </pre>
+ *
+ * @since 2.0.6
+ */
+public class SqlSessionScopeAdvisor extends AbstractPointcutAdvisor {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient Pointcut pointcut = new ComposablePointcut(
+      new AnnotationMatchingPointcut(SqlSessionScoped.class, true))
+          .union(AnnotationMatchingPointcut.forMethodAnnotation(SqlSessionScoped.class));
+
+  private final transient Advice advice;
+
+  public SqlSessionScopeAdvisor(SqlSessionFactory sqlSessionFactory) {
+    this.advice = new SqlSessionScopeInterceptor(sqlSessionFactory);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Pointcut getPointcut() {
+    return this.pointcut;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Advice getAdvice() {
+    return this.advice;
+  }
+
+}
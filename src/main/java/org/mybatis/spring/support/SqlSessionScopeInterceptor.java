@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.support;
+
+import static org.springframework.util.Assert.notNull;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionScope;
+import org.mybatis.spring.annotation.SqlSessionScoped;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * {@code MethodInterceptor} that runs each invocation inside a {@link SqlSessionScope}. The scoped session is committed
+ * when the invocation returns and rolled back when it throws.
+ *
+ * <p>
+ * The scope uses the {@link SqlSessionScoped#executorType()} of the invoked method, or else of its class, and the
+ * default executor type of the factory when neither sets one. It is resolved once per method and target class.
+ *
+ * @since 2.0.6
+ * @see SqlSessionScopeAdvisor
+ */
+public class SqlSessionScopeInterceptor implements MethodInterceptor {
+
+  private final SqlSessionFactory sqlSessionFactory;
+
+  private final Map<MethodClassKey, ExecutorType> executorTypes = new ConcurrentHashMap<>();
+
+  public SqlSessionScopeInterceptor(SqlSessionFactory sqlSessionFactory) {
+    notNull(sqlSessionFactory, "Property 'sqlSessionFactory' is required");
+    this.sqlSessionFactory = sqlSessionFactory;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    SqlSessionScope scope = SqlSessionScope.open(this.sqlSessionFactory, executorType(invocation));
+    Object result;
+    try {
+      result = invocation.proceed();
+    } catch (Throwable t) {
+      try {
+        scope.rollback();
+      } catch (RuntimeException e) {
+        t.addSuppressed(e);
+      }
+      throw t;
+    }
+    scope.close();
+    return result;
+  }
+
+  private ExecutorType executorType(MethodInvocation invocation) {
+    Method method = invocation.getMethod();
+    Object target = invocation.getThis();
+    Class<?> targetClass = target != null ? AopUtils.getTargetClass(target) : method.getDeclaringClass();
+    return this.executorTypes.computeIfAbsent(new MethodClassKey(method, targetClass),
+        key -> findExecutorType(method, targetClass));
+  }
+
+  private ExecutorType findExecutorType(Method method, Class<?> targetClass) {
+    Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+    SqlSessionScoped scoped = AnnotatedElementUtils.findMergedAnnotation(specificMethod, SqlSessionScoped.class);
+    if (scoped == null) {
+      scoped = AnnotatedElementUtils.findMergedAnnotation(targetClass, SqlSessionScoped.class);
+    }
+    if (scoped != null && scoped.executorType().length > 0) {
+      return scoped.executorType()[0];
+    }
+    return this.sqlSessionFactory.getConfiguration().getDefaultExecutorType();
+  }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.support;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.mybatis.spring.SqlDeadline;
+
+/**
+ * MyBatis plugin that cancels the statements run within a {@link SqlDeadline} when the deadline passes or when the
+ * calling thread is interrupted, so a slow statement does not keep the caller waiting until its query timeout.
+ *
+ * <pre class="code">
+ * factoryBean.setPlugins(new StatementCancelInterceptor());
+ * </pre>
+ *
+ * While such a statement runs, a shared daemon thread checks it every {@code pollIntervalMillis} (10 by default, also
+ * settable as a plugin property) and calls {@code Statement.cancel()} once needed. The {@code SQLException} of a
+ * statement cancelled because of its deadline is rethrown as a {@code SQLTimeoutException}, which Spring translates
+ * to a {@code QueryTimeoutException}. Statements run without a deadline are not watched.
+ *
+ * @since 2.0.6
+ */
+@Intercepts({
+    @Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }),
+    @Signature(type = StatementHandler.class, method = "queryCursor", args = { Statement.class }),
+    @Signature(type = StatementHandler.class, method = "update", args = { Statement.class }),
+    @Signature(type = StatementHandler.class, method = "batch", args = { Statement.class }) })
+public class StatementCancelInterceptor implements Interceptor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StatementCancelInterceptor.class);
+
+  private volatile long pollIntervalMillis = 10;
+
+  /**
+   * Sets how often a running statement is checked.
+   *
+   * @param pollIntervalMillis
+   *          the interval in milliseconds
+   */
+  public void setPollIntervalMillis(long pollIntervalMillis) {
+    if (pollIntervalMillis <= 0) {
+      throw new IllegalArgumentException("The poll interval must be positive");
+    }
+    this.pollIntervalMillis = pollIntervalMillis;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    SqlDeadline deadline = SqlDeadline.current();
+    if (deadline == null) {
+      return invocation.proceed();
+    }
+    if (deadline.isExpired()) {
+      throw new SQLTimeoutException("The SQL deadline has passed before running the statement");
+    }
+    Canceller canceller = new Canceller((Statement) invocation.getArgs()[0], deadline);
+    long interval = TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis);
+    canceller.future = Scheduler.INSTANCE.scheduleAtFixedRate(canceller,
+        Math.min(interval, Math.max(deadline.getRemainingNanos(), 0)), interval, TimeUnit.NANOSECONDS);
+    try {
+      return invocation.proceed();
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getTargetException();
+      if (canceller.reason != null && cause instanceof SQLException) {
+        String state = ((SQLException) cause).getSQLState();
+        throw canceller.reason == Canceller.DEADLINE
+            ? new SQLTimeoutException("Statement cancelled because the SQL deadline has passed", state, cause)
+            : new SQLException("Statement cancelled because the calling thread was interrupted", state, cause);
+      }
+      throw e;
+    } finally {
+      canceller.future.cancel(false);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setProperties(Properties properties) {
+    String interval = properties.getProperty("pollIntervalMillis");
+    if (interval != null) {
+      setPollIntervalMillis(Long.parseLong(interval.trim()));
+    }
+  }
+
+  /**
+   * Checks a running statement, cancels it once.
+   */
+  private static final class Canceller implements Runnable {
+
+    private static final String DEADLINE = "deadline";
+
+    private static final String INTERRUPT = "interrupt";
+
+    private final Statement statement;
+
+    private final SqlDeadline deadline;
+
+    private final Thread caller = Thread.currentThread();
+
+    private volatile ScheduledFuture<?> future;
+
+    private volatile String reason;
+
+    Canceller(Statement statement, SqlDeadline deadline) {
+      this.statement = statement;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+      if (reason != null) {
+        return;
+      }
+      String cause = deadline.isExpired() ? DEADLINE : caller.isInterrupted() ? INTERRUPT : null;
+      if (cause == null) {
+        return;
+      }
+      reason = cause;
+      ScheduledFuture<?> scheduled = future;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+      try {
+        LOGGER.debug(() -> "Cancelling statement [" + statement + "] because of the " + cause);
+        statement.cancel();
+      } catch (SQLException | RuntimeException e) {
+        LOGGER.debug(() -> "Could not cancel statement [" + statement + "]: " + e);
+      }
+    }
+  }
+
+  /**
+   * The daemon thread shared by the interceptors.
+   */
+  private static final class Scheduler {
+
+    private static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+    private static ScheduledThreadPoolExecutor create() {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "mybatis-statement-cancel");
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.setRemoveOnCancelPolicy(true);
+      return executor;
+    }
+  }
+
+}
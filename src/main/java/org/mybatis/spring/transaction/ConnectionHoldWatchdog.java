@@ -0,0 +1,243 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Reports the connections held by a {@code SpringManagedTransaction} for longer than a threshold.
+ * <p>
+ * Once started, every {@code SpringManagedTransaction} records when it got its connection and on which thread; a
+ * sample of them also records the stack trace of the code that got it. One daemon thread scans the held connections
+ * and logs a warning, once per connection, when one is held longer than the threshold. Recording an acquisition only
+ * adds an entry to a {@code ConcurrentHashMap}, the scan runs on its own thread.
+ *
+ * <pre class="code">
+ * &#64;Bean
+ * public ConnectionHoldWatchdog connectionHoldWatchdog() {
+ *   ConnectionHoldWatchdog watchdog = new ConnectionHoldWatchdog();
+ *   watchdog.setThresholdMillis(10_000);
+ *   watchdog.setStackTraceSampling(10);
+ *   return watchdog;
+ * }
+ * </pre>
+ *
+ * Only one watchdog is active at a time: starting a watchdog replaces the previous one.
+ *
+ * @since 2.0.6
+ */
+public class ConnectionHoldWatchdog implements InitializingBean, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionHoldWatchdog.class);
+
+  private static volatile ConnectionHoldWatchdog active;
+
+  private final Map<Acquisition, Boolean> acquisitions = new ConcurrentHashMap<>();
+
+  private long thresholdMillis = 30_000;
+
+  private long scanIntervalMillis = 5_000;
+
+  /**
+   * The default sampling of the stack traces: one connection out of 100.
+   */
+  public static final int DEFAULT_STACK_TRACE_SAMPLING = 100;
+
+  private int stackTraceSampling = DEFAULT_STACK_TRACE_SAMPLING;
+
+  private ScheduledExecutorService scanner;
+
+  /**
+   * Sets the time a connection can be held before it is reported. Default is 30 seconds.
+   *
+   * @param thresholdMillis
+   *          the threshold in milliseconds
+   */
+  public void setThresholdMillis(long thresholdMillis) {
+    this.thresholdMillis = thresholdMillis;
+  }
+
+  /**
+   * Sets the time between two scans of the held connections. Default is 5 seconds.
+   *
+   * @param scanIntervalMillis
+   *          the interval in milliseconds
+   */
+  public void setScanIntervalMillis(long scanIntervalMillis) {
+    this.scanIntervalMillis = scanIntervalMillis;
+  }
+
+  /**
+   * Sets how often the stack trace of the code that gets a connection is recorded: {@code n} records it for about one
+   * connection out of {@code n} ({@value #DEFAULT_STACK_TRACE_SAMPLING} by default), 1 for every connection and 0
+   * never. Recording a stack trace walks the stack of the thread that gets the connection.
+   *
+   * @param stackTraceSampling
+   *          the sampling rate of the stack traces
+   */
+  public void setStackTraceSampling(int stackTraceSampling) {
+    this.stackTraceSampling = stackTraceSampling;
+  }
+
+  /**
+   * Starts the scans and makes this watchdog the active one. Starting a started watchdog restarts its scans.
+   */
+  @Override
+  public synchronized void afterPropertiesSet() {
+    if (thresholdMillis <= 0 || scanIntervalMillis <= 0) {
+      throw new IllegalArgumentException("The threshold and the scan interval must be positive");
+    }
+    if (scanner != null) {
+      scanner.shutdownNow();
+    }
+    scanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "mybatis-connection-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scanner.scheduleWithFixedDelay(this::scan, scanIntervalMillis, scanIntervalMillis, TimeUnit.MILLISECONDS);
+    active = this;
+  }
+
+  /**
+   * Stops the scans. The connections got afterwards are no longer tracked.
+   */
+  @Override
+  public synchronized void destroy() {
+    if (active == this) {
+      active = null;
+    }
+    if (scanner != null) {
+      scanner.shutdownNow();
+      scanner = null;
+    }
+    acquisitions.clear();
+  }
+
+  /**
+   * Returns the number of connections currently tracked.
+   *
+   * @return the number of held connections
+   */
+  public int getHeldConnections() {
+    return acquisitions.size();
+  }
+
+  /**
+   * Returns the active watchdog.
+   *
+   * @return the active watchdog, {@code null} if none is started
+   */
+  static ConnectionHoldWatchdog active() {
+    return active;
+  }
+
+  /**
+   * Records that the current thread got a connection.
+   *
+   * @return the acquisition, to be released when the connection is released
+   */
+  Acquisition acquired(Connection connection, boolean transactional) {
+    int sampling = stackTraceSampling;
+    Throwable stackTrace = sampling > 0 && (sampling == 1 || ThreadLocalRandom.current().nextInt(sampling) == 0)
+        ? new Throwable("Connection acquired here") : null;
+    Acquisition acquisition = new Acquisition(this, connection, transactional, stackTrace);
+    acquisitions.put(acquisition, Boolean.TRUE);
+    return acquisition;
+  }
+
+  /**
+   * Reports the connections held longer than the threshold that have not been reported yet.
+   *
+   * @return the number of reported connections
+   */
+  int scan() {
+    long now = System.nanoTime();
+    long threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    List<Acquisition> overdue = new ArrayList<>();
+    for (Acquisition acquisition : acquisitions.keySet()) {
+      if (!acquisition.reported && now - acquisition.acquiredNanos > threshold) {
+        acquisition.reported = true;
+        overdue.add(acquisition);
+      }
+    }
+    overdue.forEach(acquisition -> LOGGER.warn(() -> acquisition.describe(now)));
+    return overdue.size();
+  }
+
+  /**
+   * A connection held by a {@code SpringManagedTransaction}.
+   */
+  static final class Acquisition {
+
+    private final ConnectionHoldWatchdog watchdog;
+
+    // only turned into a string when it is reported
+    private final Connection connection;
+
+    private final boolean transactional;
+
+    private final Thread owner = Thread.currentThread();
+
+    private final long acquiredNanos = System.nanoTime();
+
+    private final Throwable stackTrace;
+
+    // only read and written by the scanner thread
+    private boolean reported;
+
+    Acquisition(ConnectionHoldWatchdog watchdog, Connection connection, boolean transactional, Throwable stackTrace) {
+      this.watchdog = watchdog;
+      this.connection = connection;
+      this.transactional = transactional;
+      this.stackTrace = stackTrace;
+    }
+
+    void release() {
+      watchdog.acquisitions.remove(this);
+    }
+
+    private String describe(long now) {
+      StringBuilder message = new StringBuilder().append("JDBC Connection [").append(connection)
+          .append("] has been held for ").append(TimeUnit.NANOSECONDS.toMillis(now - acquiredNanos))
+          .append(" ms by thread [").append(owner.getName()).append("] (").append(owner.getState())
+          .append(transactional ? ", transactional)" : ")");
+      if (stackTrace == null) {
+        message.append(", the stack trace of its acquisition was not sampled");
+      } else {
+        message.append(", acquired at:");
+        for (StackTraceElement element : stackTrace.getStackTrace()) {
+          message.append(System.lineSeparator()).append("\tat ").append(element);
+        }
+      }
+      return message.toString();
+    }
+  }
+
+}
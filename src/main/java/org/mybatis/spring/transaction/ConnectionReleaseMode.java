@@ -0,0 +1,39 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+/**
+ * When a {@code SpringManagedTransaction} gives its connection back to the {@code DataSource}.
+ *
+ * @see SpringManagedTransactionFactory#setConnectionReleaseMode(ConnectionReleaseMode)
+ * @since 2.0.6
+ */
+public enum ConnectionReleaseMode {
+
+  /**
+   * The connection is released when the session is closed. This is the default.
+   */
+  ON_CLOSE,
+
+  /**
+   * The connection of a session that is not bound to a Spring transaction and runs in auto-commit mode is released as
+   * soon as it has no open statement, and got again for the next statement. A session that keeps statements open, with
+   * the {@code REUSE} or {@code BATCH} executor or a cursor, keeps its connection until it is closed. Transactional
+   * connections and connections not in auto-commit mode are always released on close.
+   */
+  AFTER_STATEMENT
+
+}
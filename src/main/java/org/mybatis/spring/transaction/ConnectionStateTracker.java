@@ -0,0 +1,175 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+/**
+ * Remembers the auto-commit mode of the physical connections, so it is read from the driver once per connection
+ * instead of once per session.
+ * <p>
+ * The mode of a connection only changes while it is bound to a Spring transaction, whose transaction manager restores
+ * it when the transaction completes, or when it is changed through a connection handed out by
+ * {@code SpringManagedTransaction}, which reports it with {@link #autoCommitChanged}. A change made directly on the
+ * connection of the driver or of the pool is not seen: such applications must not enable the tracking.
+ * <p>
+ * The connections are compared by identity and held weakly: an entry lives as long as its physical connection and is
+ * purged once the pool has discarded it. A connection whose physical connection cannot be found is not tracked, its
+ * mode is read from the driver every time.
+ *
+ * @see SpringManagedTransactionFactory#setConnectionStateTracking(boolean)
+ */
+final class ConnectionStateTracker {
+
+  private static final ConcurrentMap<ConnectionKey, Boolean> AUTO_COMMIT = new ConcurrentHashMap<>();
+
+  private static final ReferenceQueue<Connection> COLLECTED = new ReferenceQueue<>();
+
+  private ConnectionStateTracker() {
+    // NOP
+  }
+
+  /**
+   * Returns the auto-commit mode of a connection, read from the driver the first time the physical connection is seen.
+   */
+  static boolean getAutoCommit(Connection connection) throws SQLException {
+    Connection physical = PreparedStatementCaches.physicalConnection(connection);
+    if (physical == null) {
+      return connection.getAutoCommit();
+    }
+    Boolean autoCommit = AUTO_COMMIT.get(new ConnectionKey(physical, null));
+    if (autoCommit == null) {
+      autoCommit = connection.getAutoCommit();
+      purgeCollected();
+      AUTO_COMMIT.put(new ConnectionKey(physical, COLLECTED), autoCommit);
+    }
+    return autoCommit;
+  }
+
+  /**
+   * Records a change of the auto-commit mode made through a connection handed out to MyBatis.
+   */
+  static void autoCommitChanged(Connection connection, boolean autoCommit) {
+    if (AUTO_COMMIT.isEmpty()) {
+      return;
+    }
+    Connection physical = PreparedStatementCaches.physicalConnection(connection);
+    if (physical != null) {
+      AUTO_COMMIT.replace(new ConnectionKey(physical, null), autoCommit);
+    }
+  }
+
+  /**
+   * Wraps a connection that no other proxy of {@code SpringManagedTransaction} wraps, to see the changes of its
+   * auto-commit mode.
+   *
+   * @param target
+   *          the connection given to MyBatis
+   * @return the connection to give to MyBatis instead
+   */
+  static Connection track(Connection target) {
+    return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+        new Class<?>[] { ConnectionProxy.class }, new TrackingHandler(target));
+  }
+
+  private static void purgeCollected() {
+    Reference<? extends Connection> collected;
+    while ((collected = COLLECTED.poll()) != null) {
+      AUTO_COMMIT.remove(collected);
+    }
+  }
+
+  /**
+   * Weak reference to a connection, equal to the references to the same connection.
+   */
+  private static final class ConnectionKey extends WeakReference<Connection> {
+
+    private final int hash;
+
+    ConnectionKey(Connection connection, ReferenceQueue<Connection> queue) {
+      super(connection, queue);
+      this.hash = System.identityHashCode(connection);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof ConnectionKey)) {
+        return false;
+      }
+      Connection connection = get();
+      return connection != null && connection == ((ConnectionKey) obj).get();
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+  }
+
+  /**
+   * Reports the changes of the auto-commit mode made through the connection.
+   */
+  private static final class TrackingHandler implements InvocationHandler {
+
+    private final Connection target;
+
+    TrackingHandler(Connection target) {
+      this.target = target;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return target.toString();
+        case "getTargetConnection":
+          return target;
+        default:
+          break;
+      }
+      Object result;
+      try {
+        result = method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getTargetException();
+      }
+      if (method.getName().equals("setAutoCommit")) {
+        autoCommitChanged(target, (Boolean) args[0]);
+      }
+      return result;
+    }
+  }
+
+}
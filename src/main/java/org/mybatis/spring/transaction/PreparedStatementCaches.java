@@ -0,0 +1,504 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mybatis.logging.Logger;
+import org.mybatis.logging.LoggerFactory;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Keeps the {@code PreparedStatement}s prepared by MyBatis open on their physical connection, so a later session that
+ * gets the same pooled connection does not prepare the same SQL again.
+ * <p>
+ * Each physical connection has its own LRU cache keyed by the SQL and the result set options. The physical connection
+ * is found by peeling Spring {@code ConnectionProxy}s and then calling {@code unwrap(Connection.class)}, or
+ * {@code getInnermostDelegate()} on Commons DBCP connections, whose {@code unwrap} returns the connection itself. A
+ * connection that is not a wrapper is its own physical connection. When {@code unwrap} returns the connection itself
+ * and it cannot be peeled otherwise, its statements are only cached until the transaction releases it.
+ * <p>
+ * Statements are prepared on the connection MyBatis was given, so the wrappers of the pool or of a proxy (statement
+ * tracking, P6Spy, datasource-proxy...) see them. The cache therefore only works with pools that leave the statements
+ * open when a connection is given back, like MyBatis {@code PooledDataSource} and Tomcat JDBC without the
+ * {@code StatementFinalizer} interceptor. HikariCP, Commons DBCP and c3p0 close the statements of a connection given
+ * back to them: the first cached statement found closed while its connection is open disables the cache, with a
+ * warning, and the connections are then given to MyBatis unwrapped.
+ * <p>
+ * A statement is removed from the cache while it is in use and closing it returns it to the cache, unless it failed
+ * with an error that leaves the statement or its connection unusable. The caches of connections that have been closed,
+ * i.e. that left the pool, are dropped when a connection is released, at most once a second, and when a new connection
+ * is seen.
+ */
+final class PreparedStatementCaches {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PreparedStatementCaches.class);
+
+  private final int maxSize;
+
+  private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Map<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+
+  private final AtomicLong nextSweepNanos = new AtomicLong(System.nanoTime());
+
+  private volatile boolean poolClosesStatements;
+
+  PreparedStatementCaches(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns a connection that serves {@code prepareStatement} calls from the cache of its physical connection.
+   *
+   * @return the connection to give to MyBatis, {@code null} once the cache is disabled because the pool closes the
+   *         statements
+   */
+  Connection wrap(Connection connection) throws SQLException {
+    if (poolClosesStatements) {
+      return null;
+    }
+    Connection physical = physicalConnection(connection);
+    StatementCache cache;
+    if (physical == null) {
+      cache = new StatementCache(connection, maxSize);
+    } else {
+      cache = caches.get(physical);
+      if (cache == null) {
+        dropClosedConnections();
+        cache = caches.computeIfAbsent(physical, key -> new StatementCache(key, maxSize));
+      }
+    }
+    return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+        new Class<?>[] { ConnectionProxy.class },
+        new CachingConnectionHandler(this, connection, cache, physical == null));
+  }
+
+  /**
+   * Called when the transaction releases a connection returned by {@link #wrap}: drops its statements if they are only
+   * cached for this checkout.
+   */
+  void released(Connection wrapped) {
+    CachingConnectionHandler handler = (CachingConnectionHandler) Proxy.getInvocationHandler(wrapped);
+    if (handler.perCheckout) {
+      handler.cache.clear();
+    }
+    long next = nextSweepNanos.get();
+    if (System.nanoTime() - next >= 0 && nextSweepNanos.compareAndSet(next, System.nanoTime() + SWEEP_INTERVAL_NANOS)) {
+      dropClosedConnections();
+    }
+  }
+
+  int size(Connection connection) throws SQLException {
+    Connection physical = physicalConnection(connection);
+    StatementCache cache = physical == null ? null : caches.get(physical);
+    return cache == null ? 0 : cache.size();
+  }
+
+  /**
+   * Returns the physical connection of a connection given by the {@code DataSource}.
+   *
+   * @return the physical connection, the connection itself if it is not a wrapper, {@code null} if it is a wrapper that
+   *         does not expose another connection
+   */
+  static Connection physicalConnection(Connection connection) {
+    Connection current = connection;
+    while (current instanceof ConnectionProxy) {
+      current = ((ConnectionProxy) current).getTargetConnection();
+    }
+    Connection target = current;
+    try {
+      if (!target.isWrapperFor(Connection.class)) {
+        return target;
+      }
+      Connection unwrapped = target.unwrap(Connection.class);
+      if (unwrapped != null && unwrapped != target) {
+        return unwrapped;
+      }
+      Connection innermost = innermostDelegate(target);
+      if (innermost != null && innermost != target) {
+        return innermost;
+      }
+    } catch (SQLException | RuntimeException e) {
+      LOGGER.debug(() -> "Cannot unwrap JDBC Connection [" + target + "]: " + e);
+    }
+    LOGGER.debug(() -> "JDBC Connection [" + target + "] does not expose its physical connection, caching its"
+        + " statements until it is released");
+    return null;
+  }
+
+  /**
+   * Calls {@code getInnermostDelegate()}, the way Commons DBCP exposes the driver connection.
+   */
+  private static Connection innermostDelegate(Connection connection) {
+    Method method = ReflectionUtils.findMethod(connection.getClass(), "getInnermostDelegate");
+    if (method == null || !Connection.class.isAssignableFrom(method.getReturnType())) {
+      return null;
+    }
+    return (Connection) ReflectionUtils.invokeMethod(method, connection);
+  }
+
+  /**
+   * Returns if an exception leaves a statement or its connection unusable, so the statement must not be cached: a
+   * connection error or a statement that the database no longer knows. Other errors, like a constraint violation, do
+   * not affect the statement.
+   */
+  static boolean invalidatesStatement(SQLException e) {
+    if (e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException
+        || e instanceof SQLTransientConnectionException) {
+      return true;
+    }
+    String sqlState = e.getSQLState();
+    // 08: connection exception, 26: invalid SQL statement name, 0A: feature not supported (e.g. a cached plan that
+    // must not change its result type), 24: invalid cursor state
+    return sqlState != null && (sqlState.startsWith("08") || sqlState.startsWith("26") || sqlState.startsWith("0A")
+        || sqlState.startsWith("24"));
+  }
+
+  /**
+   * Called when a cached statement is found closed: either its connection left the pool, or the pool closes the
+   * statements of the connections given back to it and the cache cannot work with it.
+   */
+  private void cachedStatementClosed(StatementCache cache) {
+    if (cache.isConnectionClosed()) {
+      caches.remove(cache.connection, cache);
+      cache.clear();
+      return;
+    }
+    if (!poolClosesStatements) {
+      poolClosesStatements = true;
+      LOGGER.warn(() -> "The connection pool closes the statements of the connections given back to it, the statement"
+          + " cache of SpringManagedTransactionFactory is disabled: use the statement cache of the pool or driver");
+    }
+    cache.clear();
+    caches.values().forEach(StatementCache::clear);
+    caches.clear();
+  }
+
+  private void dropClosedConnections() {
+    for (Iterator<StatementCache> it = caches.values().iterator(); it.hasNext();) {
+      StatementCache cache = it.next();
+      if (cache.isConnectionClosed()) {
+        it.remove();
+        cache.clear();
+      }
+    }
+  }
+
+  /**
+   * The LRU cache of one physical connection. Only idle statements are kept here.
+   */
+  private static final class StatementCache {
+
+    private final Connection connection;
+
+    private final int maxSize;
+
+    private final LinkedHashMap<StatementKey, CachedStatement> statements;
+
+    StatementCache(Connection connection, int maxSize) {
+      this.connection = connection;
+      this.maxSize = maxSize;
+      this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    synchronized CachedStatement take(StatementKey key) {
+      return statements.remove(key);
+    }
+
+    void offer(StatementKey key, CachedStatement statement) {
+      List<CachedStatement> evicted = new ArrayList<>(1);
+      synchronized (this) {
+        if (statements.containsKey(key)) {
+          evicted.add(statement);
+        } else {
+          statements.put(key, statement);
+          for (Iterator<CachedStatement> it = statements.values().iterator(); statements.size() > maxSize;) {
+            evicted.add(it.next());
+            it.remove();
+          }
+        }
+      }
+      evicted.forEach(CachedStatement::close);
+    }
+
+    synchronized int size() {
+      return statements.size();
+    }
+
+    boolean isConnectionClosed() {
+      try {
+        return connection.isClosed();
+      } catch (SQLException e) {
+        return true;
+      }
+    }
+
+    void clear() {
+      List<CachedStatement> evicted;
+      synchronized (this) {
+        evicted = new ArrayList<>(statements.values());
+        statements.clear();
+      }
+      evicted.forEach(CachedStatement::close);
+    }
+  }
+
+  /**
+   * The SQL and the options of a {@code prepareStatement} call.
+   */
+  private static final class StatementKey {
+
+    private final String sql;
+
+    private final Object[] options;
+
+    private final int hashCode;
+
+    StatementKey(Object[] args) {
+      this.sql = (String) args[0];
+      this.options = Arrays.copyOfRange(args, 1, args.length);
+      this.hashCode = 31 * sql.hashCode() + Arrays.deepHashCode(options);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof StatementKey)) {
+        return false;
+      }
+      StatementKey that = (StatementKey) other;
+      return sql.equals(that.sql) && Arrays.deepEquals(options, that.options);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * An idle statement with the settings it had when it was prepared.
+   */
+  private static final class CachedStatement {
+
+    private final PreparedStatement statement;
+
+    private final int queryTimeout;
+
+    private final int fetchSize;
+
+    private final int maxRows;
+
+    CachedStatement(PreparedStatement statement) throws SQLException {
+      this.statement = statement;
+      this.queryTimeout = statement.getQueryTimeout();
+      this.fetchSize = statement.getFetchSize();
+      this.maxRows = statement.getMaxRows();
+    }
+
+    boolean reset(boolean settingsChanged, boolean batched) {
+      try {
+        statement.clearParameters();
+        if (batched) {
+          statement.clearBatch();
+        }
+        statement.clearWarnings();
+        if (settingsChanged) {
+          statement.setQueryTimeout(queryTimeout);
+          statement.setFetchSize(fetchSize);
+          statement.setMaxRows(maxRows);
+        }
+        return true;
+      } catch (SQLException | RuntimeException e) {
+        LOGGER.debug(() -> "Cannot reset PreparedStatement [" + statement + "], it will be closed: " + e);
+        return false;
+      }
+    }
+
+    void close() {
+      try {
+        statement.close();
+      } catch (SQLException | RuntimeException e) {
+        LOGGER.debug(() -> "Could not close cached PreparedStatement [" + statement + "]: " + e);
+      }
+    }
+  }
+
+  /**
+   * Serves {@code prepareStatement} calls from the cache, everything else goes to the connection MyBatis got from the
+   * {@code DataSource}.
+   */
+  private static final class CachingConnectionHandler implements InvocationHandler {
+
+    private final PreparedStatementCaches caches;
+
+    private final Connection target;
+
+    private final StatementCache cache;
+
+    private final boolean perCheckout;
+
+    CachingConnectionHandler(PreparedStatementCaches caches, Connection target, StatementCache cache,
+        boolean perCheckout) {
+      this.caches = caches;
+      this.target = target;
+      this.cache = cache;
+      this.perCheckout = perCheckout;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "getTargetConnection":
+          return target;
+        case "prepareStatement":
+          return prepareStatement((Connection) proxy, method, args);
+        case "setAutoCommit":
+          invokeTarget(target, method, args);
+          ConnectionStateTracker.autoCommitChanged(target, (Boolean) args[0]);
+          return null;
+        default:
+          return invokeTarget(target, method, args);
+      }
+    }
+
+    private PreparedStatement prepareStatement(Connection proxy, Method method, Object[] args) throws Throwable {
+      StatementKey key = new StatementKey(args);
+      CachedStatement cached = cache.take(key);
+      if (cached != null && cached.statement.isClosed()) {
+        caches.cachedStatementClosed(cache);
+        cached = null;
+      }
+      if (cached == null) {
+        cached = new CachedStatement((PreparedStatement) invokeTarget(target, method, args));
+      }
+      return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+          new Class<?>[] { PreparedStatement.class }, new CachedStatementHandler(proxy, cache, key, cached));
+    }
+  }
+
+  /**
+   * Returns the statement to the cache when it is closed, unless it failed with an error that invalidates it.
+   */
+  private static final class CachedStatementHandler implements InvocationHandler {
+
+    private final Connection connection;
+
+    private final StatementCache cache;
+
+    private final StatementKey key;
+
+    private final CachedStatement cached;
+
+    private boolean closed;
+
+    private boolean settingsChanged;
+
+    private boolean batched;
+
+    private boolean failed;
+
+    CachedStatementHandler(Connection connection, StatementCache cache, StatementKey key, CachedStatement cached) {
+      this.connection = connection;
+      this.cache = cache;
+      this.key = key;
+      this.cached = cached;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      switch (name) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "close":
+          close();
+          return null;
+        case "isClosed":
+          return closed || cached.statement.isClosed();
+        case "getConnection":
+          return connection;
+        default:
+          break;
+      }
+      if (closed) {
+        throw new SQLException("PreparedStatement has been closed");
+      }
+      if (name.equals("setQueryTimeout") || name.equals("setFetchSize") || name.equals("setMaxRows")) {
+        settingsChanged = true;
+      } else if (name.equals("addBatch")) {
+        batched = true;
+      }
+      try {
+        return invokeTarget(cached.statement, method, args);
+      } catch (SQLException e) {
+        if (invalidatesStatement(e)) {
+          failed = true;
+        }
+        throw e;
+      }
+    }
+
+    private void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (!failed && cached.reset(settingsChanged, batched)) {
+        cache.offer(key, cached);
+      } else {
+        cached.close();
+      }
+    }
+  }
+
+  private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+}
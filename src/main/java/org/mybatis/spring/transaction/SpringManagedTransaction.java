@@ -25,8 +25,11 @@ import javax.sql.DataSource;
 import org.apache.ibatis.transaction.Transaction;
 import org.mybatis.logging.Logger;
 import org.mybatis.logging.LoggerFactory;
+import org.mybatis.spring.SqlDeadline;
+import org.mybatis.spring.metrics.SqlSessionMetrics;
 import org.springframework.jdbc.datasource.ConnectionHolder;
 import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
@@ -37,6 +40,11 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * transaction manager will do the job.
  * <p>
  * If it is not it will behave like {@code JdbcTransaction}.
+ * <p>
+ * When its factory has a statement cache the connection given to MyBatis keeps the prepared statements open on the
+ * physical connection after they are closed, see {@link SpringManagedTransactionFactory#setStatementCacheSize(int)}.
+ * With {@link ConnectionReleaseMode#AFTER_STATEMENT} a non transactional auto-commit connection is released after each
+ * statement and got again on demand.
  *
  * @author Hunter Presnall
  * @author Eduardo Macarron
@@ -47,15 +55,47 @@ public class SpringManagedTransaction implements Transaction {
 
   private final DataSource dataSource;
 
+  private final PreparedStatementCaches statementCaches;
+
+  private final String metricsName;
+
+  private final ConnectionReleaseMode releaseMode;
+
+  private final boolean connectionStateTracking;
+
   private Connection connection;
 
+  private Connection exposedConnection;
+
+  private Connection cachingConnection;
+
   private boolean isConnectionTransactional;
 
   private boolean autoCommit;
 
+  private long acquiredNanos;
+
+  private ConnectionHoldWatchdog.Acquisition acquisition;
+
   public SpringManagedTransaction(DataSource dataSource) {
+    this(dataSource, null);
+  }
+
+  SpringManagedTransaction(DataSource dataSource, SpringManagedTransactionFactory factory) {
     notNull(dataSource, "No DataSource specified");
     this.dataSource = dataSource;
+    if (factory == null) {
+      this.statementCaches = null;
+      this.metricsName = SqlSessionMetrics.DEFAULT_FACTORY_NAME;
+      this.releaseMode = ConnectionReleaseMode.ON_CLOSE;
+      this.connectionStateTracking = false;
+    } else {
+      this.statementCaches = factory.getStatementCaches();
+      this.metricsName = factory.getMetricsName() == null ? SqlSessionMetrics.DEFAULT_FACTORY_NAME
+          : factory.getMetricsName();
+      this.releaseMode = factory.getConnectionReleaseMode();
+      this.connectionStateTracking = factory.isConnectionStateTracking();
+    }
   }
 
   /**
@@ -66,7 +106,7 @@ public class SpringManagedTransaction implements Transaction {
     if (this.connection == null) {
       openConnection();
     }
-    return this.connection;
+    return this.exposedConnection;
   }
 
   /**
@@ -74,12 +114,35 @@ public class SpringManagedTransaction implements Transaction {
    * connection or let it to Spring.
    * <p>
    * It also reads autocommit setting because when using Spring Transaction MyBatis thinks that autocommit is always
-   * false and will always call commit/rollback so we need to no-op that calls.
+   * false and will always call commit/rollback so we need to no-op that calls. The setting is not read for a connection
+   * managed by Spring, whose commit/rollback calls are no-op anyway.
    */
   private void openConnection() throws SQLException {
     this.connection = DataSourceUtils.getConnection(this.dataSource);
-    this.autoCommit = this.connection.getAutoCommit();
+    this.acquiredNanos = SqlSessionMetrics.isEnabled() ? System.nanoTime() : 0L;
     this.isConnectionTransactional = DataSourceUtils.isConnectionTransactional(this.connection, this.dataSource);
+    if (this.isConnectionTransactional) {
+      this.autoCommit = false;
+      if (TransactionSynchronizationManager.isSynchronizationActive()) {
+        TransactionSynchronizationManager.registerSynchronization(new ReleaseBeforeCompletion(this.connection));
+      }
+    } else {
+      this.autoCommit = this.connectionStateTracking ? ConnectionStateTracker.getAutoCommit(this.connection)
+          : this.connection.getAutoCommit();
+    }
+    ConnectionHoldWatchdog watchdog = ConnectionHoldWatchdog.active();
+    if (watchdog != null) {
+      this.acquisition = watchdog.acquired(this.connection, this.isConnectionTransactional);
+    }
+    this.cachingConnection = this.statementCaches == null ? null : this.statementCaches.wrap(this.connection);
+    this.exposedConnection = this.cachingConnection == null ? this.connection : this.cachingConnection;
+    if (this.releaseMode == ConnectionReleaseMode.AFTER_STATEMENT && !this.isConnectionTransactional
+        && this.autoCommit) {
+      this.exposedConnection = StatementReleasingConnection.wrap(this.exposedConnection, this::releaseAfterStatement);
+    } else if (this.connectionStateTracking && this.exposedConnection == this.connection) {
+      // the changes of the auto-commit mode must be seen even without the other proxies
+      this.exposedConnection = ConnectionStateTracker.track(this.connection);
+    }
 
     LOGGER.debug(() -> "JDBC Connection [" + this.connection + "] will"
         + (this.isConnectionTransactional ? " " : " not ") + "be managed by Spring");
@@ -112,19 +175,81 @@ public class SpringManagedTransaction implements Transaction {
    */
   @Override
   public void close() throws SQLException {
+    releaseConnection();
+    this.connection = null;
+    this.exposedConnection = null;
+  }
+
+  private void releaseAfterStatement() {
+    LOGGER.debug(() -> "Releasing JDBC Connection [" + this.connection + "] after its last statement");
+    releaseConnection();
+    this.connection = null;
+    this.exposedConnection = null;
+  }
+
+  private void releaseConnection() {
+    if (this.cachingConnection != null) {
+      this.statementCaches.released(this.cachingConnection);
+      this.cachingConnection = null;
+    }
     DataSourceUtils.releaseConnection(this.connection, this.dataSource);
+    if (this.acquisition != null) {
+      this.acquisition.release();
+      this.acquisition = null;
+    }
+    if (this.acquiredNanos != 0L && SqlSessionMetrics.isEnabled()) {
+      SqlSessionMetrics.getRecorder().connectionReleased(this.metricsName, System.nanoTime() - this.acquiredNanos,
+          this.isConnectionTransactional);
+    }
+    this.acquiredNanos = 0L;
   }
 
   /**
    * {@inheritDoc}
+   * <p>
+   * The time left before the current {@link SqlDeadline} lowers the timeout of the Spring transaction, if any.
    */
   @Override
   public Integer getTimeout() throws SQLException {
     ConnectionHolder holder = (ConnectionHolder) TransactionSynchronizationManager.getResource(dataSource);
-    if (holder != null && holder.hasTimeout()) {
-      return holder.getTimeToLiveInSeconds();
+    Integer timeout = holder != null && holder.hasTimeout() ? holder.getTimeToLiveInSeconds() : null;
+    SqlDeadline deadline = SqlDeadline.current();
+    if (deadline != null) {
+      int remaining = deadline.getRemainingSeconds();
+      timeout = timeout == null ? remaining : Math.min(timeout, remaining);
+    }
+    return timeout;
+  }
+
+  /**
+   * Releases a connection bound to a transaction before the transaction completes. Under JTA, afterCompletion may run
+   * on another thread, where releasing it would close it behind the back of Spring (issue #18); a session is only
+   * closed then to publish or discard its second level cache entries.
+   */
+  private final class ReleaseBeforeCompletion extends TransactionSynchronizationAdapter {
+
+    private final Connection released;
+
+    ReleaseBeforeCompletion(Connection released) {
+      this.released = released;
+    }
+
+    @Override
+    public int getOrder() {
+      // after the SqlSession synchronizations, registered before their connection is opened, and before Spring
+      // releases the connection
+      return DataSourceUtils.CONNECTION_SYNCHRONIZATION_ORDER - 1;
+    }
+
+    @Override
+    public void beforeCompletion() {
+      if (connection == released) {
+        LOGGER.debug(() -> "Releasing JDBC Connection [" + released + "] before the transaction completes");
+        releaseConnection();
+        connection = null;
+        exposedConnection = null;
+      }
     }
-    return null;
   }
 
 }
@@ -15,7 +15,10 @@
  */
 package org.mybatis.spring.transaction;
 
+import static org.springframework.util.Assert.notNull;
+
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Properties;
 
 import javax.sql.DataSource;
@@ -31,12 +34,110 @@ import org.apache.ibatis.transaction.TransactionFactory;
  */
 public class SpringManagedTransactionFactory implements TransactionFactory {
 
+  /**
+   * The property name of the statement cache size, see {@link #setStatementCacheSize(int)}.
+   */
+  public static final String STATEMENT_CACHE_SIZE_PROPERTY = "statementCacheSize";
+
+  /**
+   * The property name of the connection release mode, see {@link #setConnectionReleaseMode(ConnectionReleaseMode)}.
+   */
+  public static final String CONNECTION_RELEASE_MODE_PROPERTY = "connectionReleaseMode";
+
+  /**
+   * The property name of the connection state tracking, see {@link #setConnectionStateTracking(boolean)}.
+   */
+  public static final String CONNECTION_STATE_TRACKING_PROPERTY = "connectionStateTracking";
+
+  private PreparedStatementCaches statementCaches;
+
+  private String metricsName;
+
+  private ConnectionReleaseMode connectionReleaseMode = ConnectionReleaseMode.ON_CLOSE;
+
+  private boolean connectionStateTracking;
+
+  /**
+   * Enables a {@code PreparedStatement} cache attached to each physical connection of the {@code DataSource}.
+   * <p>
+   * {@code ExecutorType.REUSE} only reuses statements within one {@code SqlSession}. With this cache a statement closed
+   * by MyBatis stays open on its connection and is reused by any later session that gets the same pooled connection
+   * and prepares the same SQL with the same result set options. Each connection keeps at most {@code size} idle
+   * statements, the least recently used one is closed when the limit is reached. The statements of a connection are
+   * dropped once the pool closes it. Prefer the statement cache of the pool or of the driver when there is one.
+   *
+   * @param size
+   *          the maximum number of idle statements per connection, 0 (the default) disables the cache
+   * @since 2.0.6
+   */
+  public void setStatementCacheSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("The statement cache size must not be negative");
+    }
+    this.statementCaches = size == 0 ? null : new PreparedStatementCaches(size);
+  }
+
+  /**
+   * Sets when the transactions give their connection back to the {@code DataSource}.
+   * <p>
+   * With {@link ConnectionReleaseMode#AFTER_STATEMENT} a session that is not bound to a Spring transaction, e.g. the
+   * session of a {@code SqlSessionScope}, does not keep an auto-commit connection idle between its statements: the
+   * connection is released when its last statement is closed and got again for the next statement.
+   *
+   * @param connectionReleaseMode
+   *          the release mode, {@link ConnectionReleaseMode#ON_CLOSE} by default
+   * @since 2.0.6
+   */
+  public void setConnectionReleaseMode(ConnectionReleaseMode connectionReleaseMode) {
+    notNull(connectionReleaseMode, "No ConnectionReleaseMode specified");
+    this.connectionReleaseMode = connectionReleaseMode;
+  }
+
+  /**
+   * Reads the auto-commit mode of each physical connection once instead of once per session.
+   * <p>
+   * A transaction that is not bound to a Spring transaction needs the auto-commit mode of its connection to know if it
+   * must commit it, which is a call to the driver each time a session gets a connection. With tracking enabled the mode
+   * read the first time a pooled connection is used is remembered for that connection. Changes made by Spring's
+   * transaction managers and through the connection of a session are taken into account, but a change made by other
+   * code directly on a pooled connection is not: leave the tracking disabled (the default) if the application does
+   * that. Connections bound to a Spring transaction never read the mode, whatever this setting.
+   *
+   * @param connectionStateTracking
+   *          true to remember the auto-commit mode of the connections
+   * @since 2.0.6
+   */
+  public void setConnectionStateTracking(boolean connectionStateTracking) {
+    this.connectionStateTracking = connectionStateTracking;
+  }
+
+  /**
+   * Sets the factory name reported with the connection hold times of the transactions, see
+   * {@link org.mybatis.spring.metrics.SqlSessionMetricsRecorder#connectionReleased}. {@code SqlSessionFactoryBean} sets
+   * it to its bean name when it is not set.
+   *
+   * @param metricsName
+   *          the name of the {@code SqlSessionFactory} that uses this factory
+   * @since 2.0.6
+   */
+  public void setMetricsName(String metricsName) {
+    this.metricsName = metricsName;
+  }
+
+  /**
+   * @return the factory name reported with the connection hold times, {@code null} if not set
+   * @since 2.0.6
+   */
+  public String getMetricsName() {
+    return metricsName;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public Transaction newTransaction(DataSource dataSource, TransactionIsolationLevel level, boolean autoCommit) {
-    return new SpringManagedTransaction(dataSource);
+    return new SpringManagedTransaction(dataSource, this);
   }
 
   /**
@@ -49,10 +150,43 @@ public class SpringManagedTransactionFactory implements TransactionFactory {
 
   /**
    * {@inheritDoc}
+   * <p>
+   * Reads the {@value #STATEMENT_CACHE_SIZE_PROPERTY}, {@value #CONNECTION_RELEASE_MODE_PROPERTY} and
+   * {@value #CONNECTION_STATE_TRACKING_PROPERTY} properties.
    */
   @Override
   public void setProperties(Properties props) {
-    // not needed in this version
+    if (props == null) {
+      return;
+    }
+    String statementCacheSize = props.getProperty(STATEMENT_CACHE_SIZE_PROPERTY);
+    if (statementCacheSize != null) {
+      setStatementCacheSize(Integer.parseInt(statementCacheSize.trim()));
+    }
+    String connectionReleaseMode = props.getProperty(CONNECTION_RELEASE_MODE_PROPERTY);
+    if (connectionReleaseMode != null) {
+      setConnectionReleaseMode(ConnectionReleaseMode.valueOf(connectionReleaseMode.trim()));
+    }
+    String connectionStateTracking = props.getProperty(CONNECTION_STATE_TRACKING_PROPERTY);
+    if (connectionStateTracking != null) {
+      setConnectionStateTracking(Boolean.parseBoolean(connectionStateTracking.trim()));
+    }
+  }
+
+  PreparedStatementCaches getStatementCaches() {
+    return statementCaches;
+  }
+
+  ConnectionReleaseMode getConnectionReleaseMode() {
+    return connectionReleaseMode;
+  }
+
+  boolean isConnectionStateTracking() {
+    return connectionStateTracking;
+  }
+
+  int getStatementCacheSize(Connection connection) throws SQLException {
+    return statementCaches == null ? 0 : statementCaches.size(connection);
   }
 
 }
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+/**
+ * Counts the statements open on a connection and runs a callback when the last one is closed, to release the
+ * connection after each statement.
+ *
+ * @see ConnectionReleaseMode#AFTER_STATEMENT
+ */
+final class StatementReleasingConnection implements InvocationHandler {
+
+  private final Connection target;
+
+  private final Runnable release;
+
+  private int openStatements;
+
+  private boolean released;
+
+  private StatementReleasingConnection(Connection target, Runnable release) {
+    this.target = target;
+    this.release = release;
+  }
+
+  /**
+   * Wraps a connection.
+   *
+   * @param target
+   *          the connection given to MyBatis
+   * @param release
+   *          releases the connection, called when no statement is open anymore
+   * @return the connection to give to MyBatis instead
+   */
+  static Connection wrap(Connection target, Runnable release) {
+    return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+        new Class<?>[] { ConnectionProxy.class }, new StatementReleasingConnection(target, release));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return target.toString();
+      case "getTargetConnection":
+        return target;
+      default:
+        break;
+    }
+    if (released) {
+      throw new SQLException(
+          "The connection has been released after its last statement, get it again from the session");
+    }
+    Object result = invokeTarget(target, method, args);
+    if (method.getName().equals("setAutoCommit")) {
+      ConnectionStateTracker.autoCommitChanged(target, (Boolean) args[0]);
+    }
+    if (method.getName().equals("createStatement") || method.getName().equals("prepareStatement")
+        || method.getName().equals("prepareCall")) {
+      openStatements++;
+      return Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(), new Class<?>[] { method.getReturnType() },
+          new StatementHandler((Connection) proxy, result));
+    }
+    return result;
+  }
+
+  private void statementClosed() {
+    if (--openStatements == 0) {
+      released = true;
+      release.run();
+    }
+  }
+
+  private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+  /**
+   * Notifies the connection when the statement is closed.
+   */
+  private final class StatementHandler implements InvocationHandler {
+
+    private final Connection connection;
+
+    private final Object statement;
+
+    private boolean closed;
+
+    StatementHandler(Connection connection, Object statement) {
+      this.connection = connection;
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "getConnection":
+          return connection;
+        case "close":
+          try {
+            return invokeTarget(statement, method, args);
+          } finally {
+            if (!closed) {
+              closed = true;
+              statementClosed();
+            }
+          }
+        default:
+          return invokeTarget(statement, method, args);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.logging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class RingBufferSessionTracerTest {
+
+  @AfterEach
+  void disableTrace() {
+    SessionTrace.disable();
+  }
+
+  @Test
+  void shouldBeDisabledByDefault() {
+    assertThat(SessionTrace.getTracer()).isNull();
+    SessionTrace.record(SessionTraceEvent.CREATED, new Object());
+  }
+
+  @Test
+  void shouldRejectCapacityThatIsNotAPowerOfTwo() {
+    assertThrows(IllegalArgumentException.class, () -> new RingBufferSessionTracer(3));
+    assertThrows(IllegalArgumentException.class, () -> new RingBufferSessionTracer(0));
+  }
+
+  @Test
+  void shouldDumpEventsInOrder() {
+    RingBufferSessionTracer tracer = SessionTrace.enable(8);
+    Object session = new Object();
+
+    SessionTrace.record(SessionTraceEvent.CREATED, session);
+    SessionTrace.record(SessionTraceEvent.CLOSED, session);
+
+    String[] lines = tracer.dump().split("\n");
+    assertThat(lines).hasSize(2);
+    assertThat(lines[0]).endsWith("CREATED SqlSession@" + Integer.toHexString(System.identityHashCode(session)));
+    assertThat(lines[1]).contains(" " + Thread.currentThread().getId() + " CLOSED ");
+  }
+
+  @Test
+  void shouldKeepOnlyTheLatestEvents() {
+    RingBufferSessionTracer tracer = new RingBufferSessionTracer(4);
+    for (int i = 0; i < 6; i++) {
+      tracer.trace(i % 2 == 0 ? SessionTraceEvent.CREATED : SessionTraceEvent.CLOSED, new Object());
+    }
+    tracer.trace(SessionTraceEvent.REUSED, new Object());
+
+    String[] lines = tracer.dump().split("\n");
+    assertThat(tracer.getRecordedCount()).isEqualTo(7);
+    assertThat(lines).hasSize(4);
+    assertThat(lines[0]).contains(" CLOSED ");
+    assertThat(lines[3]).contains(" REUSED ");
+  }
+
+  @Test
+  void shouldForgetEventsOnClear() {
+    RingBufferSessionTracer tracer = new RingBufferSessionTracer(4);
+    tracer.trace(SessionTraceEvent.CREATED, new Object());
+    tracer.clear();
+
+    assertThat(tracer.dump()).isEmpty();
+    assertThat(tracer.getRecordedCount()).isZero();
+  }
+
+}
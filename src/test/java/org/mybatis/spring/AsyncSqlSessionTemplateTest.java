@@ -0,0 +1,227 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.mockrunner.mock.jdbc.MockDataSource;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.session.ExecutorType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.mapper.MapperFactoryBean;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+class AsyncSqlSessionTemplateTest extends AbstractMyBatisSpringTest {
+
+  private AsyncSqlSessionTemplate asyncTemplate;
+
+  @BeforeEach
+  void setupAsyncTemplate() {
+    asyncTemplate = new AsyncSqlSessionTemplate(new SqlSessionTemplate(sqlSessionFactory), 1);
+  }
+
+  @AfterEach
+  void destroyAsyncTemplate() {
+    asyncTemplate.destroy();
+  }
+
+  @Test
+  void testSelectOne() {
+    CompletableFuture<Integer> result = asyncTemplate.selectOne("org.mybatis.spring.TestMapper.findTest");
+
+    assertThat(result.join()).isEqualTo(1);
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testRunsOnPoolThread() throws SQLException {
+    String thread = asyncTemplate.execute(sqlSession -> Thread.currentThread().getName()).join();
+
+    assertThat(thread).startsWith("mybatis-async-");
+    // connection not used; force close to avoid failing in validateConnectionClosed()
+    connection.close();
+  }
+
+  @Test
+  void testExecuteSharesSession() {
+    int sum = asyncTemplate.execute(sqlSession -> sqlSession.<Integer> selectOne("org.mybatis.spring.TestMapper.findTest")
+        + sqlSession.<Integer> selectOne("org.mybatis.spring.TestMapper.findTest")).join();
+
+    assertThat(sum).isEqualTo(2);
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testBatchTemplate() {
+    AsyncSqlSessionTemplate batchTemplate = new AsyncSqlSessionTemplate(
+        new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH), 1);
+    try {
+      batchTemplate.execute(sqlSession -> {
+        sqlSession.insert("org.mybatis.spring.TestMapper.insertTest", "test1");
+        return sqlSession.insert("org.mybatis.spring.TestMapper.insertTest", "test2");
+      }).join();
+    } finally {
+      batchTemplate.destroy();
+    }
+
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testFullQueueRunsOnCaller() throws Exception {
+    AsyncSqlSessionTemplate boundedTemplate = new AsyncSqlSessionTemplate(new SqlSessionTemplate(sqlSessionFactory), 1,
+        1);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      CompletableFuture<String> blocking = boundedTemplate.execute(sqlSession -> {
+        awaitQuietly(release);
+        return Thread.currentThread().getName();
+      });
+      CompletableFuture<String> queued = boundedTemplate.execute(sqlSession -> Thread.currentThread().getName());
+      CompletableFuture<String> overflow = boundedTemplate.execute(sqlSession -> Thread.currentThread().getName());
+
+      assertThat(overflow).isCompletedWithValue(Thread.currentThread().getName());
+      release.countDown();
+      assertThat(blocking.join()).startsWith("mybatis-async-");
+      assertThat(queued.join()).startsWith("mybatis-async-");
+    } finally {
+      release.countDown();
+      boundedTemplate.destroy();
+    }
+    assertThrows(RejectedExecutionException.class, () -> boundedTemplate.execute(sqlSession -> null));
+    // connection not used; force close to avoid failing in validateConnectionClosed()
+    connection.close();
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void testFailsInTx() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      assertThrows(TransientDataAccessResourceException.class,
+          () -> asyncTemplate.selectOne("org.mybatis.spring.TestMapper.findTest"));
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test
+  void testJoinsTx() {
+    asyncTemplate.setTransactionMode(AsyncSqlSessionTemplate.TransactionMode.JOIN);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    CompletableFuture<Integer> result = asyncTemplate.selectOne("org.mybatis.spring.TestMapper.findTest");
+    assertThat(result).isCompletedWithValue(1);
+    txManager.commit(status);
+
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testJoinedTxFailureCompletesExceptionally() {
+    asyncTemplate.setTransactionMode(AsyncSqlSessionTemplate.TransactionMode.JOIN);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    CompletableFuture<Object> result = asyncTemplate.execute(sqlSession -> {
+      throw new IllegalStateException("expected");
+    });
+    assertThat(result).isCompletedExceptionally();
+    txManager.rollback(status);
+  }
+
+  @Test
+  void testAsyncMapper() throws Exception {
+    MapperFactoryBean<TestAsyncMapper> factoryBean = new MapperFactoryBean<>(TestAsyncMapper.class);
+    factoryBean.setAsyncSqlSessionTemplate(asyncTemplate);
+    factoryBean.afterPropertiesSet();
+
+    TestAsyncMapper mapper = factoryBean.getObject();
+    assertThat(mapper).isSameAs(asyncTemplate.getMapper(TestAsyncMapper.class));
+    assertThat(mapper.findAll().join()).containsExactly(1);
+
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testAsyncMapperRejectsSyncMethods() throws SQLException {
+    TestMapper mapper = asyncTemplate.getMapper(TestMapper.class);
+
+    assertThrows(org.apache.ibatis.binding.BindingException.class, mapper::findTest);
+    // connection not used; force close to avoid failing in validateConnectionClosed()
+    connection.close();
+  }
+
+  @Test
+  void testDetectPoolSize() throws SQLException {
+    PooledDataSource pooledDataSource = new PooledDataSource();
+    pooledDataSource.setPoolMaximumActiveConnections(7);
+    assertThat(AsyncSqlSessionTemplate.detectPoolSize(new TransactionAwareDataSourceProxy(pooledDataSource)))
+        .isEqualTo(7);
+
+    HikariLikeDataSource hikariLikeDataSource = new HikariLikeDataSource();
+    hikariLikeDataSource.setMaximumPoolSize(4);
+    assertThat(AsyncSqlSessionTemplate.detectPoolSize(hikariLikeDataSource)).isEqualTo(4);
+
+    assertThat(AsyncSqlSessionTemplate.detectPoolSize(new MockDataSource())).isEqualTo(-1);
+    assertThrows(IllegalArgumentException.class,
+        () -> new AsyncSqlSessionTemplate(new SqlSessionTemplate(sqlSessionFactory)));
+
+    // connection not used; force close to avoid failing in validateConnectionClosed()
+    connection.close();
+  }
+
+  public static class HikariLikeDataSource extends MockDataSource {
+
+    private int maximumPoolSize;
+
+    public int getMaximumPoolSize() {
+      return maximumPoolSize;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+      this.maximumPoolSize = maximumPoolSize;
+    }
+  }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.mockrunner.mock.jdbc.MockPreparedStatement;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+class CursorPublisherTest extends AbstractMyBatisSpringTest {
+
+  private static final String FIND = "org.mybatis.spring.TestMapper.findTest";
+
+  private final SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+
+  @BeforeEach
+  void setupRows() {
+    MockResultSet rs = new MockResultSet("SELECT 1");
+    for (int i = 1; i <= 5; i++) {
+      rs.addRow(new Object[] { i });
+    }
+    connection.getPreparedStatementResultSetHandler().clearResultSets();
+    connection.getPreparedStatementResultSetHandler().prepareResultSet("SELECT 1", rs);
+  }
+
+  @Test
+  void testEmitsOnDemand() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    new CursorPublisher<Integer>(sqlSessionTemplate, FIND, null).subscribe(subscriber);
+
+    assertThat(dataSource.getConnectionCount()).as("nothing is read before the first request").isEqualTo(0);
+
+    subscriber.subscription.request(2);
+    assertThat(subscriber.items).containsExactly(1, 2);
+    assertThat(subscriber.completed).isFalse();
+
+    subscriber.subscription.request(3);
+    assertThat(subscriber.items).containsExactly(1, 2, 3, 4, 5);
+    assertThat(subscriber.completed).isTrue();
+
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testEmitsInChunks() throws SQLException {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    new CursorPublisher<Integer>(sqlSessionTemplate, FIND, null, 2, null).subscribe(subscriber);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+
+    assertThat(subscriber.items).containsExactly(1, 2, 3, 4, 5);
+    assertThat(subscriber.completed).isTrue();
+    assertCommit();
+    MockPreparedStatement ps = (MockPreparedStatement) connection.getPreparedStatementResultSetHandler()
+        .getPreparedStatements().get(0);
+    assertThat(ps.getFetchSize()).as("the JDBC statement keeps the fetch size of the mapped statement").isZero();
+    assertThat(sqlSessionFactory.getConfiguration().getMappedStatementNames()).as("no statement is registered")
+        .noneMatch(name -> name.contains("fetchSize"));
+  }
+
+  @Test
+  void testCancelClosesSession() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    new CursorPublisher<Integer>(sqlSessionTemplate, FIND, null).subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+    subscriber.subscription.cancel();
+    subscriber.subscription.request(1);
+
+    assertThat(subscriber.items).containsExactly(1);
+    assertThat(subscriber.completed).isFalse();
+    assertThat(subscriber.error).isNull();
+    assertRollback();
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+  }
+
+  @Test
+  void testInvalidRequest() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    new CursorPublisher<Integer>(sqlSessionTemplate, FIND, null).subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+    subscriber.subscription.request(0);
+
+    assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+    assertRollback();
+  }
+
+  @Test
+  void testErrorIsTranslated() throws SQLException {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    new CursorPublisher<Integer>(sqlSessionTemplate, "org.mybatis.spring.TestMapper.unknown", null)
+        .subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+
+    assertThat(subscriber.error).isInstanceOf(MyBatisSystemException.class);
+    assertThat(subscriber.items).isEmpty();
+    // connection not used; force close to avoid failing in validateConnectionClosed()
+    connection.close();
+  }
+
+  @Test
+  void testRunsOnExecutor() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      RecordingSubscriber subscriber = new RecordingSubscriber();
+      new CursorPublisher<Integer>(sqlSessionTemplate, FIND, null, 0, executor).subscribe(subscriber);
+
+      subscriber.subscription.request(Long.MAX_VALUE);
+
+      assertThat(subscriber.done.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(subscriber.items).containsExactly(1, 2, 3, 4, 5);
+      assertThat(subscriber.threads).allMatch(thread -> thread != Thread.currentThread());
+      assertCommit();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static final class RecordingSubscriber implements Subscriber<Integer> {
+
+    private final List<Integer> items = new CopyOnWriteArrayList<>();
+
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Subscription subscription;
+
+    private volatile boolean completed;
+
+    private volatile Throwable error;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Integer item) {
+      items.add(item);
+      threads.add(Thread.currentThread());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+      done.countDown();
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+
+class DatabaseIdSQLExceptionTranslatorTest {
+
+  @Test
+  void testErrorCodeOfAnAlias() {
+    DatabaseIdSQLExceptionTranslator translator = DatabaseIdSQLExceptionTranslator.forDatabaseId("mysql");
+
+    DataAccessException translated = translator.translate("insert user", null,
+        new SQLException("Duplicate entry '1' for key 'PRIMARY'", "23000", 1062));
+
+    assertThat(translated).isInstanceOf(DuplicateKeyException.class);
+    assertThat(translated.getMessage()).startsWith("insert user; nested exception is")
+        .contains("Duplicate entry '1'");
+  }
+
+  @Test
+  void testSqlStateOfAProductName() {
+    DatabaseIdSQLExceptionTranslator translator = DatabaseIdSQLExceptionTranslator.forDatabaseId("PostgreSQL");
+
+    assertThat(translator.translate("insert user", null, new SQLException("duplicate key", "23505")))
+        .isInstanceOf(DuplicateKeyException.class);
+    assertThat(translator.translate("select user", "SELECT FROM", new SQLException("syntax error", "42601")))
+        .isInstanceOf(BadSqlGrammarException.class);
+  }
+
+  @Test
+  void testUnknownCodeFallsBackToSpring() {
+    DatabaseIdSQLExceptionTranslator translator = DatabaseIdSQLExceptionTranslator.forDatabaseId("oracle");
+
+    assertThat(translator.translate("select user", null, new SQLException("network", "08006", 99999)))
+        .isInstanceOf(DataAccessResourceFailureException.class);
+  }
+
+  @Test
+  void testTranslatorsAreShared() {
+    assertThat(DatabaseIdSQLExceptionTranslator.forDatabaseId("h2"))
+        .isSameAs(DatabaseIdSQLExceptionTranslator.forDatabaseId("h2"));
+    assertThat(DatabaseIdSQLExceptionTranslator.forDatabaseId("nosuchdb")).isNull();
+    assertThat(DatabaseIdSQLExceptionTranslator.forDatabaseId(null)).isNull();
+  }
+
+  @Test
+  void testMyBatisExceptionTranslatorNeedsNoConnection() {
+    DataSource dataSource = mock(DataSource.class);
+    Configuration configuration = new Configuration(
+        new Environment("test", new SpringManagedTransactionFactory(), dataSource));
+    configuration.setDatabaseId("mysql");
+
+    DataAccessException translated = new MyBatisExceptionTranslator(configuration, false)
+        .translateExceptionIfPossible(new PersistenceException("### Error updating database",
+            new SQLException("Duplicate entry", "23000", 1062)));
+
+    assertThat(translated).isInstanceOf(DuplicateKeyException.class);
+    verifyNoInteractions(dataSource);
+  }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.sql.SQLException;
+import java.util.EnumSet;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+class MyBatisExceptionTranslatorTest {
+
+  private static final PersistenceException DUPLICATE_KEY = new PersistenceException("### Error updating database",
+      new SQLException("Duplicate entry", "23000", 1062));
+
+  private static final PersistenceException DEADLOCK = new PersistenceException("### Error updating database",
+      new SQLException("Deadlock found", "40001", 1213));
+
+  @Test
+  void testStacklessFailure() {
+    MyBatisExceptionTranslator translator = new MyBatisExceptionTranslator(configuration("mysql"), true);
+    translator.setStacklessFailures(EnumSet.of(ExpectedDataAccessFailure.DUPLICATE_KEY));
+
+    DataAccessException translated = translator.translateExceptionIfPossible(DUPLICATE_KEY);
+
+    assertThat(translated).isInstanceOf(DuplicateKeyException.class).hasCauseReference(DUPLICATE_KEY.getCause());
+    assertThat(translated.getStackTrace()).isEmpty();
+    assertThat(translated.getMessage()).startsWith("Duplicate key");
+  }
+
+  @Test
+  void testOtherFailuresKeepTheirStackTrace() {
+    MyBatisExceptionTranslator translator = new MyBatisExceptionTranslator(configuration("mysql"), true);
+    translator.setStacklessFailures(EnumSet.of(ExpectedDataAccessFailure.DUPLICATE_KEY));
+
+    DataAccessException translated = translator.translateExceptionIfPossible(DEADLOCK);
+
+    assertThat(translated).isInstanceOf(DeadlockLoserDataAccessException.class);
+    assertThat(translated.getStackTrace()).isNotEmpty();
+    assertThat(translated.getMessage()).startsWith("### Error updating database");
+  }
+
+  @Test
+  void testStacklessFailureOfACustomTranslator() {
+    MyBatisExceptionTranslator translator = new MyBatisExceptionTranslator(
+        () -> (task, sql, ex) -> new OptimisticLockingFailureException(task, ex), true);
+    translator.setStacklessFailures(EnumSet.allOf(ExpectedDataAccessFailure.class));
+
+    DataAccessException translated = translator.translateExceptionIfPossible(DEADLOCK);
+
+    assertThat(translated).isInstanceOf(OptimisticLockingFailureException.class);
+    assertThat(translated.getStackTrace()).isEmpty();
+  }
+
+  @Test
+  void testTemplateNeedsAMyBatisExceptionTranslator() {
+    SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+    SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.SIMPLE,
+        e -> null);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> sqlSessionTemplate.setStacklessFailures(EnumSet.of(ExpectedDataAccessFailure.DUPLICATE_KEY)));
+  }
+
+  private static Configuration configuration(String databaseId) {
+    Configuration configuration = new Configuration(
+        new Environment("test", new SpringManagedTransactionFactory(), mock(DataSource.class)));
+    configuration.setDatabaseId(databaseId);
+    return configuration;
+  }
+
+}
@@ -37,6 +37,7 @@ import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.jta.JtaTransactionManager;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 class MyBatisSpringTest extends AbstractMyBatisSpringTest {
 
@@ -135,6 +136,43 @@ class MyBatisSpringTest extends AbstractMyBatisSpringTest {
     assertSingleConnection();
   }
 
+  @Test
+  void testSpringLeaseAPI() {
+    SqlSessionLease lease = SqlSessionUtils.leaseSqlSession(sqlSessionFactory, ExecutorType.SIMPLE, null);
+    session = lease.getSqlSession();
+    assertThat(lease.isTransactional()).isFalse();
+    assertThat(lease.getHolder()).isNull();
+    session.getMapper(TestMapper.class).findTest();
+    lease.release();
+
+    assertNoCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testSpringLeaseAPIWithTx() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+
+    SqlSessionLease lease = SqlSessionUtils.leaseSqlSession(sqlSessionFactory, ExecutorType.SIMPLE, null);
+    session = lease.getSqlSession();
+    assertThat(lease.isTransactional()).isTrue();
+    assertThat(lease.getHolder()).isSameAs(TransactionSynchronizationManager.getResource(sqlSessionFactory));
+    assertThat(SqlSessionUtils.isSqlSessionTransactional(session, sqlSessionFactory)).isTrue();
+    session.getMapper(TestMapper.class).findTest();
+    lease.release();
+
+    SqlSessionLease second = SqlSessionUtils.leaseSqlSession(sqlSessionFactory, ExecutorType.SIMPLE, null);
+    assertThat(second.getSqlSession()).isSameAs(session);
+    second.release();
+    assertThat(lease.getHolder().isOpen()).isFalse();
+
+    txManager.commit(status);
+
+    assertCommit();
+    assertSingleConnection();
+  }
+
   // Spring API should work with a MyBatis TransactionFactories
   @Test
   void testWithNonSpringTransactionFactory() {
@@ -222,23 +260,83 @@ class MyBatisSpringTest extends AbstractMyBatisSpringTest {
 
   @Test
   void testChangeExecutorTypeInTx() throws Exception {
-    TransactionStatus status = null;
+    setupBatchStatements();
 
-    try {
-      status = txManager.getTransaction(new DefaultTransactionDefinition());
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
 
-      session = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    session = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    SqlSession batchSession = SqlSessionUtils.getSqlSession(sqlSessionFactory, ExecutorType.BATCH, exceptionTranslator);
 
-      assertThrows(TransientDataAccessResourceException.class,
-          () -> session = SqlSessionUtils.getSqlSession(sqlSessionFactory, ExecutorType.BATCH, exceptionTranslator));
+    assertThat(batchSession).isNotSameAs(session);
+    assertThat(SqlSessionUtils.isSqlSessionTransactional(batchSession, sqlSessionFactory)).isTrue();
+    SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sqlSessionFactory);
+    assertThat(holder.getSqlSessions()).containsExactly(session, batchSession);
+    assertThat(holder.getSqlSession(ExecutorType.BATCH)).isSameAs(batchSession);
 
-      // fail("should not be able to change the Executor type during an existing transaction");
-    } finally {
-      SqlSessionUtils.closeSqlSession(session, sqlSessionFactory);
+    batchSession.getMapper(TestMapper.class).insertTest("test1");
+    batchSession.getMapper(TestMapper.class).insertTest("test2");
+    SqlSessionUtils.closeSqlSession(batchSession, sqlSessionFactory);
+    assertExecuteCount(0);
 
-      // rollback required to close connection
-      txManager.rollback(status);
-    }
+    // the batch runs before the SIMPLE session is used again
+    SqlSession simpleSession = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    assertThat(simpleSession).isSameAs(session);
+    assertExecuteCount(2);
+    simpleSession.getMapper(TestMapper.class).findTest();
+    SqlSessionUtils.closeSqlSession(simpleSession, sqlSessionFactory);
+    SqlSessionUtils.closeSqlSession(session, sqlSessionFactory);
+
+    txManager.commit(status);
+
+    assertCommitJdbc();
+    assertThat(executorInterceptor.getCommitCount()).as("should commit both sessions").isEqualTo(2);
+    assertThat(executorInterceptor.getRollbackCount()).isEqualTo(0);
+    assertSingleConnection();
+    assertExecuteCount(3);
+  }
+
+  @Test
+  void testChangeExecutorTypeInTxFlushesBatchBeforeCommit() throws Exception {
+    setupBatchStatements();
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+
+    session = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    session.getMapper(TestMapper.class).findTest();
+    SqlSessionUtils.closeSqlSession(session, sqlSessionFactory);
+
+    SqlSession batchSession = SqlSessionUtils.getSqlSession(sqlSessionFactory, ExecutorType.BATCH, exceptionTranslator);
+    batchSession.getMapper(TestMapper.class).insertTest("test1");
+    batchSession.getMapper(TestMapper.class).insertTest("test2");
+    SqlSessionUtils.closeSqlSession(batchSession, sqlSessionFactory);
+    assertExecuteCount(1);
+
+    txManager.commit(status);
+
+    assertCommitJdbc();
+    assertSingleConnection();
+    assertExecuteCount(3);
+  }
+
+  @Test
+  void testChangeExecutorTypeInTxRollback() throws Exception {
+    setupBatchStatements();
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+
+    session = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    SqlSessionUtils.closeSqlSession(session, sqlSessionFactory);
+
+    SqlSession batchSession = SqlSessionUtils.getSqlSession(sqlSessionFactory, ExecutorType.BATCH, exceptionTranslator);
+    batchSession.getMapper(TestMapper.class).insertTest("test1");
+    SqlSessionUtils.closeSqlSession(batchSession, sqlSessionFactory);
+
+    txManager.rollback(status);
+
+    assertThat(connection.getNumberRollbacks()).isEqualTo(1);
+    assertThat(executorInterceptor.getRollbackCount()).as("should roll back both sessions").isEqualTo(2);
+    assertThat(executorInterceptor.getCommitCount()).isEqualTo(0);
+    assertExecuteCount(0);
   }
 
   @Test
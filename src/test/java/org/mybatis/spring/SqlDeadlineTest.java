@@ -0,0 +1,198 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.mockrunner.mock.jdbc.MockPreparedStatement;
+import org.apache.ibatis.plugin.Invocation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.annotation.WithSqlDeadline;
+import org.mybatis.spring.support.SqlDeadlineAdvisor;
+import org.mybatis.spring.support.StatementCancelInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.QueryTimeoutException;
+
+class SqlDeadlineTest extends AbstractMyBatisSpringTest {
+
+  private final SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+
+  @AfterEach
+  void assertNoDeadline() {
+    assertThat(SqlDeadline.current()).isNull();
+  }
+
+  @Test
+  void testNestedDeadlineKeepsTheEarliest() throws Exception {
+    try (SqlDeadline outer = SqlDeadline.start(Duration.ofSeconds(1))) {
+      try (SqlDeadline inner = SqlDeadline.start(1, TimeUnit.HOURS)) {
+        assertThat(SqlDeadline.current()).isSameAs(inner);
+        assertThat(inner.getRemainingNanos()).isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(inner.getRemainingSeconds()).isEqualTo(1);
+      }
+      assertThat(SqlDeadline.current()).isSameAs(outer);
+    }
+
+    connection.close();
+  }
+
+  @Test
+  void testExpiredDeadlineFailsBeforeTakingAConnection() throws Exception {
+    try (SqlDeadline deadline = SqlDeadline.start(Duration.ZERO)) {
+      assertThat(deadline.isExpired()).isTrue();
+      assertThrows(QueryTimeoutException.class, () -> sqlSessionTemplate.getMapper(TestMapper.class).findTest());
+    }
+
+    assertThat(connection.isClosed()).isFalse();
+    connection.close();
+  }
+
+  @Test
+  void testRemainingTimeIsTheQueryTimeout() throws Exception {
+    SqlDeadline.call(Duration.ofMillis(2500), () -> sqlSessionTemplate.getMapper(TestMapper.class).findTest());
+
+    MockPreparedStatement statement = (MockPreparedStatement) connection.getPreparedStatementResultSetHandler()
+        .getPreparedStatements().get(0);
+    // rounded up to whole seconds
+    assertThat(statement.getQueryTimeout()).isBetween(1, 3);
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testAnnotation() throws Exception {
+    ProxyFactory proxyFactory = new ProxyFactory(new DeadlineService());
+    proxyFactory.addAdvisor(new SqlDeadlineAdvisor());
+    DeadlineService service = (DeadlineService) proxyFactory.getProxy();
+
+    assertThat(service.remainingNanos()).isPositive().isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+    assertThat(service.noDeadline()).isNull();
+
+    connection.close();
+  }
+
+  @Test
+  void testClassAnnotationOfEachTarget() throws Exception {
+    SqlDeadlineAdvisor advisor = new SqlDeadlineAdvisor();
+    ProxyFactory proxyFactory = new ProxyFactory(new ClassDeadlineService());
+    proxyFactory.addAdvisor(advisor);
+    DeadlineService service = (DeadlineService) proxyFactory.getProxy();
+    proxyFactory = new ProxyFactory(new LongClassDeadlineService());
+    proxyFactory.addAdvisor(advisor);
+    DeadlineService longService = (DeadlineService) proxyFactory.getProxy();
+
+    // the same inherited method, with the annotation of each target class
+    assertThat(service.currentDeadline().getRemainingNanos()).isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+    assertThat(longService.currentDeadline().getRemainingNanos()).isGreaterThan(TimeUnit.SECONDS.toNanos(1));
+
+    connection.close();
+  }
+
+  @Test
+  void testStatementCancelledWhenTheDeadlinePasses() throws Throwable {
+    StatementCancelInterceptor interceptor = new StatementCancelInterceptor();
+    BlockingStatementHandler handler = new BlockingStatementHandler();
+
+    try (SqlDeadline deadline = SqlDeadline.start(Duration.ofMillis(50))) {
+      Invocation invocation = new Invocation(handler, BlockingStatementHandler.class.getMethod("update",
+          Statement.class), new Object[] { handler.statement });
+      assertThrows(SQLTimeoutException.class, () -> interceptor.intercept(invocation));
+    }
+    assertThat(handler.cancelled.get()).isTrue();
+
+    connection.close();
+  }
+
+  @Test
+  void testStatementCancelledWhenTheCallerIsInterrupted() throws Throwable {
+    StatementCancelInterceptor interceptor = new StatementCancelInterceptor();
+    BlockingStatementHandler handler = new BlockingStatementHandler();
+
+    try (SqlDeadline deadline = SqlDeadline.start(Duration.ofMinutes(1))) {
+      Invocation invocation = new Invocation(handler, BlockingStatementHandler.class.getMethod("update",
+          Statement.class), new Object[] { handler.statement });
+      Thread.currentThread().interrupt();
+      SQLException e = assertThrows(SQLException.class, () -> interceptor.intercept(invocation));
+      assertThat(e.getMessage()).contains("interrupted");
+    } finally {
+      Thread.interrupted();
+    }
+    assertThat(handler.cancelled.get()).isTrue();
+
+    connection.close();
+  }
+
+  public static class DeadlineService {
+
+    @WithSqlDeadline(millis = 200)
+    public long remainingNanos() {
+      return SqlDeadline.current().getRemainingNanos();
+    }
+
+    public SqlDeadline noDeadline() {
+      return SqlDeadline.current();
+    }
+
+    public SqlDeadline currentDeadline() {
+      return SqlDeadline.current();
+    }
+  }
+
+  @WithSqlDeadline(millis = 200)
+  public static class ClassDeadlineService extends DeadlineService {
+  }
+
+  @WithSqlDeadline(millis = 60_000)
+  public static class LongClassDeadlineService extends DeadlineService {
+  }
+
+  /**
+   * Stands for a StatementHandler whose statement only returns once it is cancelled.
+   */
+  public static class BlockingStatementHandler {
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    private final Statement statement = mock(Statement.class);
+
+    BlockingStatementHandler() throws SQLException {
+      doAnswer(invocation -> {
+        cancelled.set(true);
+        return null;
+      }).when(statement).cancel();
+    }
+
+    public int update(Statement statement) throws SQLException {
+      long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (!cancelled.get() && System.nanoTime() - end < 0) {
+        Thread.yield();
+      }
+      throw new SQLException(cancelled.get() ? "cancelled" : "not cancelled");
+    }
+  }
+
+}
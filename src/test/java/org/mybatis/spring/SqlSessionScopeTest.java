@@ -0,0 +1,288 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.apache.ibatis.session.ExecutorType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.annotation.SqlSessionScoped;
+import org.mybatis.spring.support.SqlSessionScopeAdvisor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class SqlSessionScopeTest extends AbstractMyBatisSpringTest {
+
+  private final SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+
+  @AfterEach
+  void assertNothingBound() {
+    assertThat(TransactionSynchronizationManager.hasResource(sqlSessionFactory)).isFalse();
+  }
+
+  @Test
+  void testCallsShareOneSession() {
+    try (SqlSessionScope scope = SqlSessionScope.open(sqlSessionFactory)) {
+      assertThat(scope.isOwner()).isTrue();
+      assertThat(SqlSessionScope.isActive(sqlSessionFactory)).isTrue();
+
+      TestMapper mapper = sqlSessionTemplate.getMapper(TestMapper.class);
+      mapper.findTest();
+      mapper.findTest();
+
+      assertNoCommit();
+    }
+
+    assertCommit();
+    assertSingleConnection();
+    // the second call hits the local cache of the shared session
+    assertExecuteCount(1);
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+  }
+
+  @Test
+  void testExecuteRollsBackOnException() {
+    assertThrows(IllegalStateException.class, () -> SqlSessionScope.execute(sqlSessionFactory, () -> {
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+      throw new IllegalStateException("expected");
+    }));
+
+    assertRollback();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testExecuteKeepsTheExceptionOfTheActionWhenRollbackFails() {
+    dataSource.reset();
+    connection = new MockConnection() {
+      @Override
+      public void rollback() throws SQLException {
+        throw new SQLException("rollback failed");
+      }
+    };
+    dataSource.addConnection(connection);
+
+    IllegalStateException e = assertThrows(IllegalStateException.class,
+        () -> SqlSessionScope.execute(sqlSessionFactory, () -> {
+          sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+          throw new IllegalStateException("expected");
+        }));
+
+    assertThat(e.getMessage()).isEqualTo("expected");
+    assertThat(e.getSuppressed()).hasSize(1);
+    assertThat(e.getSuppressed()[0]).isInstanceOf(DataAccessException.class);
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+  }
+
+  @Test
+  void testExecuteWithExecutorType() {
+    SqlSessionTemplate batchTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    SqlSessionScope.execute(sqlSessionFactory, ExecutorType.BATCH, () -> {
+      batchTemplate.getMapper(TestMapper.class).insertTest("test1");
+      batchTemplate.getMapper(TestMapper.class).insertTest("test2");
+      return null;
+    });
+
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testScopeKeepsItsExecutorType() throws Exception {
+    SqlSessionTemplate batchTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    try (SqlSessionScope scope = SqlSessionScope.open(sqlSessionFactory)) {
+      assertThrows(TransientDataAccessResourceException.class,
+          () -> batchTemplate.getMapper(TestMapper.class).insertTest("test1"));
+    }
+
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+    assertThat(dataSource.getConnectionCount()).isEqualTo(0);
+    connection.close();
+  }
+
+  @Test
+  void testNestedScopeJoinsOuterScope() {
+    try (SqlSessionScope outer = SqlSessionScope.open(sqlSessionFactory)) {
+      try (SqlSessionScope inner = SqlSessionScope.open(sqlSessionFactory)) {
+        assertThat(inner.isOwner()).isFalse();
+        sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+      }
+      assertThat(SqlSessionScope.isActive(sqlSessionFactory)).isTrue();
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+    }
+
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testScopeJoinsTransaction() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try (SqlSessionScope scope = SqlSessionScope.open(sqlSessionFactory)) {
+      assertThat(scope.isOwner()).isFalse();
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+    }
+    txManager.commit(status);
+
+    assertCommitJdbc();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testTransactionSuspendsScope() {
+    try (SqlSessionScope scope = SqlSessionScope.open(sqlSessionFactory)) {
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+      SqlSessionHolder scoped = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sqlSessionFactory);
+
+      TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+      SqlSessionHolder transactional = (SqlSessionHolder) TransactionSynchronizationManager
+          .getResource(sqlSessionFactory);
+      assertThat(transactional).isNotSameAs(scoped);
+      assertThat(transactional.isScoped()).isFalse();
+      txManager.commit(status);
+
+      assertThat(TransactionSynchronizationManager.getResource(sqlSessionFactory)).isSameAs(scoped);
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+    }
+
+    // the scope and the transaction each used their own connection
+    assertThat(dataSource.getConnectionCount()).isEqualTo(2);
+    assertThat(executorInterceptor.getCommitCount()).isEqualTo(2);
+    assertConnectionClosed(connectionTwo);
+  }
+
+  @Test
+  void testScopedAnnotation() {
+    ProxyFactory proxyFactory = new ProxyFactory(new ScopedService(sqlSessionTemplate));
+    proxyFactory.addAdvisor(new SqlSessionScopeAdvisor(sqlSessionFactory));
+    ScopedService service = (ScopedService) proxyFactory.getProxy();
+
+    service.findTwice();
+
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testScopedAnnotationRollsBackOnException() {
+    ProxyFactory proxyFactory = new ProxyFactory(new ScopedService(sqlSessionTemplate));
+    proxyFactory.addAdvisor(new SqlSessionScopeAdvisor(sqlSessionFactory));
+    ScopedService service = (ScopedService) proxyFactory.getProxy();
+
+    assertThrows(IllegalStateException.class, service::insertAndFail);
+
+    assertRollback();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testScopedAnnotationWithExecutorType() {
+    SqlSessionTemplate batchTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    ProxyFactory proxyFactory = new ProxyFactory(new ScopedService(batchTemplate));
+    proxyFactory.addAdvisor(new SqlSessionScopeAdvisor(sqlSessionFactory));
+    ScopedService service = (ScopedService) proxyFactory.getProxy();
+
+    service.insertBatch();
+    service.insertBatch();
+
+    assertThat(executorInterceptor.getCommitCount()).isEqualTo(2);
+    assertThat(dataSource.getConnectionCount()).isEqualTo(2);
+    assertConnectionClosed(connection);
+  }
+
+  @Test
+  void testScopedClassAnnotationWithExecutorType() {
+    SqlSessionTemplate batchTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    ProxyFactory proxyFactory = new ProxyFactory(new BatchScopedService(batchTemplate));
+    proxyFactory.addAdvisor(new SqlSessionScopeAdvisor(sqlSessionFactory));
+    BatchScopedService service = (BatchScopedService) proxyFactory.getProxy();
+
+    service.insertTwice();
+
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testAdvisorMatchesAnnotatedMethodsOnly() throws Exception {
+    SqlSessionScopeAdvisor advisor = new SqlSessionScopeAdvisor(sqlSessionFactory);
+    assertThat(advisor.getAdvice()).isInstanceOf(MethodInterceptor.class);
+    assertThat(advisor.getPointcut().getMethodMatcher().matches(ScopedService.class.getMethod("findTwice"),
+        ScopedService.class)).isTrue();
+    assertThat(advisor.getPointcut().getMethodMatcher().matches(Object.class.getMethod("toString"), Object.class))
+        .isFalse();
+
+    // no statement was run
+    connection.close();
+  }
+
+  public static class ScopedService {
+
+    private final SqlSessionTemplate sqlSessionTemplate;
+
+    public ScopedService(SqlSessionTemplate sqlSessionTemplate) {
+      this.sqlSessionTemplate = sqlSessionTemplate;
+    }
+
+    @SqlSessionScoped
+    public void findTwice() {
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+    }
+
+    @SqlSessionScoped
+    public void insertAndFail() {
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+      throw new IllegalStateException("expected");
+    }
+
+    @SqlSessionScoped(executorType = ExecutorType.BATCH)
+    public void insertBatch() {
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test2");
+    }
+  }
+
+  @SqlSessionScoped(executorType = ExecutorType.BATCH)
+  public static class BatchScopedService {
+
+    private final SqlSessionTemplate sqlSessionTemplate;
+
+    public BatchScopedService(SqlSessionTemplate sqlSessionTemplate) {
+      this.sqlSessionTemplate = sqlSessionTemplate;
+    }
+
+    public void insertTwice() {
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test2");
+    }
+  }
+
+}
@@ -19,14 +19,25 @@ import static org.assertj.core.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import com.mockrunner.mock.jdbc.MockPreparedStatement;
+
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.ibatis.binding.MapperMethod.ParamMap;
 
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.mybatis.logging.RingBufferSessionTracer;
+import org.mybatis.logging.SessionTrace;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
@@ -180,4 +191,268 @@ public class SqlSessionTemplateTest extends AbstractMyBatisSpringTest {
     assertSingleConnection();
   }
 
+  @Test
+  void testSessionTraceWithTx() {
+    RingBufferSessionTracer tracer = SessionTrace.enable(16);
+    try {
+      TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+      sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+
+      txManager.commit(status);
+    } finally {
+      SessionTrace.disable();
+    }
+
+    assertThat(tracer.dump().split("\n")).extracting(line -> line.split(" ")[2]).containsExactly("CREATED",
+        "REGISTERED", "RELEASED", "REUSED", "RELEASED", "CLOSED");
+  }
+
+  @Test
+  void testSelectCommittedByDefault() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    assertThat(template.getSelectCompletionMode()).isEqualTo(SelectCompletionMode.COMMIT);
+
+    template.selectOne("org.mybatis.spring.TestMapper.findTest");
+
+    assertCommit();
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+  }
+
+  @Test
+  void testSelectWithoutCommit() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setSelectCompletionMode(SelectCompletionMode.NONE);
+
+    template.getMapper(TestMapper.class).findTest();
+
+    assertNoCommit();
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+  }
+
+  @Test
+  void testSelectRolledBack() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setSelectCompletionMode(SelectCompletionMode.ROLLBACK);
+
+    template.selectList("org.mybatis.spring.TestMapper.findTest");
+
+    assertRollback();
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+  }
+
+  @Test
+  void testInsertCommittedWhateverSelectCompletionMode() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setSelectCompletionMode(SelectCompletionMode.NONE);
+
+    template.getMapper(TestMapper.class).insertTest("test");
+
+    assertCommit();
+  }
+
+  @Test
+  void testSelectCompletionModeIgnoredInTx() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setSelectCompletionMode(SelectCompletionMode.ROLLBACK);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    template.getMapper(TestMapper.class).findTest();
+    txManager.commit(status);
+
+    assertCommit();
+  }
+
+  @Test
+  void testCursorKeepsSessionOpenUntilRead() {
+    Cursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+
+    assertThat(executorInterceptor.isExecutorClosed()).as("session stays open while the cursor is read").isFalse();
+    assertThat(cursor).containsExactly(1);
+
+    assertThat(cursor.isOpen()).isFalse();
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testCursorClosedEarly() throws Exception {
+    Cursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+    cursor.close();
+    cursor.close();
+
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+    assertCommit();
+  }
+
+  @Test
+  void testCursorInTx() throws Exception {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try (Cursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest")) {
+      assertThat(cursor).isNotInstanceOf(SqlSessionCursor.class).containsExactly(1);
+    }
+    txManager.commit(status);
+
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testSelectStream() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    try (Stream<Integer> rows = template.selectStream("org.mybatis.spring.TestMapper.findTest")) {
+      assertThat(rows.map(row -> row * 2)).containsExactly(2);
+    }
+
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testBatchFlushedByStatementCount() {
+    connection.getPreparedStatementResultSetHandler()
+        .addPreparedStatement(new MockPreparedStatement(connection, "INSERT ? INTO test"));
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    template.setBatchFlushStatements(2);
+    List<List<BatchResult>> flushes = new ArrayList<>();
+    template.setBatchFlushListener(flushes::add);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    for (int i = 0; i < 5; i++) {
+      template.insert("org.mybatis.spring.TestMapper.insertTest", "test" + i);
+    }
+
+    assertThat(flushes).hasSize(2);
+    assertThat(flushes.get(0).get(0).getParameterObjects()).containsExactly("test0", "test1");
+    assertExecuteCount(4);
+    SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sqlSessionFactory);
+    assertThat(holder.getBatchedStatements()).isEqualTo(1);
+
+    txManager.commit(status);
+
+    assertThat(flushes).hasSize(2);
+    assertExecuteCount(5);
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  void testBatchFlushedByEstimatedBytes() {
+    connection.getPreparedStatementResultSetHandler()
+        .addPreparedStatement(new MockPreparedStatement(connection, "INSERT ? INTO test"));
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    template.setBatchFlushBytes(250);
+    template.setBatchSizeEstimator(parameter -> 100);
+    List<List<BatchResult>> flushes = new ArrayList<>();
+    template.setBatchFlushListener(flushes::add);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    template.insert("org.mybatis.spring.TestMapper.insertTest", "test1");
+    template.insert("org.mybatis.spring.TestMapper.insertTest", "test2");
+    assertThat(flushes).isEmpty();
+    template.insert("org.mybatis.spring.TestMapper.insertTest", "test3");
+    assertThat(flushes).hasSize(1);
+
+    SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sqlSessionFactory);
+    assertThat(holder.getBatchedBytes()).isEqualTo(0);
+    txManager.commit(status);
+
+    assertExecuteCount(3);
+    assertCommit();
+  }
+
+  @Test
+  void testBatchCountResetWhenTheFlushFails() {
+    connection.getPreparedStatementResultSetHandler().prepareThrowsSQLException("INSERT ? INTO test",
+        new SQLException("expected"));
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    template.setBatchFlushStatements(2);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    template.insert("org.mybatis.spring.TestMapper.insertTest", "test1");
+    assertThrows(DataAccessException.class, () -> template.insert("org.mybatis.spring.TestMapper.insertTest", "test2"));
+
+    SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sqlSessionFactory);
+    assertThat(holder.getBatchedStatements()).isEqualTo(0);
+    assertThat(holder.getBatchedBytes()).isEqualTo(0);
+    txManager.rollback(status);
+
+    assertRollback();
+  }
+
+  @Test
+  void testBatchNotLimitedByDefault() {
+    connection.getPreparedStatementResultSetHandler()
+        .addPreparedStatement(new MockPreparedStatement(connection, "INSERT ? INTO test"));
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    for (int i = 0; i < 3; i++) {
+      template.insert("org.mybatis.spring.TestMapper.insertTest", "test" + i);
+    }
+    assertExecuteCount(0);
+    txManager.commit(status);
+
+    assertExecuteCount(3);
+  }
+
+  @Test
+  void testShallowBatchSizeEstimator() {
+    BatchSizeEstimator estimator = ShallowBatchSizeEstimator.INSTANCE;
+    assertThat(estimator.estimate(null)).isEqualTo(0);
+    assertThat(estimator.estimate("abcd")).isEqualTo(48);
+    assertThat(estimator.estimate(new Object[] { 1, "abcd" })).isEqualTo(16 + 8 + 16 + 8 + 48);
+    assertThat(estimator.estimate(new Object())).isEqualTo(64);
+
+    ParamMap<Object> paramMap = new ParamMap<>();
+    paramMap.put("name", "abcd");
+    paramMap.put("param1", paramMap.get("name"));
+    assertThat(estimator.estimate(paramMap)).isEqualTo(64 + 32 + 48 + 32);
+  }
+
+  @Test
+  void testReadOnlyTxReusesStatements() {
+    DefaultTransactionDefinition txDef = new DefaultTransactionDefinition();
+    txDef.setReadOnly(true);
+
+    TransactionStatus status = txManager.getTransaction(txDef);
+    sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+    // bypass the local cache
+    sqlSessionTemplate.clearCache();
+    sqlSessionTemplate.getMapper(TestMapper.class).findTest();
+
+    SqlSessionHolder holder = (SqlSessionHolder) TransactionSynchronizationManager.getResource(sqlSessionFactory);
+    assertThat(holder.isReadOnly()).isTrue();
+    assertThat(holder.getExecutorType()).isEqualTo(ExecutorType.REUSE);
+    txManager.commit(status);
+
+    assertThat(connection.getPreparedStatementResultSetHandler().getPreparedStatements()).hasSize(1);
+    assertExecuteCount(2);
+    assertThat(executorInterceptor.getCommitCount()).as("nothing to commit in the session").isEqualTo(0);
+    assertThat(executorInterceptor.isExecutorClosed()).isTrue();
+    assertCommitJdbc();
+  }
+
+  @Test
+  void testReadOnlyTxRejectsWrites() {
+    DefaultTransactionDefinition txDef = new DefaultTransactionDefinition();
+    txDef.setReadOnly(true);
+
+    TransactionStatus status = txManager.getTransaction(txDef);
+    try {
+      assertThatThrownBy(() -> sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test"))
+          .isInstanceOf(InvalidDataAccessApiUsageException.class).hasMessageContaining("insertTest");
+      SqlSessionTemplate batchTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+      assertThatThrownBy(() -> batchTemplate.delete("org.mybatis.spring.TestMapper.insertTest", "test"))
+          .isInstanceOf(InvalidDataAccessApiUsageException.class);
+    } finally {
+      txManager.rollback(status);
+    }
+
+    assertExecuteCount(0);
+  }
+
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import static org.springframework.transaction.support.TransactionSynchronization.STATUS_COMMITTED;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// second level cache entries must only be published once the transaction has committed
+class TransactionalCacheTest extends AbstractMyBatisSpringTest {
+
+  private static final String NAMESPACE = "org.mybatis.spring.TestCachedMapper";
+
+  private static SqlSessionFactory cachedSqlSessionFactory;
+
+  private static SqlSessionTemplate sqlSessionTemplate;
+
+  private static Cache cache;
+
+  @BeforeAll
+  static void setupCachedFactory() throws Exception {
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setMapperLocations(new ClassPathResource("org/mybatis/spring/TestCachedMapper.xml"));
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setPlugins(executorInterceptor);
+    cachedSqlSessionFactory = factoryBean.getObject();
+
+    sqlSessionTemplate = new SqlSessionTemplate(cachedSqlSessionFactory);
+    cache = cachedSqlSessionFactory.getConfiguration().getCache(NAMESPACE);
+  }
+
+  @BeforeEach
+  void clearCache() {
+    cache.clear();
+  }
+
+  @Test
+  void testCachePublishedAfterCommit() {
+    int[] sizeAfterCommit = { -1 };
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    sqlSessionTemplate.selectOne(NAMESPACE + ".findTest");
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        sizeAfterCommit[0] = cache.getSize();
+      }
+    });
+    txManager.commit(status);
+
+    assertThat(sizeAfterCommit[0]).as("nothing published before the transaction completes").isEqualTo(0);
+    assertThat(cache.getSize()).isEqualTo(1);
+    assertCommit();
+  }
+
+  @Test
+  void testCacheDiscardedOnRollback() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    sqlSessionTemplate.selectOne(NAMESPACE + ".findTest");
+    txManager.rollback(status);
+
+    assertThat(cache.getSize()).isEqualTo(0);
+    assertThat(connection.getNumberRollbacks()).isEqualTo(1);
+  }
+
+  @Test
+  void testCacheDiscardedWhenCommitFails() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    sqlSessionTemplate.insert(NAMESPACE + ".insertTest", "test");
+    sqlSessionTemplate.selectOne(NAMESPACE + ".findTest");
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void beforeCommit(boolean readOnly) {
+        // runs after the SqlSession has been flushed
+        throw new IllegalStateException("commit failed");
+      }
+    });
+
+    assertThrows(IllegalStateException.class, () -> txManager.commit(status));
+
+    assertThat(cache.getSize()).as("no stale entry left by the rolled back transaction").isEqualTo(0);
+    assertThat(connection.getNumberCommits()).isEqualTo(0);
+    assertThat(executorInterceptor.getCommitCount()).isEqualTo(0);
+    assertThat(executorInterceptor.getRollbackCount()).isEqualTo(1);
+  }
+
+  @Test
+  void testAfterCompletionOnAnotherThread() throws Exception {
+    // like a JTA transaction manager that completes the transaction on one of its own threads (issue #18)
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    List<TransactionSynchronization> synchronizations;
+    try {
+      sqlSessionTemplate.selectOne(NAMESPACE + ".findTest");
+      synchronizations = TransactionSynchronizationManager.getSynchronizations();
+      synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+      synchronizations.forEach(TransactionSynchronization::beforeCompletion);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    assertThat(connection.isClosed()).as("released before completion, on the thread of the transaction").isTrue();
+    assertThat(TransactionSynchronizationManager.getResourceMap()).isEmpty();
+    assertThat(cache.getSize()).isEqualTo(0);
+
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread completion = new Thread(() -> {
+      try {
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(STATUS_COMMITTED));
+      } catch (Throwable e) {
+        failure.set(e);
+      }
+    });
+    completion.start();
+    completion.join();
+
+    assertThat(failure.get()).isNull();
+    assertThat(cache.getSize()).as("published once committed").isEqualTo(1);
+    assertThat(executorInterceptor.getCommitCount()).isEqualTo(1);
+    assertSingleConnection();
+  }
+
+  @Test
+  void testCacheUsedOutsideTransaction() {
+    sqlSessionTemplate.selectOne(NAMESPACE + ".findTest");
+    sqlSessionTemplate.selectOne(NAMESPACE + ".findTest");
+
+    assertThat(cache.getSize()).isEqualTo(1);
+    assertExecuteCount(1);
+  }
+
+}
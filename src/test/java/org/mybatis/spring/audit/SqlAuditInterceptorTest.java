@@ -0,0 +1,242 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockDataSource;
+import com.mockrunner.mock.jdbc.MockResultSet;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.TestMapper;
+import org.springframework.core.io.ClassPathResource;
+
+class SqlAuditInterceptorTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testStatementsAreAudited() throws Exception {
+    SqlAuditInterceptor audit = new SqlAuditInterceptor();
+    audit.setDirectory(directory);
+    audit.afterPropertiesSet();
+
+    MockDataSource dataSource = new MockDataSource();
+    dataSource.setupConnection(new MockConnection());
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setMapperLocations(new ClassPathResource("org/mybatis/spring/TestMapper.xml"));
+    factoryBean.setPlugins(audit);
+    SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+    SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+
+    sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+    sqlSessionTemplate.selectList("org.mybatis.spring.TestMapper.findTest");
+    audit.destroy();
+
+    List<AuditEntry> entries = read(directory);
+    assertThat(entries).extracting(AuditEntry::getStatementId).containsExactly(
+        "org.mybatis.spring.TestMapper.insertTest", "org.mybatis.spring.TestMapper.findTest");
+    assertThat(entries.get(0).getParameters()).containsExactly("test1");
+    assertThat(entries.get(0).isFailed()).isFalse();
+    assertThat(entries.get(0).getDurationNanos()).isPositive();
+    assertThat(entries.get(1).getParameters()).isEmpty();
+    assertThat(audit.getDroppedEntries()).isZero();
+  }
+
+  @Test
+  void testCacheHitsAreNotAuditedAndBatchedUpdatesAreFlagged() throws Exception {
+    SqlAuditInterceptor audit = new SqlAuditInterceptor();
+    audit.setDirectory(directory);
+    audit.afterPropertiesSet();
+
+    SqlSessionFactory sqlSessionFactory = sqlSessionFactory(audit);
+    try (SqlSession session = sqlSessionFactory.openSession()) {
+      session.selectList("org.mybatis.spring.TestMapper.findTest");
+      session.selectList("org.mybatis.spring.TestMapper.findTest");
+    }
+    try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      session.getMapper(TestMapper.class).insertTest("test1");
+      session.flushStatements();
+    }
+    audit.destroy();
+
+    List<AuditEntry> entries = read(directory);
+    assertThat(entries).extracting(AuditEntry::getStatementId).containsExactly(
+        "org.mybatis.spring.TestMapper.findTest", "org.mybatis.spring.TestMapper.insertTest");
+    assertThat(entries.get(0).isBatched()).isFalse();
+    assertThat(entries.get(1).isBatched()).isTrue();
+    assertThat(entries.get(1).getParameters()).containsExactly("test1");
+  }
+
+  @Test
+  void testNestedSelectsAreAuditedOnTheirOwn() throws Exception {
+    SqlAuditInterceptor audit = new SqlAuditInterceptor();
+    audit.setDirectory(directory);
+    audit.afterPropertiesSet();
+
+    MockConnection connection = new MockConnection();
+    MockResultSet parents = new MockResultSet("parents");
+    parents.addColumn("id", new Object[] { 1 });
+    parents.addColumn("child_id", new Object[] { 7 });
+    connection.getPreparedStatementResultSetHandler().prepareResultSet("FROM parent", parents);
+    MockResultSet children = new MockResultSet("children");
+    children.addColumn("name", new Object[] { "child" });
+    connection.getPreparedStatementResultSetHandler().prepareResultSet("FROM child", children);
+    MockDataSource dataSource = new MockDataSource();
+    dataSource.setupConnection(connection);
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setMapperLocations(new ClassPathResource("org/mybatis/spring/audit/AuditNestedMapper.xml"));
+    factoryBean.setPlugins(audit);
+    SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(factoryBean.getObject());
+
+    Map<String, Object> parent = sqlSessionTemplate.selectOne("org.mybatis.spring.audit.AuditNestedMapper.findParent",
+        1);
+    audit.destroy();
+
+    assertThat(parent).containsKey("child");
+    List<AuditEntry> entries = read(directory);
+    assertThat(entries).extracting(AuditEntry::getStatementId).containsExactly(
+        "org.mybatis.spring.audit.AuditNestedMapper.findChild",
+        "org.mybatis.spring.audit.AuditNestedMapper.findParent");
+    assertThat(entries.get(0).getParameters()).containsExactly(7L);
+    assertThat(entries.get(1).getParameters()).containsExactly(1L);
+    assertThat(audit.getDroppedEntries()).isZero();
+  }
+
+  @Test
+  void testAuditFailuresDoNotFailTheCall() throws Exception {
+    // no directory: the writer cannot be started
+    SqlAuditInterceptor audit = new SqlAuditInterceptor();
+
+    SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory(audit));
+    assertThat(sqlSessionTemplate.<Object> selectList("org.mybatis.spring.TestMapper.findTest")).isEmpty();
+    sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+
+    assertThat(audit.getDroppedEntries()).isEqualTo(2);
+  }
+
+  @Test
+  void testWriterRetriesAfterAFileCannotBeOpened() throws Exception {
+    // a directory in place of the first file of the ring
+    Files.createDirectory(directory.resolve(AuditLogFormat.fileName("retry", 0)));
+    AuditLogWriter writer = new AuditLogWriter(directory, "retry", 4096, 2, 16);
+    AuditEntryEncoder encoder = new AuditEntryEncoder(256);
+    encoder.begin(1L, 0L, (byte) 0, "dropped", 0);
+    writer.offer(encoder.end());
+    Thread.sleep(1_100L);
+    encoder.begin(2L, 0L, (byte) 0, "written", 0);
+    writer.offer(encoder.end());
+    writer.close();
+
+    List<AuditEntry> entries = new ArrayList<>();
+    AuditLogReader.read(directory, "retry", entries::add);
+    assertThat(entries).extracting(AuditEntry::getStatementId).containsExactly("written");
+    assertThat(writer.getDroppedEntries()).isEqualTo(1);
+  }
+
+  @Test
+  void testValueEncoding() throws Exception {
+    AuditLogWriter writer = new AuditLogWriter(directory, "values", 4096, 1, 16);
+    AuditEntryEncoder encoder = new AuditEntryEncoder(5);
+    encoder.begin(1_000L, 2_000L, AuditLogFormat.FLAG_FAILED, "statement", 8);
+    encoder.writeValue(null);
+    encoder.writeValue(42);
+    encoder.writeValue(-7L);
+    encoder.writeValue(1.5d);
+    encoder.writeValue(Boolean.TRUE);
+    encoder.writeValue("truncated");
+    encoder.writeValue(new byte[3]);
+    encoder.writeValue(new Date(123_456L));
+    writer.offer(encoder.end());
+    writer.close();
+
+    List<AuditEntry> entries = new ArrayList<>();
+    AuditLogReader.read(directory, "values", entries::add);
+    assertThat(entries).hasSize(1);
+    AuditEntry entry = entries.get(0);
+    assertThat(entry.getTimestamp()).isEqualTo(Instant.ofEpochMilli(1_000L));
+    assertThat(entry.getDurationNanos()).isEqualTo(2_000L);
+    assertThat(entry.isFailed()).isTrue();
+    assertThat(entry.getStatementId()).isEqualTo("state");
+    assertThat(entry.getParameters()).containsExactly(null, 42L, -7L, 1.5d, true, "trunc", "<3 bytes>",
+        Instant.ofEpochMilli(123_456L));
+  }
+
+  @Test
+  void testRingKeepsTheNewestEntries() throws Exception {
+    AuditLogWriter writer = new AuditLogWriter(directory, "ring", 256, 3, 1024);
+    AuditEntryEncoder encoder = new AuditEntryEncoder(256);
+    for (long i = 0; i < 100; i++) {
+      encoder.begin(i, 0L, (byte) 0, "statement", 1);
+      encoder.writeValue(i);
+      writer.offer(encoder.end());
+    }
+    writer.close();
+
+    List<AuditEntry> entries = new ArrayList<>();
+    AuditLogReader.read(directory, "ring", entries::add);
+    List<Object> values = new ArrayList<>();
+    entries.forEach(entry -> values.add(entry.getParameters().get(0)));
+    assertThat(values).isNotEmpty().hasSizeLessThan(100).endsWith(99L).isSorted();
+    assertThat(writer.getDroppedEntries()).isZero();
+
+    // a new writer continues the ring after the newest file
+    writer = new AuditLogWriter(directory, "ring", 256, 3, 1024);
+    encoder.begin(100L, 0L, (byte) 0, "statement", 1);
+    encoder.writeValue(100L);
+    writer.offer(encoder.end());
+    writer.close();
+
+    List<AuditEntry> reopened = new ArrayList<>();
+    AuditLogReader.read(directory, "ring", reopened::add);
+    assertThat(reopened.get(reopened.size() - 1).getParameters()).containsExactly(100L);
+    assertThat(reopened.get(reopened.size() - 2).getParameters()).containsExactly(99L);
+  }
+
+  private static SqlSessionFactory sqlSessionFactory(SqlAuditInterceptor audit) throws Exception {
+    MockDataSource dataSource = new MockDataSource();
+    dataSource.setupConnection(new MockConnection());
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setMapperLocations(new ClassPathResource("org/mybatis/spring/TestMapper.xml"));
+    factoryBean.setPlugins(audit);
+    return factoryBean.getObject();
+  }
+
+  private static List<AuditEntry> read(Path directory) throws Exception {
+    List<AuditEntry> entries = new ArrayList<>();
+    AuditLogReader.read(directory, SqlAuditInterceptor.DEFAULT_FILE_PREFIX, entries::add);
+    return entries;
+  }
+
+}
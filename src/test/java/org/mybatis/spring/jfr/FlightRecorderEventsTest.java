@@ -0,0 +1,191 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jfr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.AbstractMyBatisSpringTest;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.TestMapper;
+import org.mybatis.spring.batch.MyBatisBatchItemWriter;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class FlightRecorderEventsTest extends AbstractMyBatisSpringTest {
+
+  private Recording recording;
+
+  @BeforeEach
+  void startRecording() {
+    assumeTrue(FlightRecorder.isAvailable(), "Flight Recorder is not available");
+    recording = new Recording();
+    for (String event : Arrays.asList("org.mybatis.SqlSession", "org.mybatis.Statement", "org.mybatis.SqlSessionCommit",
+        "org.mybatis.BatchFlush")) {
+      recording.enable(event).withThreshold(Duration.ZERO);
+    }
+  }
+
+  @AfterEach
+  void closeRecording() {
+    if (recording != null) {
+      recording.close();
+    }
+  }
+
+  @Test
+  void testNothingRecordedWhenDisabled() throws Exception {
+    assertThat(FlightRecorderEvents.statementStarted()).isNull();
+    assertThat(FlightRecorderEvents.sessionOpened(ExecutorType.SIMPLE)).isNull();
+    // a null recording is ignored
+    FlightRecorderEvents.statementEnded(null, "any", 1);
+    FlightRecorderEvents.sessionClosed(null, false);
+
+    connection.close();
+  }
+
+  @Test
+  void testStatementAndSessionOutsideTransaction() throws IOException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+
+    recording.start();
+    template.selectList("org.mybatis.spring.TestMapper.findTest");
+    List<RecordedEvent> events = stop();
+
+    RecordedEvent statement = single(events, "org.mybatis.Statement");
+    assertThat(statement.getString("statementId")).isEqualTo("org.mybatis.spring.TestMapper.findTest");
+    assertThat(statement.getLong("rows")).isEqualTo(1);
+    assertThat(statement.getString("failure")).isNull();
+
+    RecordedEvent session = single(events, "org.mybatis.SqlSession");
+    assertThat(session.getString("executorType")).isEqualTo("SIMPLE");
+    assertThat(session.getBoolean("managed")).isFalse();
+    assertThat(session.getInt("reuses")).isEqualTo(0);
+    assertThat(session.getDuration()).isGreaterThanOrEqualTo(statement.getDuration());
+
+    assertThat(named(events, "org.mybatis.SqlSessionCommit")).isEmpty();
+  }
+
+  @Test
+  void testSessionReusedInTransaction() throws IOException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+
+    recording.start();
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    template.getMapper(TestMapper.class).findTest();
+    template.getMapper(TestMapper.class).insertTest("test");
+    txManager.commit(status);
+    List<RecordedEvent> events = stop();
+
+    assertThat(named(events, "org.mybatis.Statement")).extracting(event -> event.getString("statementId"))
+        .containsExactly("org.mybatis.spring.TestMapper.findTest", "org.mybatis.spring.TestMapper.insertTest");
+
+    RecordedEvent session = single(events, "org.mybatis.SqlSession");
+    assertThat(session.getBoolean("managed")).isTrue();
+    assertThat(session.getInt("reuses")).isEqualTo(1);
+
+    assertThat(single(events, "org.mybatis.SqlSessionCommit").getString("executorType")).isEqualTo("SIMPLE");
+  }
+
+  @Test
+  void testFailedStatement() throws IOException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    connection.getPreparedStatementResultSetHandler().prepareThrowsSQLException("SELECT 'fail'");
+
+    recording.start();
+    try {
+      template.selectOne("org.mybatis.spring.TestMapper.findFail");
+    } catch (RuntimeException expected) {
+      // recorded
+    }
+    List<RecordedEvent> events = stop();
+
+    RecordedEvent statement = single(events, "org.mybatis.Statement");
+    assertThat(statement.getString("statementId")).isEqualTo("org.mybatis.spring.TestMapper.findFail");
+    assertThat(statement.getLong("rows")).isEqualTo(-1);
+    assertThat(statement.getString("failure")).isEqualTo("org.apache.ibatis.exceptions.PersistenceException");
+  }
+
+  @Test
+  void testBatchFlush() throws Exception {
+    BatchResult batchResult = new BatchResult(null, null);
+    batchResult.setUpdateCounts(new int[] { 1, 2 });
+    SqlSessionTemplate template = mock(SqlSessionTemplate.class);
+    when(template.getExecutorType()).thenReturn(ExecutorType.BATCH);
+    when(template.flushStatements()).thenReturn(Collections.singletonList(batchResult));
+
+    MyBatisBatchItemWriter<String> writer = new MyBatisBatchItemWriter<>();
+    writer.setSqlSessionTemplate(template);
+    writer.setStatementId("org.mybatis.spring.TestMapper.insertTest");
+    writer.afterPropertiesSet();
+
+    recording.start();
+    writer.write(Arrays.asList("a", "b"));
+    List<RecordedEvent> events = stop();
+
+    RecordedEvent flush = single(events, "org.mybatis.BatchFlush");
+    assertThat(flush.getString("statementId")).isEqualTo("org.mybatis.spring.TestMapper.insertTest");
+    assertThat(flush.getInt("items")).isEqualTo(2);
+    assertThat(flush.getInt("batches")).isEqualTo(1);
+    assertThat(flush.getLong("rows")).isEqualTo(3);
+
+    connection.close();
+  }
+
+  private List<RecordedEvent> stop() throws IOException {
+    recording.stop();
+    Path file = Files.createTempFile("mybatis-spring", ".jfr");
+    try {
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+    return events.stream().filter(event -> event.getEventType().getName().equals(name))
+        .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime())).collect(Collectors.toList());
+  }
+
+  private static RecordedEvent single(List<RecordedEvent> events, String name) {
+    List<RecordedEvent> named = named(events, name);
+    assertThat(named).as(name).hasSize(1);
+    return named.get(0);
+  }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockDataSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.MyBatisSystemException;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionScope;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.TestMapper;
+import org.mybatis.spring.metrics.SqlSessionMetrics;
+import org.springframework.core.io.ClassPathResource;
+
+class SqlSessionFactoryStatisticsTest {
+
+  @Test
+  void testSessionsAndStatementsAreCounted() throws Exception {
+    SqlSessionFactory sqlSessionFactory = sqlSessionFactory("statisticsCounts");
+    try (SqlSessionFactoryStatistics statistics = new SqlSessionFactoryStatistics(sqlSessionFactory)) {
+      assertThat(statistics.getFactoryName()).isEqualTo("statisticsCounts");
+      assertThat(statistics.getMappedStatementCount()).isEqualTo(5);
+
+      SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+      sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+      try (SqlSessionScope scope = SqlSessionScope.open(sqlSessionFactory)) {
+        sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test2");
+        assertThat(statistics.getOpenManagedSessions()).isEqualTo(1);
+      }
+      assertThatThrownBy(() -> sqlSessionTemplate.insert("org.mybatis.spring.TestMapper.missing"))
+          .isInstanceOf(MyBatisSystemException.class);
+
+      assertThat(statistics.getOpenManagedSessions()).isZero();
+      assertThat(statistics.getSessionsOpenedByExecutorType()).containsEntry("SIMPLE", 3L).containsEntry("BATCH", 0L);
+      assertThat(statistics.getStatementsExecuted()).isEqualTo(3);
+      assertThat(statistics.getStatementsFailed()).isEqualTo(1);
+
+      statistics.resetStatistics();
+      assertThat(statistics.getSessionsOpenedByExecutorType()).containsEntry("SIMPLE", 0L);
+      assertThat(statistics.getStatementsExecuted()).isZero();
+    }
+  }
+
+  @Test
+  void testPendingBatchStatements() throws Exception {
+    SqlSessionFactory sqlSessionFactory = sqlSessionFactory("statisticsBatch");
+    try (SqlSessionFactoryStatistics statistics = new SqlSessionFactoryStatistics(sqlSessionFactory)) {
+      SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+      try (SqlSessionScope scope = SqlSessionScope.open(sqlSessionFactory, ExecutorType.BATCH)) {
+        sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+        sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test2");
+        assertThat(statistics.getPendingBatchStatements()).isEqualTo(2);
+
+        sqlSessionTemplate.flushStatements();
+        assertThat(statistics.getPendingBatchStatements()).isZero();
+
+        sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test3");
+        assertThat(statistics.getPendingBatchStatements()).isEqualTo(1);
+      }
+      assertThat(statistics.getPendingBatchStatements()).isZero();
+      assertThat(statistics.getSessionsOpenedByExecutorType()).containsEntry("BATCH", 1L);
+    }
+  }
+
+  @Test
+  void testExecutorsAreNoLongerWrappedOnceClosed() throws Exception {
+    SqlSessionFactory sqlSessionFactory = sqlSessionFactory("statisticsClosed");
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    SqlSessionFactoryStatistics statistics = new SqlSessionFactoryStatistics(sqlSessionFactory);
+    assertThat(Proxy.isProxyClass(configuration.newExecutor(null, ExecutorType.BATCH).getClass())).isTrue();
+
+    statistics.close();
+    assertThat(Proxy.isProxyClass(configuration.newExecutor(null, ExecutorType.BATCH).getClass())).isFalse();
+  }
+
+  @Test
+  void testCacheStatistics() throws Exception {
+    SqlSessionFactory sqlSessionFactory = sqlSessionFactory("statisticsCache");
+    String namespace = "org.mybatis.spring.jmx.CachedMapper";
+    try (SqlSessionFactoryStatistics statistics = new SqlSessionFactoryStatistics(sqlSessionFactory)) {
+      assertThat(statistics.getCacheHitRatios()).containsOnlyKeys(namespace).containsEntry(namespace, -1d);
+
+      SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+      sqlSessionTemplate.selectList(namespace + ".findName", 1);
+      sqlSessionTemplate.selectList(namespace + ".findName", 1);
+      sqlSessionTemplate.selectList(namespace + ".findName", 2);
+      sqlSessionTemplate.selectList(namespace + ".findName", 2);
+      assertThat(statistics.getCacheHitRatios()).containsEntry(namespace, 0.5d);
+      assertThat(statistics.getCacheSizes()).containsEntry(namespace, 2);
+
+      statistics.resetStatistics();
+      assertThat(statistics.getCacheHitRatios()).containsEntry(namespace, -1d);
+      sqlSessionTemplate.selectList(namespace + ".findName", 1);
+      assertThat(statistics.getCacheHitRatios()).containsEntry(namespace, 1d);
+
+      statistics.clearCache(namespace);
+      assertThat(statistics.getCacheSizes()).containsEntry(namespace, 0);
+      sqlSessionTemplate.selectList(namespace + ".findName", 1);
+      assertThat(statistics.getCacheHitRatios()).containsEntry(namespace, 0.5d);
+      assertThatThrownBy(() -> statistics.clearCache("org.mybatis.spring.Missing"))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+  }
+
+  @Test
+  void testWithoutInterceptor() throws Exception {
+    SqlSessionFactoryBean factoryBean = factoryBean("statisticsWithoutInterceptor");
+    SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+    try (SqlSessionFactoryStatistics statistics = new SqlSessionFactoryStatistics(sqlSessionFactory)) {
+      SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+      sqlSessionTemplate.selectList("org.mybatis.spring.jmx.CachedMapper.findName", 1);
+
+      assertThat(sqlSessionFactory.getConfiguration().getInterceptors()).isEmpty();
+      assertThat(statistics.getCacheHitRatios()).isEmpty();
+      assertThat(statistics.getCacheSizes()).containsEntry("org.mybatis.spring.jmx.CachedMapper", 1);
+      assertThat(statistics.getPendingBatchStatements()).isZero();
+      assertThat(statistics.getStatementsExecuted()).isEqualTo(1);
+    } finally {
+      factoryBean.destroy();
+    }
+  }
+
+  @Test
+  void testMBeanIsRegisteredByTheFactoryBean() throws Exception {
+    SqlSessionFactoryBean factoryBean = factoryBean("statisticsBean");
+    factoryBean.setJmxEnabled(true);
+    factoryBean.afterPropertiesSet();
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.mybatis.spring:type=SqlSessionFactory,name=\"statisticsBean\"");
+    try {
+      assertThat(server.isRegistered(name)).isTrue();
+      assertThat(server.getAttribute(name, "MappedStatementCount")).isEqualTo(5);
+      assertThat(server.getAttribute(name, "OpenManagedSessions")).isEqualTo(0L);
+      assertThat(factoryBean.getObject().getConfiguration().getInterceptors()).hasSize(1);
+      server.invoke(name, "resetStatistics", new Object[0], new String[0]);
+    } finally {
+      factoryBean.destroy();
+    }
+    assertThat(server.isRegistered(name)).isFalse();
+  }
+
+  private static SqlSessionFactory sqlSessionFactory(String name) throws Exception {
+    Configuration configuration = new Configuration();
+    SqlSessionFactoryStatistics.addInterceptor(configuration);
+    SqlSessionFactoryStatistics.addInterceptor(configuration);
+    SqlSessionFactoryBean factoryBean = factoryBean(name);
+    factoryBean.setConfiguration(configuration);
+    SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+    assertThat(configuration.getInterceptors()).hasSize(1);
+    SqlSessionMetrics.setFactoryName(sqlSessionFactory, name);
+    return sqlSessionFactory;
+  }
+
+  private static SqlSessionFactoryBean factoryBean(String name) {
+    MockDataSource dataSource = new MockDataSource();
+    dataSource.setupConnection(new MockConnection());
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setBeanName(name);
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setMapperLocations(new ClassPathResource("org/mybatis/spring/TestMapper.xml"),
+        new ClassPathResource("org/mybatis/spring/jmx/CachedMapper.xml"));
+    return factoryBean;
+  }
+
+}
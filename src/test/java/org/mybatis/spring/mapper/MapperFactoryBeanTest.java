@@ -31,6 +31,7 @@ import org.mybatis.spring.AbstractMyBatisSpringTest;
 import org.mybatis.spring.MyBatisSystemException;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.TestDefaultMethodMapper;
 import org.mybatis.spring.TestMapper;
 import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.transaction.TransactionStatus;
@@ -196,6 +197,72 @@ class MapperFactoryBeanTest extends AbstractMyBatisSpringTest {
     }
   }
 
+  @Test
+  void testDirectMapper() throws Exception {
+    MapperFactoryBean<TestMapper> factoryBean = new MapperFactoryBean<>(TestMapper.class);
+    factoryBean.setSqlSessionTemplate(sqlSessionTemplate);
+    factoryBean.setDirectMapper(true);
+    factoryBean.afterPropertiesSet();
+
+    TestMapper mapper = factoryBean.getObject();
+    assertThat(mapper).isSameAs(sqlSessionTemplate.getDirectMapper(TestMapper.class));
+    assertThat(mapper.findTest()).isEqualTo(1);
+
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testDirectMapperWithTx() throws Exception {
+    TestMapper mapper = sqlSessionTemplate.getDirectMapper(TestMapper.class);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    mapper.findTest();
+    mapper.findTest();
+    txManager.commit(status);
+
+    assertCommit();
+    assertSingleConnection();
+    // the second call hits the local cache of the transactional session
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testDirectMapperDefaultMethod() throws Exception {
+    MapperFactoryBean<TestDefaultMethodMapper> factoryBean = new MapperFactoryBean<>(TestDefaultMethodMapper.class);
+    factoryBean.setSqlSessionTemplate(sqlSessionTemplate);
+    factoryBean.setDirectMapper(true);
+    factoryBean.afterPropertiesSet();
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    // the default method calls back into the direct mapper
+    assertThat(factoryBean.getObject().findTwice()).isEqualTo(2);
+    txManager.commit(status);
+
+    assertCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  void testDirectMapperUnknownType() throws Exception {
+    try {
+      assertThrows(org.apache.ibatis.binding.BindingException.class,
+          () -> sqlSessionTemplate.getDirectMapper(Runnable.class));
+    } finally {
+      // connection not used; force close to avoid failing in validateConnectionClosed()
+      connection.close();
+    }
+  }
+
+  @Test
+  void testMapperIsCached() throws Exception {
+    assertThat(sqlSessionTemplate.getMapper(TestMapper.class)).isSameAs(sqlSessionTemplate.getMapper(TestMapper.class));
+    // connection not used; force close to avoid failing in validateConnectionClosed()
+    connection.close();
+  }
+
   private void find() throws Exception {
     find(MapperFactoryBeanTest.sqlSessionTemplate, true);
   }
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.AbstractMyBatisSpringTest;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.SqlSessionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SqlSessionMetricsTest extends AbstractMyBatisSpringTest {
+
+  private static final String FACTORY = "SqlSessionFactoryBean";
+
+  private final EventRecorder recorder = new EventRecorder();
+
+  private SqlSessionTemplate sqlSessionTemplate;
+
+  @BeforeEach
+  void setupRecorder() {
+    SqlSessionMetrics.setRecorder(recorder);
+    sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+  }
+
+  @AfterEach
+  void removeRecorder() {
+    SqlSessionMetrics.setRecorder(null);
+  }
+
+  @Test
+  void shouldRecordNonTransactionalCall() {
+    sqlSessionTemplate.selectOne("org.mybatis.spring.TestMapper.findTest");
+
+    assertThat(recorder.events).containsExactly("opened " + FACTORY + " SIMPLE false",
+        "connection " + FACTORY + " false", "closed " + FACTORY + " false",
+        "statement " + FACTORY + " SIMPLE org.mybatis.spring.TestMapper.findTest false");
+    assertThat(SqlSessionMetrics.getFactoryName(sqlSessionFactory)).isEqualTo(FACTORY);
+  }
+
+  @Test
+  void shouldRecordReusedSessions() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    SqlSession first = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    SqlSession second = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    first.selectOne("org.mybatis.spring.TestMapper.findTest");
+    SqlSessionUtils.closeSqlSession(second, sqlSessionFactory);
+    SqlSessionUtils.closeSqlSession(first, sqlSessionFactory);
+    txManager.commit(status);
+
+    assertThat(recorder.events).containsExactly("opened " + FACTORY + " SIMPLE true",
+        "reused " + FACTORY + " SIMPLE 2", "connection " + FACTORY + " true", "closed " + FACTORY + " true");
+    assertSingleConnection();
+  }
+
+  @Test
+  void shouldRecordFailedStatement() throws Exception {
+    assertThrows(DataAccessException.class,
+        () -> sqlSessionTemplate.selectOne("org.mybatis.spring.TestMapper.noSuchStatement"));
+
+    assertThat(recorder.events)
+        .endsWith("statement " + FACTORY + " SIMPLE org.mybatis.spring.TestMapper.noSuchStatement true");
+    connection.close();
+  }
+
+  @Test
+  void shouldNotRecordWithoutRecorder() {
+    SqlSessionMetrics.setRecorder(null);
+    assertThat(SqlSessionMetrics.isEnabled()).isFalse();
+
+    sqlSessionTemplate.selectOne("org.mybatis.spring.TestMapper.findTest");
+
+    assertThat(recorder.events).isEmpty();
+  }
+
+  @Test
+  void shouldPublishToMicrometer() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    SqlSessionMetrics.setRecorder(new MicrometerSqlSessionMetricsRecorder(registry));
+
+    sqlSessionTemplate.selectOne("org.mybatis.spring.TestMapper.findTest");
+    sqlSessionTemplate.selectOne("org.mybatis.spring.TestMapper.findTest");
+
+    assertThat(registry.get("mybatis.statement").tag("factory", FACTORY)
+        .tag("statement", "org.mybatis.spring.TestMapper.findTest").tag("outcome", "success").timer().count())
+            .isEqualTo(2);
+    assertThat(registry.get("mybatis.session.opened").tag("managed", "false").counter().count()).isEqualTo(2);
+    assertThat(registry.get("mybatis.connection.held").tag("transactional", "false").timer().count()).isEqualTo(2);
+    assertThat(registry.getMeters()).hasSize(4);
+  }
+
+  @Test
+  void shouldKeepFactoryNameUntilRemoved() throws Exception {
+    SqlSessionMetrics.setFactoryName(sqlSessionFactory, "named");
+    try {
+      System.gc();
+      assertThat(SqlSessionMetrics.getFactoryName(sqlSessionFactory)).isEqualTo("named");
+      SqlSessionMetrics.removeFactoryName(sqlSessionFactory);
+      // the id of the environment, which is also the default name of the test factory
+      assertThat(SqlSessionMetrics.getFactoryName(sqlSessionFactory)).isEqualTo(FACTORY);
+    } finally {
+      SqlSessionMetrics.setFactoryName(sqlSessionFactory, FACTORY);
+    }
+    connection.close();
+  }
+
+  private static final class EventRecorder implements SqlSessionMetricsRecorder {
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void sessionOpened(String factoryName, ExecutorType executorType, boolean managed) {
+      events.add("opened " + factoryName + " " + executorType + " " + managed);
+    }
+
+    @Override
+    public void sessionReused(String factoryName, ExecutorType executorType, int references) {
+      events.add("reused " + factoryName + " " + executorType + " " + references);
+    }
+
+    @Override
+    public void sessionClosed(String factoryName, boolean managed) {
+      events.add("closed " + factoryName + " " + managed);
+    }
+
+    @Override
+    public void statementExecuted(String factoryName, ExecutorType executorType, String statementId, long nanos,
+        boolean failed) {
+      events.add("statement " + factoryName + " " + executorType + " " + statementId + " " + failed);
+    }
+
+    @Override
+    public void connectionReleased(String factoryName, long nanos, boolean transactional) {
+      events.add("connection " + factoryName + " " + transactional);
+    }
+  }
+
+}
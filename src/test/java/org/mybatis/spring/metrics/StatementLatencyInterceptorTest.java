@@ -0,0 +1,128 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockDataSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.TestMapper;
+import org.springframework.core.io.ClassPathResource;
+
+class StatementLatencyInterceptorTest {
+
+  private static final String INSERT = "org.mybatis.spring.TestMapper.insertTest";
+
+  @Test
+  void testBuckets() {
+    for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE }) {
+      int index = LatencyHistogram.index(value);
+      assertThat(index).isBetween(0, LatencyHistogram.BUCKETS - 1);
+      long highest = LatencyHistogram.highestEquivalentValue(index);
+      assertThat(highest).isGreaterThanOrEqualTo(value);
+      assertThat(highest - value).isLessThanOrEqualTo(value / 16);
+      if (index > 0) {
+        assertThat(LatencyHistogram.highestEquivalentValue(index - 1)).isLessThan(value);
+      }
+    }
+  }
+
+  @Test
+  void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+
+    LatencySnapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getCount()).isEqualTo(1000);
+    assertThat(snapshot.getMaxNanos()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(1000));
+    assertThat(snapshot.getValueAtPercentile(50)).isBetween(500_000L, 500_000L + 500_000L / 16);
+    assertThat(snapshot.getValueAtPercentile(99)).isBetween(990_000L, 990_000L + 990_000L / 16);
+    assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(snapshot.getMaxNanos());
+    assertThat(snapshot.getMeanNanos()).isEqualTo(500_500.0);
+
+    assertThat(histogram.snapshotAndReset().getCount()).isEqualTo(1000);
+    assertThat(histogram.snapshot().getCount()).isZero();
+    assertThat(histogram.snapshot().getValueAtPercentile(99)).isZero();
+  }
+
+  @Test
+  void testStatementsAreRecorded() throws Exception {
+    StatementLatencyInterceptor latencies = new StatementLatencyInterceptor();
+    SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory(latencies));
+
+    sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test1");
+    sqlSessionTemplate.getMapper(TestMapper.class).insertTest("test2");
+
+    assertThat(latencies.getSnapshot(INSERT).getCount()).isEqualTo(2);
+    assertThat(latencies.getSnapshots()).containsOnlyKeys(INSERT);
+    assertThat(latencies.snapshotAndReset().get(INSERT).getCount()).isEqualTo(2);
+    assertThat(latencies.getSnapshot(INSERT).getCount()).isZero();
+    assertThat(latencies.getSnapshot("org.mybatis.spring.TestMapper.findTest")).isNull();
+  }
+
+  @Test
+  void testSlowStatementIsReportedWithItsBoundSql() throws Throwable {
+    StatementLatencyInterceptor latencies = new StatementLatencyInterceptor();
+    latencies.setSlowStatementThresholdMillis(1);
+    List<BoundSql> slow = new ArrayList<>();
+    latencies.setSlowStatementListener((ms, boundSql, nanos, failed) -> {
+      assertThat(nanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+      slow.add(boundSql);
+    });
+    MappedStatement ms = sqlSessionFactory(latencies).getConfiguration().getMappedStatement(INSERT);
+    SlowExecutor executor = new SlowExecutor();
+
+    latencies.intercept(new Invocation(executor, SlowExecutor.class.getMethod("update", MappedStatement.class,
+        Object.class), new Object[] { ms, "test1" }));
+
+    assertThat(slow).hasSize(1);
+    assertThat(slow.get(0).getSql()).contains("INSERT");
+    assertThat(slow.get(0).getParameterObject()).isEqualTo("test1");
+    assertThat(latencies.getSnapshot(INSERT).getMaxNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private static SqlSessionFactory sqlSessionFactory(StatementLatencyInterceptor latencies) throws Exception {
+    MockDataSource dataSource = new MockDataSource();
+    dataSource.setupConnection(new MockConnection());
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setMapperLocations(new ClassPathResource("org/mybatis/spring/TestMapper.xml"));
+    factoryBean.setPlugins(latencies);
+    return factoryBean.getObject();
+  }
+
+  public static class SlowExecutor {
+
+    public int update(MappedStatement ms, Object parameter) throws InterruptedException {
+      Thread.sleep(5);
+      return 1;
+    }
+  }
+
+}
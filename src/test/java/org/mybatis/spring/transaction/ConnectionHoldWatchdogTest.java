@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.AbstractMyBatisSpringTest;
+
+class ConnectionHoldWatchdogTest extends AbstractMyBatisSpringTest {
+
+  private ConnectionHoldWatchdog watchdog;
+
+  @BeforeEach
+  void startWatchdog() {
+    watchdog = new ConnectionHoldWatchdog();
+    watchdog.setThresholdMillis(1);
+    // scans are run by the tests
+    watchdog.setScanIntervalMillis(60_000);
+    watchdog.afterPropertiesSet();
+  }
+
+  @AfterEach
+  void stopWatchdog() {
+    watchdog.destroy();
+  }
+
+  @Test
+  void shouldReportConnectionHeldLongerThanThreshold() throws Exception {
+    SpringManagedTransaction transaction = new SpringManagedTransaction(dataSource);
+    transaction.getConnection();
+    assertThat(watchdog.getHeldConnections()).isEqualTo(1);
+
+    Thread.sleep(10);
+    assertThat(watchdog.scan()).isEqualTo(1);
+    assertThat(watchdog.scan()).as("should report a connection once").isEqualTo(0);
+
+    transaction.close();
+    assertThat(watchdog.getHeldConnections()).isEqualTo(0);
+  }
+
+  @Test
+  void shouldNotReportReleasedConnection() throws Exception {
+    SpringManagedTransaction transaction = new SpringManagedTransaction(dataSource);
+    transaction.getConnection();
+    transaction.close();
+
+    Thread.sleep(10);
+    assertThat(watchdog.scan()).isEqualTo(0);
+  }
+
+  @Test
+  void shouldNotReportBeforeThreshold() throws Exception {
+    watchdog.destroy();
+    watchdog = new ConnectionHoldWatchdog();
+    watchdog.setStackTraceSampling(0);
+    watchdog.afterPropertiesSet();
+
+    SpringManagedTransaction transaction = new SpringManagedTransaction(dataSource);
+    transaction.getConnection();
+    assertThat(watchdog.scan()).isEqualTo(0);
+    transaction.close();
+  }
+
+  @Test
+  void shouldStopTrackingWhenDestroyed() throws Exception {
+    watchdog.destroy();
+
+    SpringManagedTransaction transaction = new SpringManagedTransaction(dataSource);
+    transaction.getConnection();
+    assertThat(ConnectionHoldWatchdog.active()).isNull();
+    assertThat(watchdog.getHeldConnections()).isEqualTo(0);
+    transaction.close();
+  }
+
+  @Test
+  void shouldRestartWhenStartedTwice() throws Exception {
+    watchdog.afterPropertiesSet();
+    assertThat(ConnectionHoldWatchdog.active()).isSameAs(watchdog);
+    // the scanner of the first start is shut down
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (scannerThreads() > 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(scannerThreads()).isEqualTo(1);
+    connection.close();
+  }
+
+  private static long scannerThreads() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().equals("mybatis-connection-watchdog")).count();
+  }
+
+  @Test
+  void shouldRejectInvalidThreshold() throws Exception {
+    ConnectionHoldWatchdog invalid = new ConnectionHoldWatchdog();
+    invalid.setThresholdMillis(0);
+    assertThrows(IllegalArgumentException.class, invalid::afterPropertiesSet);
+    connection.close();
+  }
+
+}
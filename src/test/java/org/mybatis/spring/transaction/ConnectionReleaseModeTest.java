@@ -0,0 +1,153 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.AbstractMyBatisSpringTest;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionScope;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.TestMapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+class ConnectionReleaseModeTest extends AbstractMyBatisSpringTest {
+
+  private SpringManagedTransactionFactory transactionFactory;
+
+  @BeforeEach
+  void setupReleaseMode() throws SQLException {
+    transactionFactory = new SpringManagedTransactionFactory();
+    transactionFactory.setConnectionReleaseMode(ConnectionReleaseMode.AFTER_STATEMENT);
+    connection.setAutoCommit(true);
+    connectionTwo.setAutoCommit(true);
+  }
+
+  @Test
+  void shouldReleaseConnectionAfterStatement() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    PreparedStatement statement = transaction.getConnection().prepareStatement("SELECT 1");
+    statement.executeQuery();
+    statement.close();
+
+    assertThat(connection.isClosed()).as("should release the connection after its statement").isTrue();
+
+    transaction.getConnection().prepareStatement("SELECT 1").close();
+    transaction.close();
+
+    assertThat(connectionTwo.isClosed()).as("should get a connection for the next statement").isTrue();
+  }
+
+  @Test
+  void shouldKeepConnectionWhileStatementsAreOpen() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    PreparedStatement first = transaction.getConnection().prepareStatement("SELECT 1");
+    PreparedStatement second = transaction.getConnection().prepareStatement("SELECT 1");
+
+    first.close();
+    assertThat(connection.isClosed()).isFalse();
+
+    second.close();
+    second.close();
+    assertThat(connection.isClosed()).isTrue();
+
+    transaction.close();
+    assertSingleConnection();
+  }
+
+  @Test
+  void shouldRejectCallsOnReleasedConnection() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    Connection released = transaction.getConnection();
+    released.prepareStatement("SELECT 1").close();
+
+    assertThrows(SQLException.class, released::getMetaData);
+    transaction.close();
+  }
+
+  @Test
+  void shouldNotReleaseTransactionalConnection() throws Exception {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    SpringManagedTransaction transaction = newTransaction();
+    transaction.getConnection().prepareStatement("SELECT 1").close();
+    assertThat(connection.isClosed()).isFalse();
+    transaction.close();
+    txManager.commit(status);
+
+    assertSingleConnection();
+  }
+
+  @Test
+  void shouldNotReleaseConnectionWithoutAutoCommit() throws Exception {
+    connection.setAutoCommit(false);
+    SpringManagedTransaction transaction = newTransaction();
+    transaction.getConnection().prepareStatement("SELECT 1").close();
+    assertThat(connection.isClosed()).isFalse();
+    transaction.close();
+
+    assertThat(connection.isClosed()).isTrue();
+    assertSingleConnection();
+  }
+
+  @Test
+  void shouldReadReleaseModeFromProperties() throws Exception {
+    transactionFactory = new SpringManagedTransactionFactory();
+    Properties properties = new Properties();
+    properties.setProperty(SpringManagedTransactionFactory.CONNECTION_RELEASE_MODE_PROPERTY, "AFTER_STATEMENT");
+    transactionFactory.setProperties(properties);
+
+    SpringManagedTransaction transaction = newTransaction();
+    transaction.getConnection().prepareStatement("SELECT 1").close();
+    assertThat(connection.isClosed()).isTrue();
+    transaction.close();
+  }
+
+  @Test
+  void shouldReleaseConnectionBetweenStatementsOfScope() throws Exception {
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setMapperLocations(new ClassPathResource("org/mybatis/spring/TestMapper.xml"));
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setTransactionFactory(transactionFactory);
+    SqlSessionFactory sessionFactory = factoryBean.getObject();
+    SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sessionFactory);
+    TestMapper mapper = sqlSessionTemplate.getMapper(TestMapper.class);
+
+    try (SqlSessionScope scope = SqlSessionScope.open(sessionFactory)) {
+      mapper.findTest();
+      assertThat(connection.isClosed()).as("should not hold the connection between statements").isTrue();
+      sqlSessionTemplate.clearCache();
+      mapper.findTest();
+    }
+
+    assertThat(connectionTwo.isClosed()).as("should get a connection for the next statement").isTrue();
+  }
+
+  private SpringManagedTransaction newTransaction() {
+    return (SpringManagedTransaction) transactionFactory.newTransaction(dataSource, null, false);
+  }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+
+import java.sql.Connection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.AbstractMyBatisSpringTest;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+class ConnectionStateTrackerTest extends AbstractMyBatisSpringTest {
+
+  private MockConnection physicalConnection;
+
+  private SingleConnectionDataSource pooledDataSource;
+
+  private SpringManagedTransactionFactory transactionFactory;
+
+  @BeforeEach
+  void setupTracking() throws Exception {
+    physicalConnection = spy(connection);
+    physicalConnection.setAutoCommit(false);
+    // hands out the same connection and ignores close, like a pool
+    pooledDataSource = new SingleConnectionDataSource(physicalConnection, true);
+    transactionFactory = new SpringManagedTransactionFactory();
+    transactionFactory.setConnectionStateTracking(true);
+  }
+
+  @AfterEach
+  void closeConnection() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  void shouldReadAutoCommitOncePerConnection() throws Exception {
+    commitNewTransaction();
+    commitNewTransaction();
+
+    verify(physicalConnection, times(1)).getAutoCommit();
+    assertThat(physicalConnection.getNumberCommits()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldReadAutoCommitEveryTimeWithoutTracking() throws Exception {
+    transactionFactory.setConnectionStateTracking(false);
+
+    commitNewTransaction();
+    commitNewTransaction();
+
+    verify(physicalConnection, times(2)).getAutoCommit();
+  }
+
+  @Test
+  void shouldNotReadAutoCommitOfTransactionalConnection() throws Exception {
+    transactionFactory.setConnectionStateTracking(false);
+    DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(pooledDataSource);
+    TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+    clearInvocations(physicalConnection);
+
+    commitNewTransaction();
+
+    verify(physicalConnection, never()).getAutoCommit();
+    transactionManager.commit(status);
+    assertThat(physicalConnection.getNumberCommits()).as("only the transaction manager commits").isEqualTo(1);
+  }
+
+  @Test
+  void shouldTrackChangesMadeThroughSessionConnection() throws Exception {
+    transactionFactory.setStatementCacheSize(1);
+
+    SpringManagedTransaction transaction = newTransaction();
+    transaction.getConnection().setAutoCommit(true);
+    transaction.close();
+
+    commitNewTransaction();
+
+    verify(physicalConnection, times(1)).getAutoCommit();
+    assertThat(physicalConnection.getNumberCommits()).as("should not commit an auto-commit connection").isEqualTo(0);
+  }
+
+  @Test
+  void shouldTrackChangesWithoutOtherProxies() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    transaction.getConnection().setAutoCommit(true);
+    transaction.close();
+
+    commitNewTransaction();
+
+    verify(physicalConnection, times(1)).getAutoCommit();
+    assertThat(physicalConnection.getNumberCommits()).as("should not commit an auto-commit connection").isEqualTo(0);
+  }
+
+  @Test
+  void shouldKeepAutoCommitOfLiveConnectionAcrossGarbageCollections() throws Exception {
+    commitNewTransaction();
+    System.gc();
+    System.gc();
+    commitNewTransaction();
+
+    verify(physicalConnection, times(1)).getAutoCommit();
+  }
+
+  private void commitNewTransaction() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    Connection sessionConnection = transaction.getConnection();
+    sessionConnection.prepareStatement("SELECT 1").close();
+    transaction.commit();
+    transaction.close();
+  }
+
+  private SpringManagedTransaction newTransaction() {
+    return (SpringManagedTransaction) transactionFactory.newTransaction(pooledDataSource, null, false);
+  }
+
+}
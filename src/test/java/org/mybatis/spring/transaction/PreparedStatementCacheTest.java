@@ -0,0 +1,338 @@
+/**
+ * Copyright 2010-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mybatis.spring.transaction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockPreparedStatement;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.AbstractMyBatisSpringTest;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+class PreparedStatementCacheTest extends AbstractMyBatisSpringTest {
+
+  private SpringManagedTransactionFactory transactionFactory;
+
+  private DataSource pooledDataSource;
+
+  @BeforeEach
+  void setupCache() {
+    transactionFactory = new SpringManagedTransactionFactory();
+    transactionFactory.setStatementCacheSize(2);
+    // hands out the same connection and ignores close, like a pool
+    pooledDataSource = new SingleConnectionDataSource(connection, true);
+  }
+
+  @AfterEach
+  void closeConnection() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  void shouldReuseStatementAcrossTransactions() throws Exception {
+    prepareAndClose("SELECT 1");
+    prepareAndClose("SELECT 1");
+
+    List<MockPreparedStatement> prepared = preparedStatements();
+    assertThat(prepared).hasSize(1);
+    assertThat(prepared.get(0).isClosed()).as("cached statement should stay open").isFalse();
+    assertThat(transactionFactory.getStatementCacheSize(pooledDataSource.getConnection())).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotCacheByDefault() throws Exception {
+    transactionFactory = new SpringManagedTransactionFactory();
+
+    prepareAndClose("SELECT 1");
+    prepareAndClose("SELECT 1");
+
+    List<MockPreparedStatement> prepared = preparedStatements();
+    assertThat(prepared).hasSize(2);
+    assertThat(prepared.get(0).isClosed()).isTrue();
+  }
+
+  @Test
+  void shouldKeyByResultSetOptions() throws Exception {
+    prepareAndClose("SELECT 1");
+    SpringManagedTransaction transaction = newTransaction();
+    transaction.getConnection()
+        .prepareStatement("SELECT 1", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+    transaction.close();
+
+    assertThat(preparedStatements()).hasSize(2);
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsed() throws Exception {
+    prepareAndClose("SELECT 1");
+    prepareAndClose("SELECT 2");
+    prepareAndClose("SELECT 1");
+    prepareAndClose("SELECT 3");
+
+    List<MockPreparedStatement> prepared = preparedStatements();
+    assertThat(prepared).hasSize(3);
+    assertThat(prepared.get(0).isClosed()).as("SELECT 1 was used last").isFalse();
+    assertThat(prepared.get(1).isClosed()).as("SELECT 2 should be evicted").isTrue();
+    assertThat(prepared.get(2).isClosed()).isFalse();
+  }
+
+  @Test
+  void shouldNotShareStatementInUse() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    PreparedStatement first = transaction.getConnection().prepareStatement("SELECT 1");
+    PreparedStatement second = transaction.getConnection().prepareStatement("SELECT 1");
+    second.close();
+    first.close();
+    transaction.close();
+
+    assertThat(preparedStatements()).hasSize(2);
+    assertThat(preparedStatements().get(0).isClosed()).as("only one statement per key is kept").isTrue();
+    assertThat(first.isClosed()).isTrue();
+  }
+
+  @Test
+  void shouldResetStatementSettings() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    PreparedStatement statement = transaction.getConnection().prepareStatement("SELECT 1");
+    statement.setQueryTimeout(5);
+    statement.setFetchSize(100);
+    statement.close();
+    transaction.close();
+
+    transaction = newTransaction();
+    statement = transaction.getConnection().prepareStatement("SELECT 1");
+    assertThat(statement.getQueryTimeout()).isEqualTo(0);
+    assertThat(statement.getFetchSize()).isEqualTo(0);
+    statement.close();
+    transaction.close();
+
+    assertThat(preparedStatements()).hasSize(1);
+  }
+
+  @Test
+  void shouldCloseFailedStatement() throws Exception {
+    connection.getPreparedStatementResultSetHandler().prepareThrowsSQLException("SELECT 1",
+        new SQLException("connection reset", "08S01"), new Object[0]);
+
+    SpringManagedTransaction transaction = newTransaction();
+    PreparedStatement statement = transaction.getConnection().prepareStatement("SELECT 1");
+    try {
+      statement.executeQuery();
+    } catch (SQLException expected) {
+      // ignored
+    }
+    statement.close();
+    transaction.close();
+
+    assertThat(preparedStatements().get(0).isClosed()).isTrue();
+    assertThat(transactionFactory.getStatementCacheSize(pooledDataSource.getConnection())).isEqualTo(0);
+  }
+
+  @Test
+  void shouldKeepStatementAfterConstraintViolation() throws Exception {
+    connection.getPreparedStatementResultSetHandler().prepareThrowsSQLException("SELECT 1",
+        new SQLException("duplicate key", "23505"), new Object[0]);
+
+    SpringManagedTransaction transaction = newTransaction();
+    PreparedStatement statement = transaction.getConnection().prepareStatement("SELECT 1");
+    assertThatThrownBy(statement::executeQuery).isInstanceOf(SQLException.class)
+        .hasFieldOrPropertyWithValue("SQLState", "23505");
+    statement.close();
+    transaction.close();
+
+    assertThat(preparedStatements().get(0).isClosed()).isFalse();
+    assertThat(transactionFactory.getStatementCacheSize(pooledDataSource.getConnection())).isEqualTo(1);
+  }
+
+  @Test
+  void shouldCachePerCheckoutWhenUnwrapReturnsTheWrapper() throws Exception {
+    AtomicInteger prepareCalls = new AtomicInteger();
+    // like Commons DBCP without access to the underlying connection: unwrap returns the wrapper itself
+    pooledDataSource = new SingleConnectionDataSource(connection, true) {
+      @Override
+      public Connection getConnection() {
+        return selfUnwrappingWrapper(connection, prepareCalls);
+      }
+    };
+
+    SpringManagedTransaction transaction = newTransaction();
+    transaction.getConnection().prepareStatement("SELECT 1").close();
+    transaction.getConnection().prepareStatement("SELECT 1").close();
+    transaction.close();
+    prepareAndClose("SELECT 1");
+
+    List<MockPreparedStatement> prepared = preparedStatements();
+    assertThat(prepared).as("reused inside a checkout only").hasSize(2);
+    assertThat(prepared.get(0).isClosed()).as("dropped when the checkout ends").isTrue();
+    assertThat(prepared.get(1).isClosed()).isTrue();
+    assertThat(prepareCalls.get()).as("statements are prepared on the wrapper").isEqualTo(2);
+    assertThat(transactionFactory.getStatementCacheSize(pooledDataSource.getConnection())).isEqualTo(0);
+  }
+
+  @Test
+  void shouldDisableWhenThePoolClosesTheStatements() throws Exception {
+    // like HikariCP: the statements of a handle are closed when it is given back
+    pooledDataSource = new SingleConnectionDataSource(connection, true) {
+      @Override
+      public Connection getConnection() {
+        return statementClosingHandle(connection);
+      }
+    };
+
+    prepareAndClose("SELECT 1");
+    prepareAndClose("SELECT 1");
+
+    SpringManagedTransaction transaction = newTransaction();
+    assertThat(transaction.getConnection()).as("no longer wrapped").isNotInstanceOf(ConnectionProxy.class);
+    transaction.close();
+    assertThat(preparedStatements()).hasSize(2);
+    assertThat(transactionFactory.getStatementCacheSize(connection)).isEqualTo(0);
+  }
+
+  @Test
+  void shouldDropTheCacheOfAClosedConnectionOnRelease() throws Exception {
+    MockConnection otherConnection = new MockConnection();
+    prepareAndClose("SELECT 1");
+    pooledDataSource = new SingleConnectionDataSource(otherConnection, true);
+    prepareAndClose("SELECT 1");
+    assertThat(transactionFactory.getStatementCacheSize(connection)).isEqualTo(1);
+
+    // the pool evicts the first connection
+    connection.close();
+    Thread.sleep(1_100L);
+    prepareAndClose("SELECT 1");
+
+    assertThat(transactionFactory.getStatementCacheSize(connection)).isEqualTo(0);
+    assertThat(transactionFactory.getStatementCacheSize(otherConnection)).isEqualTo(1);
+    otherConnection.close();
+  }
+
+  @Test
+  void shouldReadSizeFromProperties() throws Exception {
+    transactionFactory = new SpringManagedTransactionFactory();
+    Properties properties = new Properties();
+    properties.setProperty(SpringManagedTransactionFactory.STATEMENT_CACHE_SIZE_PROPERTY, "1");
+    transactionFactory.setProperties(properties);
+
+    prepareAndClose("SELECT 1");
+    prepareAndClose("SELECT 2");
+
+    assertThat(preparedStatements().get(0).isClosed()).isTrue();
+    assertThat(preparedStatements().get(1).isClosed()).isFalse();
+  }
+
+  @Test
+  void shouldExposeTargetConnection() throws Exception {
+    SpringManagedTransaction transaction = newTransaction();
+    Connection exposed = transaction.getConnection();
+    PreparedStatement statement = exposed.prepareStatement("SELECT 1");
+    assertThat(statement.getConnection()).isSameAs(exposed);
+    assertThat(((ConnectionProxy) exposed).getTargetConnection())
+        .isSameAs(pooledDataSource.getConnection());
+    statement.close();
+    transaction.close();
+  }
+
+  private void prepareAndClose(String sql) throws SQLException {
+    SpringManagedTransaction transaction = newTransaction();
+    PreparedStatement statement = transaction.getConnection().prepareStatement(sql);
+    statement.executeQuery().close();
+    statement.close();
+    transaction.close();
+  }
+
+  private SpringManagedTransaction newTransaction() {
+    return (SpringManagedTransaction) transactionFactory.newTransaction(pooledDataSource, null, false);
+  }
+
+  private static Connection selfUnwrappingWrapper(Connection target, AtomicInteger prepareCalls) {
+    return (Connection) Proxy.newProxyInstance(PreparedStatementCacheTest.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "isWrapperFor":
+              return true;
+            case "unwrap":
+              return proxy;
+            case "close":
+              return null;
+            case "prepareStatement":
+              prepareCalls.incrementAndGet();
+              break;
+            default:
+              break;
+          }
+          try {
+            return method.invoke(target, args);
+          } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+          }
+        });
+  }
+
+  private static Connection statementClosingHandle(Connection target) {
+    List<Statement> statements = new ArrayList<>();
+    return (Connection) Proxy.newProxyInstance(PreparedStatementCacheTest.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "isWrapperFor":
+              return true;
+            case "unwrap":
+              return target;
+            case "close":
+              for (Statement statement : statements) {
+                statement.close();
+              }
+              return null;
+            default:
+              break;
+          }
+          try {
+            Object result = method.invoke(target, args);
+            if (result instanceof Statement) {
+              statements.add((Statement) result);
+            }
+            return result;
+          } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+          }
+        });
+  }
+
+  private List<MockPreparedStatement> preparedStatements() {
+    return connection.getPreparedStatementResultSetHandler().getPreparedStatements();
+  }
+
+}